@@ -0,0 +1,184 @@
+/**
+ * Measurement harness for the benchmarks
+ */
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs workloads in the manner of JMH, within the current JVM: a number of
+ * warmup iterations, whose results are dropped, then measurement iterations,
+ * each of which calls the workload repeatedly for a fixed time.  A workload
+ * reports the units of work one call did (instructions, tokens, nodes, ...),
+ * and the harness reports units per second, as the mean and standard
+ * deviation over the iterations, the time and allocation per call, and the
+ * allocation rate.  A phase is a workload with a setup that makes its
+ * input, whose time and allocation are left out.
+ *
+ * The options -wi warmups, -i iterations and -t milliseconds per iteration
+ * set the schedule, and an optional regular expression selects the
+ * workloads by name.
+ */
+public final class Harness {
+
+	/**
+	 * A benchmarked operation
+	 */
+	public interface Workload {
+		/**
+		 * @return the units of work done
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * A benchmarked operation on an input made afresh for every call
+	 */
+	public interface Phase<T> {
+		T setup() throws Exception;
+
+		/**
+		 * @return the units of work done
+		 */
+		long run(T input) throws Exception;
+	}
+
+	private int warmups = 3, iterations = 5;
+	private long iterationMillis = 1000;
+	private Pattern filter;
+	private final String unit;
+	private boolean headerShown;
+
+	// the allocation counter of the HotSpot thread bean, if available
+	private final static com.sun.management.ThreadMXBean threads;
+	static {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		threads = bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+				? (com.sun.management.ThreadMXBean) bean : null;
+	}
+
+	/**
+	 * A harness reporting units of work named unit, with the schedule and
+	 * filter of the options in args
+	 * @return the harness, or null if the options are invalid
+	 */
+	public static Harness create(String unit, List<String> args) {
+		Harness harness = new Harness(unit);
+		for (int i = 0; i < args.size(); i++) {
+			String arg = args.get(i);
+			try {
+				if (arg.equals("-wi") && i + 1 < args.size())
+					harness.warmups = Integer.parseInt(args.get(++i));
+				else if (arg.equals("-i") && i + 1 < args.size())
+					harness.iterations = Integer.parseInt(args.get(++i));
+				else if (arg.equals("-t") && i + 1 < args.size())
+					harness.iterationMillis = Long.parseLong(args.get(++i));
+				else if (arg.startsWith("-"))
+					return null;
+				else
+					harness.filter = Pattern.compile(arg);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		if (harness.warmups < 0 || harness.iterations < 1 || harness.iterationMillis < 1)
+			return null;
+		return harness;
+	}
+
+	private Harness(String unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * @return true if the filter selects the workload name
+	 */
+	public boolean selects(String name) {
+		return filter == null || filter.matcher(name).find();
+	}
+
+	/**
+	 * The options the harness takes, for usage messages
+	 */
+	public final static String usage = "[-wi warmups] [-i iterations] [-t millis] [regex]";
+
+	/**
+	 * Measure workload and print its results, if the filter selects it
+	 */
+	public void measure(String name, final Workload workload) throws Exception {
+		measure(name, new Phase<Object>() {
+			public Object setup() {
+				return null;
+			}
+
+			public long run(Object input) throws Exception {
+				return workload.run();
+			}
+		});
+	}
+
+	/**
+	 * Measure phase, not counting its setup, and print its results, if the
+	 * filter selects it
+	 */
+	public <T> void measure(String name, Phase<T> phase) throws Exception {
+		if (!selects(name))
+			return;
+		if (!headerShown) {
+			System.out.println(String.format("%-28s %14s %10s %14s %12s %10s", "benchmark",
+					unit + "/s", "+-", "ns/op", "B/op", "MB/s"));
+			headerShown = true;
+		}
+		for (int i = 0; i < warmups; i++)
+			iterate(phase);
+		List<double[]> results = new ArrayList<double[]>();
+		for (int i = 0; i < iterations; i++)
+			results.add(iterate(phase));
+
+		double rate = 0, nanos = 0, bytes = 0, elapsed = 0;
+		for (double[] r : results) {
+			rate += r[0] / r[3] * 1e9;
+			nanos += r[3] / r[1];
+			bytes += r[2] / r[1];
+			elapsed += r[3];
+		}
+		int n = results.size();
+		rate /= n;
+		nanos /= n;
+		bytes /= n;
+		double variance = 0, allocated = 0;
+		for (double[] r : results) {
+			double d = r[0] / r[3] * 1e9 - rate;
+			variance += d * d;
+			allocated += r[2];
+		}
+		double deviation = n > 1 ? Math.sqrt(variance / (n - 1)) : 0;
+		System.out.println(String.format("%-28s %14.0f %10.0f %14.0f %12s %10s", name, rate, deviation,
+				nanos, threads == null ? "?" : String.format("%.0f", bytes),
+				threads == null ? "?" : String.format("%.1f", allocated / elapsed * 1e9 / (1 << 20))));
+	}
+
+	// run phase for one iteration: units, calls, bytes allocated and
+	// nanoseconds taken by the runs
+	private <T> double[] iterate(Phase<T> phase) throws Exception {
+		long thread = Thread.currentThread().getId();
+		long units = 0, calls = 0, bytes = 0, nanos = 0;
+		long end = System.nanoTime() + iterationMillis * 1000000, now;
+		do {
+			T input = phase.setup();
+			long allocated = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			units += phase.run(input);
+			now = System.nanoTime();
+			if (threads != null)
+				bytes += threads.getThreadAllocatedBytes(thread) - allocated;
+			nanos += now - start;
+			calls++;
+		} while (now - end < 0);
+		return new double[] { units, calls, bytes, nanos };
+	}
+}
@@ -0,0 +1,33 @@
+class Churn {
+    public static void main(String[] args) {
+        int round = 0;
+        int total = 0;
+        Node list = null;
+        Node node = null;
+        int i = 0;
+        while (round < 200) {
+            list = null;
+            i = 0;
+            while (i < 1000) {
+                node = new Node();
+                node.value = i;
+                node.next = list;
+                list = node;
+                i = i + 1;
+            }
+            node = list;
+            while (node != null) {
+                total = total + node.value;
+                node = node.next;
+            }
+            total = total - 499500;
+            round = round + 1;
+        }
+        System.out.println(total);
+    }
+}
+
+class Node {
+    int value;
+    Node next;
+}
@@ -0,0 +1,39 @@
+class Matrix {
+    public static void main(String[] args) {
+        int n = 64;
+        int[] a = new int[n * n];
+        int[] b = new int[n * n];
+        int[] c = new int[n * n];
+        int i = 0;
+        while (i < n * n) {
+            a[i] = i - i / 7 * 7;
+            b[i] = i - i / 5 * 5;
+            i = i + 1;
+        }
+        i = 0;
+        int j = 0;
+        int k = 0;
+        int sum = 0;
+        while (i < n) {
+            j = 0;
+            while (j < n) {
+                sum = 0;
+                k = 0;
+                while (k < n) {
+                    sum = sum + a[i * n + k] * b[k * n + j];
+                    k = k + 1;
+                }
+                c[i * n + j] = sum;
+                j = j + 1;
+            }
+            i = i + 1;
+        }
+        int trace = 0;
+        i = 0;
+        while (i < n) {
+            trace = trace + c[i * n + i];
+            i = i + 1;
+        }
+        System.out.println(trace);
+    }
+}
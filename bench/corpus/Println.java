@@ -0,0 +1,9 @@
+class Println {
+    public static void main(String[] args) {
+        int i = 0;
+        while (i < 100000) {
+            System.out.println(i);
+            i = i + 1;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Benchmarks of the mJAM interpreter
+ */
+package mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import benchmark.Harness;
+import mJAM.Machine.Op;
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+import miniJava.Sources;
+
+/**
+ * Measures the instructions per second the interpreter executes, on the
+ * miniJava programs of the corpus directory (program.*) and on kernels that
+ * repeat a short instruction sequence exercising one operation
+ * (op.*) or primitive (prim.*) in a loop.  op.loop is the bare loop, whose
+ * cost is included in every kernel.  Every run executes a fresh
+ * MachineInstance, with empty input and discarded output, in the mode the
+ * options select, and is credited with the instructions the reference
+ * interpreter executes for the program, so that the modes compare.
+ *
+ *     java mJAM.InterpreterBenchmark [-reference | -tiered] [-corpus directory]
+ *         [-wi warmups] [-i iterations] [-t millis] [regex]
+ */
+public final class InterpreterBenchmark {
+
+	// kernel loop: iterations, and copies of the sequence per iteration
+	private final static int loops = 20000, unroll = 16;
+
+	// static segment of the kernels: loop counter, a scratch word, an object
+	// and an array, and the class descriptor of the object, with one method
+	private final static int counter = 0, scratch = 1, object = 2, array = 3,
+			descriptor = 4, staticSize = 7;
+
+	// displacements standing for the address after the sequence and for the
+	// address of the method, a RETURN (0) 0
+	private final static int next = Integer.MIN_VALUE, method = Integer.MIN_VALUE + 1;
+
+	private final static Object[][] kernels = {
+			{ "op.loop" },
+			{ "op.LOAD", i(Op.LOAD, Reg.SB, scratch), i(Op.POP, 1) },
+			{ "op.LOADA", i(Op.LOADA, Reg.SB, scratch), i(Op.POP, 1) },
+			{ "op.LOADI", i(Op.LOADA, Reg.SB, scratch), i(Op.LOADI, 0), i(Op.POP, 1) },
+			{ "op.LOADL", i(Op.LOADL, 7), i(Op.POP, 1) },
+			{ "op.STORE", i(Op.LOADL, 7), i(Op.STORE, Reg.SB, scratch) },
+			{ "op.STOREI", i(Op.LOADL, 7), i(Op.LOADA, Reg.SB, scratch), i(Op.STOREI, 0) },
+			{ "op.PUSH", i(Op.PUSH, 2), i(Op.POP, 2) },
+			{ "op.JUMP", i(Op.JUMP, Reg.CB, next) },
+			{ "op.JUMPI", i(Op.LOADL, next), i(Op.JUMPI, 0) },
+			{ "op.JUMPIF", i(Op.LOADL, 1), new int[] { Op.JUMPIF.ordinal(), 1, Reg.CB.ordinal(), next } },
+			{ "op.CALL", i(Op.CALL, Reg.CB, method) },
+			{ "op.CALLI", i(Op.LOAD, Reg.SB, object), i(Op.CALLI, Reg.CB, method) },
+			{ "op.CALLD", i(Op.LOAD, Reg.SB, object), i(Op.CALLD, 0) },
+			{ "prim.add", i(Op.LOADL, 3), i(Op.LOADL, 4), p(Prim.add), i(Op.POP, 1) },
+			{ "prim.sub", i(Op.LOADL, 3), i(Op.LOADL, 4), p(Prim.sub), i(Op.POP, 1) },
+			{ "prim.mult", i(Op.LOADL, 3), i(Op.LOADL, 4), p(Prim.mult), i(Op.POP, 1) },
+			{ "prim.div", i(Op.LOADL, 13), i(Op.LOADL, 4), p(Prim.div), i(Op.POP, 1) },
+			{ "prim.neg", i(Op.LOADL, 3), p(Prim.neg), i(Op.POP, 1) },
+			{ "prim.not", i(Op.LOADL, 1), p(Prim.not), i(Op.POP, 1) },
+			{ "prim.and", i(Op.LOADL, 1), i(Op.LOADL, 0), p(Prim.and), i(Op.POP, 1) },
+			{ "prim.lt", i(Op.LOADL, 3), i(Op.LOADL, 4), p(Prim.lt), i(Op.POP, 1) },
+			{ "prim.eq", i(Op.LOADL, 3), i(Op.LOADL, 4), p(Prim.eq), i(Op.POP, 1) },
+			{ "prim.newobj", i(Op.LOADA, Reg.SB, descriptor), i(Op.LOADL, 2), p(Prim.newobj), i(Op.POP, 1) },
+			{ "prim.newarr", i(Op.LOADL, 8), p(Prim.newarr), i(Op.POP, 1) },
+			{ "prim.arraylen", i(Op.LOAD, Reg.SB, array), p(Prim.arraylen), i(Op.POP, 1) },
+			{ "prim.arrayref", i(Op.LOAD, Reg.SB, array), i(Op.LOADL, 5), p(Prim.arrayref), i(Op.POP, 1) },
+			{ "prim.arrayupd", i(Op.LOAD, Reg.SB, array), i(Op.LOADL, 5), i(Op.LOADL, 7), p(Prim.arrayupd) },
+			{ "prim.fieldref", i(Op.LOAD, Reg.SB, object), i(Op.LOADL, 1), p(Prim.fieldref), i(Op.POP, 1) },
+			{ "prim.fieldupd", i(Op.LOAD, Reg.SB, object), i(Op.LOADL, 1), i(Op.LOADL, 7), p(Prim.fieldupd) },
+			{ "prim.putintnl", i(Op.LOADL, 12345), p(Prim.putintnl) },
+	};
+
+	private static int[] i(Op op, int d) {
+		return new int[] { op.ordinal(), 0, 0, d };
+	}
+
+	private static int[] i(Op op, Reg r, int d) {
+		return new int[] { op.ordinal(), 0, r.ordinal(), d };
+	}
+
+	private static int[] p(Prim prim) {
+		return new int[] { Op.CALL.ordinal(), 0, Reg.PB.ordinal(), prim.ordinal() };
+	}
+
+	private final static byte[] noInput = new byte[0];
+	private final static PrintStream discard = new PrintStream(new OutputStream() {
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	public static void main(String[] args) throws Exception {
+		File corpus = new File("bench/corpus");
+		List<String> harnessArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-reference"))
+				Interpreter.referenceMode = true;
+			else if (args[i].equals("-tiered"))
+				Interpreter.tiered = true;
+			else if (args[i].equals("-corpus") && i + 1 < args.length)
+				corpus = new File(args[++i]);
+			else
+				harnessArgs.add(args[i]);
+		}
+		Harness harness = Harness.create("instr", harnessArgs);
+		if (harness == null) {
+			System.out.println("Usage: mJAM.InterpreterBenchmark [-reference | -tiered] [-corpus directory] "
+					+ Harness.usage);
+			return;
+		}
+
+		for (File source : Sources.list(corpus)) {
+			String name = source.getName().substring(0, source.getName().length() - ".java".length());
+			if (harness.selects("program." + name))
+				measure(harness, "program." + name,
+						Sources.compile(name, Files.readAllBytes(source.toPath())));
+		}
+		for (Object[] kernel : kernels) {
+			if (harness.selects((String) kernel[0]))
+				measure(harness, (String) kernel[0], kernel(kernel));
+		}
+		// a program that halts straight away, for the cost of a machine
+		Machine.initCodeGen();
+		Machine.emit(Op.HALT, 0, 0, 0);
+		measure(harness, "op.HALT", Arrays.copyOf(Machine.code, Machine.CT * Machine.instrSize));
+	}
+
+	// run code repeatedly, credited with the instructions of a reference run
+	private static void measure(Harness harness, String name, final int[] code) throws Exception {
+		MachineInstance reference = new MachineInstance(code, new ByteArrayInputStream(noInput), discard);
+		reference.referenceMode = true;
+		if (reference.run() != MachineInstance.halted)
+			throw new IllegalStateException(name + " does not halt normally");
+		final long instructions = reference.instructions;
+		harness.measure(name, new Harness.Workload() {
+			public long run() {
+				MachineInstance machine = Interpreter.newMachine(code, new ByteArrayInputStream(noInput), discard);
+				if (machine.run() != MachineInstance.halted)
+					throw new IllegalStateException("failed with status " + machine.status);
+				return instructions;
+			}
+		});
+	}
+
+	// the code store of a kernel: set up the static segment, then loop over
+	// unroll copies of the sequence of the kernel
+	private static int[] kernel(Object[] kernel) {
+		Machine.initCodeGen();
+		Machine.emit(Op.PUSH, staticSize);
+		Machine.emit(Op.LOADL, -1);
+		Machine.emit(Op.STORE, Reg.SB, descriptor);
+		Machine.emit(Op.LOADL, 1);
+		Machine.emit(Op.STORE, Reg.SB, descriptor + 1);
+		List<Integer> methodRefs = new ArrayList<Integer>();
+		methodRefs.add(Machine.nextInstrAddr());
+		Machine.emit(Op.LOADL, 0);
+		Machine.emit(Op.STORE, Reg.SB, descriptor + 2);
+		Machine.emit(Op.LOADA, Reg.SB, descriptor);
+		Machine.emit(Op.LOADL, 2);
+		Machine.emit(Prim.newobj);
+		Machine.emit(Op.STORE, Reg.SB, object);
+		Machine.emit(Op.LOADL, 16);
+		Machine.emit(Prim.newarr);
+		Machine.emit(Op.STORE, Reg.SB, array);
+		Machine.emit(Op.LOADL, loops);
+		Machine.emit(Op.STORE, Reg.SB, counter);
+
+		int loop = Machine.nextInstrAddr();
+		for (int copy = 0; copy < unroll; copy++) {
+			int end = Machine.nextInstrAddr() + kernel.length - 1;
+			for (int k = 1; k < kernel.length; k++) {
+				int[] instr = (int[]) kernel[k];
+				int d = instr[3];
+				if (d == method)
+					methodRefs.add(Machine.nextInstrAddr());
+				Machine.emit(Machine.intToOp[instr[0]], instr[1], instr[2], d == next ? end : d);
+			}
+		}
+		Machine.emit(Op.LOAD, Reg.SB, counter);
+		Machine.emit(Op.LOADL, 1);
+		Machine.emit(Prim.sub);
+		Machine.emit(Op.STORE, Reg.SB, counter);
+		Machine.emit(Op.LOAD, Reg.SB, counter);
+		Machine.emit(Op.LOADL, 0);
+		Machine.emit(Prim.gt);
+		Machine.emit(Op.JUMPIF, 1, Reg.CB, loop);
+		Machine.emit(Op.HALT, 0, 0, 0);
+
+		int methodAddr = Machine.nextInstrAddr();
+		Machine.emit(Op.RETURN, 0, 0, 0);
+		for (int addr : methodRefs)
+			Machine.patch(addr, methodAddr);
+		return Arrays.copyOf(Machine.code, Machine.CT * Machine.instrSize);
+	}
+}
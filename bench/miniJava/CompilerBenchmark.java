@@ -0,0 +1,231 @@
+/**
+ * Benchmarks of the miniJava compiler phases
+ */
+package miniJava;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import benchmark.Harness;
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.CodeGenerator.CodeGenerator;
+import miniJava.ContextualAnalysis.Identification;
+import miniJava.ContextualAnalysis.TypeChecker;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.TokenKind;
+
+/**
+ * Measures each phase of the compiler on its own, on generated sources of
+ * increasing size: scan (tokens/s), parse, identification, type checking and
+ * code generation (AST nodes/s), each but the first two also on the common
+ * fork-join pool.  Each call of a phase gets a fresh input
+ * made by the phases before it, which is not timed.
+ *
+ *     java miniJava.CompilerBenchmark [-wi warmups] [-i iterations] [-t millis] [regex]
+ */
+public final class CompilerBenchmark {
+
+	// classes in the small, medium and large sources
+	private final static int[] sizes = { 10, 200, 4000 };
+	private final static String[] sizeNames = { "small", "medium", "large" };
+
+	public static void main(String[] args) throws Exception {
+		List<String> harnessArgs = new ArrayList<String>();
+		for (String arg : args)
+			harnessArgs.add(arg);
+		Harness harness = Harness.create("units", harnessArgs);
+		if (harness == null) {
+			System.out.println("Usage: miniJava.CompilerBenchmark " + Harness.usage);
+			return;
+		}
+
+		for (int i = 0; i < sizes.length; i++) {
+			final byte[] source = generate(sizes[i]);
+			final int tokens = countTokens(source);
+			final int nodes = countNodes(parse(source));
+			String size = sizeNames[i];
+			System.out.println("# " + size + ": " + sizes[i] + " classes, " + source.length + " bytes, "
+					+ tokens + " tokens, " + nodes + " AST nodes");
+
+			harness.measure("scan." + size, new Harness.Phase<Scanner>() {
+				public Scanner setup() {
+					return new Scanner(new ByteArrayInputStream(source), new ErrorReporter());
+				}
+
+				public long run(Scanner scanner) {
+					int count = 1;
+					while (scanner.next() != TokenKind.EOT)
+						count++;
+					return count;
+				}
+			});
+			harness.measure("parse." + size, new Harness.Phase<Parser>() {
+				public Parser setup() {
+					ErrorReporter reporter = new ErrorReporter();
+					Parser parser = new Parser(new Scanner(new ByteArrayInputStream(source), reporter), reporter);
+					parser.setTrace(false);
+					return parser;
+				}
+
+				public long run(Parser parser) {
+					parser.parse();
+					return nodes;
+				}
+			});
+			harness.measure("identification." + size, new Harness.Phase<AST>() {
+				public AST setup() {
+					return parse(source);
+				}
+
+				public long run(AST ast) {
+					new Identification(new ErrorReporter()).beginIdentification(ast);
+					return nodes;
+				}
+			});
+			harness.measure("identification.parallel." + size, new Harness.Phase<AST>() {
+				public AST setup() {
+					return parse(source);
+				}
+
+				public long run(AST ast) {
+					new Identification(new ErrorReporter()).beginIdentification(ast, null, ForkJoinPool.commonPool());
+					return nodes;
+				}
+			});
+			harness.measure("typecheck." + size, new Harness.Phase<AST>() {
+				public AST setup() {
+					AST ast = parse(source);
+					new Identification(new ErrorReporter()).beginIdentification(ast);
+					return ast;
+				}
+
+				public long run(AST ast) {
+					new TypeChecker(new ErrorReporter()).beginTypeChecking(ast);
+					return nodes;
+				}
+			});
+			harness.measure("typecheck.parallel." + size, new Harness.Phase<AST>() {
+				public AST setup() {
+					AST ast = parse(source);
+					new Identification(new ErrorReporter()).beginIdentification(ast);
+					return ast;
+				}
+
+				public long run(AST ast) {
+					new TypeChecker(new ErrorReporter()).beginTypeChecking(ast, null, ForkJoinPool.commonPool());
+					return nodes;
+				}
+			});
+			harness.measure("codegen." + size, new Harness.Phase<AST>() {
+				public AST setup() {
+					AST ast = parse(source);
+					ErrorReporter reporter = new ErrorReporter();
+					new Identification(reporter).beginIdentification(ast);
+					new TypeChecker(reporter).beginTypeChecking(ast);
+					return ast;
+				}
+
+				public long run(AST ast) {
+					new CodeGenerator(new ErrorReporter()).generate(ast);
+					return nodes;
+				}
+			});
+			harness.measure("codegen.parallel." + size, new Harness.Phase<AST>() {
+				public AST setup() {
+					AST ast = parse(source);
+					ErrorReporter reporter = new ErrorReporter();
+					new Identification(reporter).beginIdentification(ast);
+					new TypeChecker(reporter).beginTypeChecking(ast);
+					return ast;
+				}
+
+				public long run(AST ast) {
+					CodeGenerator codeGenerator = new CodeGenerator(new ErrorReporter());
+					codeGenerator.setPool(ForkJoinPool.commonPool());
+					codeGenerator.generate(ast);
+					return nodes;
+				}
+			});
+		}
+	}
+
+	private static AST parse(byte[] source) {
+		ErrorReporter reporter = new ErrorReporter();
+		Parser parser = new Parser(new Scanner(new ByteArrayInputStream(source), reporter), reporter);
+		parser.setTrace(false);
+		AST ast = parser.parse();
+		if (ast == null)
+			throw new IllegalStateException("generated source does not parse");
+		return ast;
+	}
+
+	private static int countTokens(byte[] source) {
+		Scanner scanner = new Scanner(new ByteArrayInputStream(source), new ErrorReporter());
+		int count = 1;
+		while (scanner.next() != TokenKind.EOT)
+			count++;
+		return count;
+	}
+
+	// the distinct AST objects reachable from ast through fields and lists
+	private static int countNodes(AST ast) throws IllegalAccessException {
+		Map<Object, Object> seen = new IdentityHashMap<Object, Object>();
+		ArrayDeque<Object> pending = new ArrayDeque<Object>();
+		pending.push(ast);
+		while (!pending.isEmpty()) {
+			Object node = pending.pop();
+			if (seen.put(node, node) != null)
+				continue;
+			for (Class<?> c = node.getClass(); c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive())
+						continue;
+					field.setAccessible(true);
+					Object value = field.get(node);
+					if (value instanceof AST)
+						pending.push(value);
+					else if (value instanceof Iterable)
+						for (Object element : (Iterable<?>) value)
+							if (element instanceof AST)
+								pending.push(element);
+				}
+			}
+		}
+		return seen.size();
+	}
+
+	// a program of the given number of classes, each with fields, a static
+	// and an instance method, loops, arrays and calls of the class before it
+	private static byte[] generate(int classes) {
+		StringBuilder s = new StringBuilder();
+		s.append("class Main {\n    public static void main(String[] args) {\n");
+		s.append("        System.out.println(C0.m(10));\n    }\n}\n");
+		for (int i = 0; i < classes; i++) {
+			s.append("class C").append(i).append(" {\n");
+			s.append("    int f;\n    int[] a;\n    C").append(i).append(" next;\n");
+			s.append("    public static int m(int n) {\n");
+			s.append("        int s = 0;\n        int k = 0;\n");
+			s.append("        while (k < n) {\n");
+			s.append("            if (k / 2 * 2 == k) s = s + k * 3; else s = s - 1;\n");
+			s.append("            k = k + 1;\n        }\n");
+			s.append("        return s;\n    }\n");
+			s.append("    public int g(int x) {\n");
+			s.append("        C").append(i).append(" c = new C").append(i).append("();\n");
+			s.append("        c.f = x + f;\n        c.next = c;\n");
+			s.append("        a = new int[x + 1];\n        a[0] = c.next.f;\n");
+			s.append("        return a[0] + a.length");
+			if (i > 0)
+				s.append(" + C").append(i - 1).append(".m(x)");
+			s.append(";\n    }\n}\n");
+		}
+		return s.toString().getBytes();
+	}
+}
@@ -0,0 +1,572 @@
+/**
+ * Generates miniJava programs for stress and scale testing
+ */
+package miniJava;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates valid miniJava programs of any size, together with the output
+ * they print.  A program has classes C0 ... Cn-1, and a main class named
+ * after the output file.  Each class has int fields, a field link to the next
+ * class (the last links to the first), and instance methods m0 ... whose
+ * bodies nest if and while statements to the given depth, assign sums of the
+ * given number of terms, reach fields through chains of link fields
+ * (link.link.f0) and call methods.  main makes one object of each class,
+ * links them into a ring and prints the result of the last method of every
+ * class.
+ *
+ * The generator evaluates what it generates, so the output of the program
+ * is known.  It keeps the programs well behaved: every value stored is
+ * reduced to (-1000, 1000), so no arithmetic overflows, divisions are by
+ * nonzero constants, and methods only call methods of later classes or
+ * earlier methods of their own class, so calls terminate.  The instructions
+ * a method may execute are bounded by a budget, which limits the loop counts
+ * and calls it gets.  The loop profile favours long loops, the call profile
+ * short loops and many calls.  Locals are declared at the top of each
+ * method.  Since an if statement has two blocks, a method body has up to
+ * (2 * statements) ^ depth statements.
+ *
+ *     java miniJava.ProgramGenerator [-classes n] [-fields n] [-methods n]
+ *         [-statements n] [-depth n] [-terms n] [-chain n] [-profile loop|call]
+ *         [-budget steps] [-seed n] [-expect] File.java
+ *
+ * With -expect the output is also written to File.out, in the form the
+ * interpreter prints it, for mJAM.Interpreter -batch.
+ */
+public final class ProgramGenerator {
+
+	// parameters
+	int classes = 10, fields = 3, methods = 4, statements = 4, depth = 2, terms = 4, chain = 2;
+	boolean callProfile = false;
+	long budget = 20000, seed = 1;
+
+	// int locals v0 ... of every method, besides t and the loop counters
+	private final static int locals = 3;
+
+	private Random random;
+
+	// the method bodies, by class and method, and the bound on their cost
+	private Block[][] bodies;
+	private long[][] costs;
+
+	// while generating a method: its class and index, the loop multiplier
+	// of the current statement and the cost so far
+	private int currentClass, currentMethod;
+	private long multiplier, spent;
+
+	public static void main(String[] args) throws IOException {
+		ProgramGenerator generator = new ProgramGenerator();
+		boolean expect = false;
+		String fileName = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-expect"))
+					expect = true;
+				else if (arg.equals("-profile") && i + 1 < args.length && args[i + 1].matches("loop|call"))
+					generator.callProfile = args[++i].equals("call");
+				else if (arg.equals("-budget") && i + 1 < args.length)
+					generator.budget = Long.parseLong(args[++i]);
+				else if (arg.equals("-seed") && i + 1 < args.length)
+					generator.seed = Long.parseLong(args[++i]);
+				else if (arg.startsWith("-") && i + 1 < args.length) {
+					int value = Integer.parseInt(args[++i]);
+					if (value < 0)
+						throw new NumberFormatException();
+					if (arg.equals("-classes") && value > 0)
+						generator.classes = value;
+					else if (arg.equals("-fields") && value > 0)
+						generator.fields = value;
+					else if (arg.equals("-methods") && value > 0)
+						generator.methods = value;
+					else if (arg.equals("-statements") && value > 0)
+						generator.statements = value;
+					else if (arg.equals("-depth"))
+						generator.depth = value;
+					else if (arg.equals("-terms") && value > 0)
+						generator.terms = value;
+					else if (arg.equals("-chain"))
+						generator.chain = value;
+					else
+						throw new NumberFormatException();
+				} else if (i == args.length - 1 && arg.endsWith(".java"))
+					fileName = arg;
+				else
+					throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			fileName = null;
+		}
+		if (fileName == null || generator.budget < 1) {
+			System.out.println("Usage: miniJava.ProgramGenerator [-classes n] [-fields n] [-methods n] "
+					+ "[-statements n] [-depth n] [-terms n] [-chain n] [-profile loop|call] "
+					+ "[-budget steps] [-seed n] [-expect] File.java");
+			System.exit(2);
+		}
+
+		String base = fileName.substring(0, fileName.length() - ".java".length());
+		write(fileName, generator.generate(new File(base).getName()));
+		if (expect) {
+			StringBuilder output = new StringBuilder();
+			for (int value : generator.run())
+				output.append(">>> ").append(value).append('\n');
+			write(base + ".out", output.toString());
+		}
+	}
+
+	private static void write(String fileName, String text) throws IOException {
+		PrintStream out = new PrintStream(new FileOutputStream(fileName));
+		out.print(text);
+		out.close();
+		if (out.checkError())
+			throw new IOException("unable to write " + fileName);
+	}
+
+	/**
+	 * @return the source of a program with main class mainName
+	 */
+	String generate(String mainName) {
+		random = new Random(seed);
+		bodies = new Block[classes][methods];
+		costs = new long[classes][methods];
+		// callees first: later classes, then earlier methods
+		for (int c = classes - 1; c >= 0; c--) {
+			for (int m = 0; m < methods; m++) {
+				currentClass = c;
+				currentMethod = m;
+				multiplier = 1;
+				spent = 0;
+				bodies[c][m] = block(depth);
+				costs[c][m] = spent + 2;
+			}
+		}
+
+		StringBuilder source = new StringBuilder();
+		source.append("class ").append(mainName).append(" {\n");
+		source.append("    public static void main(String[] args) {\n");
+		for (int c = 0; c < classes; c++)
+			source.append("        C").append(c).append(" o").append(c).append(" = new C").append(c).append("();\n");
+		for (int c = 0; c < classes; c++)
+			source.append("        o").append(c).append(".link = o").append((c + 1) % classes).append(";\n");
+		for (int c = 0; c < classes; c++)
+			source.append("        System.out.println(o").append(c).append(".m").append(methods - 1)
+					.append("(").append(c).append("));\n");
+		source.append("    }\n}\n");
+
+		for (int c = 0; c < classes; c++) {
+			source.append("\nclass C").append(c).append(" {\n");
+			for (int f = 0; f < fields; f++)
+				source.append("    int f").append(f).append(";\n");
+			source.append("    C").append((c + 1) % classes).append(" link;\n");
+			for (int m = 0; m < methods; m++) {
+				source.append("\n    public int m").append(m).append("(int p) {\n");
+				source.append("        int t = 0;\n");
+				source.append("        int v0 = p;\n");
+				for (int v = 1; v < locals; v++)
+					source.append("        int v").append(v).append(" = 0;\n");
+				for (int k = 0; k < depth; k++)
+					source.append("        int k").append(k).append(" = 0;\n");
+				bodies[c][m].write(source, 2);
+				source.append("        return v0;\n    }\n");
+			}
+			source.append("}\n");
+		}
+		return source.toString();
+	}
+
+	/**
+	 * @return what the program prints
+	 */
+	List<Integer> run() {
+		int[][] objects = new int[classes][fields];
+		List<Integer> output = new ArrayList<Integer>();
+		for (int c = 0; c < classes; c++)
+			output.add(call(objects, c, methods - 1, c));
+		return output;
+	}
+
+	private int call(int[][] objects, int self, int method, int p) {
+		Frame frame = new Frame(objects, self);
+		frame.locals[0] = p;
+		bodies[self][method].run(frame);
+		return frame.locals[0];
+	}
+
+	// the state of a method being run
+	private final class Frame {
+		final int[][] objects;
+		final int self;
+		final int[] locals = new int[ProgramGenerator.locals];
+		final int[] counters = new int[depth];
+
+		Frame(int[][] objects, int self) {
+			this.objects = objects;
+			this.self = self;
+		}
+
+		int object(int links) {
+			return (self + links) % classes;
+		}
+	}
+
+	private static int reduce(int value) {
+		return value - value / 1000 * 1000;
+	}
+
+	// STATEMENTS
+
+	private abstract class Statement {
+		abstract void write(StringBuilder s, int indent);
+
+		abstract void run(Frame frame);
+	}
+
+	private static void indent(StringBuilder s, int indent) {
+		for (int i = 0; i < indent; i++)
+			s.append("    ");
+	}
+
+	private final class Block extends Statement {
+		final List<Statement> statements = new ArrayList<Statement>();
+
+		void write(StringBuilder s, int indent) {
+			for (Statement statement : statements)
+				statement.write(s, indent);
+		}
+
+		void run(Frame frame) {
+			for (Statement statement : statements)
+				statement.run(frame);
+		}
+	}
+
+	// vN = e, or a field through a chain of links = e, reduced through t
+	private final class Assign extends Statement {
+		final int local, links, field;
+		final Expression value;
+
+		Assign(int local, int links, int field, Expression value) {
+			this.local = local;
+			this.links = links;
+			this.field = field;
+			this.value = value;
+		}
+
+		void write(StringBuilder s, int indent) {
+			indent(s, indent);
+			s.append("t = ");
+			value.write(s);
+			s.append(";\n");
+			indent(s, indent);
+			if (local >= 0)
+				s.append('v').append(local);
+			else
+				fieldName(s, links, field);
+			s.append(" = t - t / 1000 * 1000;\n");
+		}
+
+		void run(Frame frame) {
+			int v = reduce(value.value(frame));
+			if (local >= 0)
+				frame.locals[local] = v;
+			else
+				frame.objects[frame.object(links)][field] = v;
+		}
+	}
+
+	private final static String[] comparisons = { "<", "<=", ">", ">=", "==", "!=" };
+
+	private final class If extends Statement {
+		final Expression left, right;
+		final int comparison;
+		final Block then, otherwise;
+
+		If(Expression left, int comparison, Expression right, Block then, Block otherwise) {
+			this.left = left;
+			this.comparison = comparison;
+			this.right = right;
+			this.then = then;
+			this.otherwise = otherwise;
+		}
+
+		void write(StringBuilder s, int indent) {
+			indent(s, indent);
+			s.append("if (");
+			left.write(s);
+			s.append(' ').append(comparisons[comparison]).append(' ');
+			right.write(s);
+			s.append(") {\n");
+			then.write(s, indent + 1);
+			indent(s, indent);
+			s.append("} else {\n");
+			otherwise.write(s, indent + 1);
+			indent(s, indent);
+			s.append("}\n");
+		}
+
+		void run(Frame frame) {
+			int l = left.value(frame), r = right.value(frame);
+			boolean b;
+			switch (comparison) {
+			case 0: b = l < r; break;
+			case 1: b = l <= r; break;
+			case 2: b = l > r; break;
+			case 3: b = l >= r; break;
+			case 4: b = l == r; break;
+			default: b = l != r; break;
+			}
+			(b ? then : otherwise).run(frame);
+		}
+	}
+
+	private final class While extends Statement {
+		final int level, count;
+		final Block body;
+
+		While(int level, int count, Block body) {
+			this.level = level;
+			this.count = count;
+			this.body = body;
+		}
+
+		void write(StringBuilder s, int indent) {
+			indent(s, indent);
+			s.append('k').append(level).append(" = 0;\n");
+			indent(s, indent);
+			s.append("while (k").append(level).append(" < ").append(count).append(") {\n");
+			body.write(s, indent + 1);
+			indent(s, indent + 1);
+			s.append('k').append(level).append(" = k").append(level).append(" + 1;\n");
+			indent(s, indent);
+			s.append("}\n");
+		}
+
+		void run(Frame frame) {
+			for (frame.counters[level] = 0; frame.counters[level] < count; frame.counters[level]++)
+				body.run(frame);
+		}
+	}
+
+	// EXPRESSIONS
+
+	private abstract class Expression {
+		abstract void write(StringBuilder s);
+
+		abstract int value(Frame frame);
+	}
+
+	// a sum of terms, each added or subtracted
+	private final class Sum extends Expression {
+		final List<Expression> terms = new ArrayList<Expression>();
+		final List<Boolean> minus = new ArrayList<Boolean>();
+
+		void write(StringBuilder s) {
+			for (int i = 0; i < terms.size(); i++) {
+				if (i > 0)
+					s.append(minus.get(i) ? " - " : " + ");
+				terms.get(i).write(s);
+			}
+		}
+
+		int value(Frame frame) {
+			int sum = terms.get(0).value(frame);
+			for (int i = 1; i < terms.size(); i++)
+				sum = minus.get(i) ? sum - terms.get(i).value(frame) : sum + terms.get(i).value(frame);
+			return sum;
+		}
+	}
+
+	private final class Constant extends Expression {
+		final int value;
+
+		Constant(int value) {
+			this.value = value;
+		}
+
+		void write(StringBuilder s) {
+			s.append(value);
+		}
+
+		int value(Frame frame) {
+			return value;
+		}
+	}
+
+	private final class Local extends Expression {
+		final int local;
+
+		Local(int local) {
+			this.local = local;
+		}
+
+		void write(StringBuilder s) {
+			s.append('v').append(local);
+		}
+
+		int value(Frame frame) {
+			return frame.locals[local];
+		}
+	}
+
+	private final class FieldRef extends Expression {
+		final int links, field;
+
+		FieldRef(int links, int field) {
+			this.links = links;
+			this.field = field;
+		}
+
+		void write(StringBuilder s) {
+			fieldName(s, links, field);
+		}
+
+		int value(Frame frame) {
+			return frame.objects[frame.object(links)][field];
+		}
+	}
+
+	// a term multiplied or divided by a small constant, or negated
+	private final class Scaled extends Expression {
+		final Expression term;
+		final char operator;
+		final int by;
+
+		Scaled(Expression term, char operator, int by) {
+			this.term = term;
+			this.operator = operator;
+			this.by = by;
+		}
+
+		void write(StringBuilder s) {
+			s.append('(');
+			if (operator == '-') {
+				s.append('-');
+				term.write(s);
+			} else {
+				term.write(s);
+				s.append(' ').append(operator).append(' ').append(by);
+			}
+			s.append(')');
+		}
+
+		int value(Frame frame) {
+			int v = term.value(frame);
+			return operator == '-' ? -v : operator == '*' ? v * by : v / by;
+		}
+	}
+
+	// mN(argument) on the object a chain of links away
+	private final class Call extends Expression {
+		final int links, method;
+		final Expression argument;
+
+		Call(int links, int method, Expression argument) {
+			this.links = links;
+			this.method = method;
+			this.argument = argument;
+		}
+
+		void write(StringBuilder s) {
+			for (int i = 0; i < links; i++)
+				s.append("link.");
+			s.append('m').append(method).append('(');
+			argument.write(s);
+			s.append(')');
+		}
+
+		int value(Frame frame) {
+			return call(frame.objects, frame.self + links, method, argument.value(frame));
+		}
+	}
+
+	private static void fieldName(StringBuilder s, int links, int field) {
+		for (int i = 0; i < links; i++)
+			s.append("link.");
+		s.append('f').append(field);
+	}
+
+	// GENERATION
+
+	private Block block(int levels) {
+		Block block = new Block();
+		for (int i = 0; i < statements; i++)
+			block.statements.add(statement(levels));
+		return block;
+	}
+
+	private Statement statement(int levels) {
+		int choice = random.nextInt(10);
+		if (levels > 0 && choice < 2) {
+			int count = callProfile ? 1 + random.nextInt(3) : 10 + random.nextInt(30);
+			// shorten loops that would exceed the budget
+			long room = (budget - spent) / (multiplier * statements * (terms + 4));
+			count = (int) Math.max(1, Math.min(count, room));
+			spent += multiplier * 2;
+			multiplier *= count;
+			Block body = block(levels - 1);
+			multiplier /= count;
+			return new While(depth - levels, count, body);
+		}
+		if (levels > 0 && choice < 4) {
+			Expression left = sum(), right = sum();
+			return new If(left, random.nextInt(comparisons.length), right, block(levels - 1), block(levels - 1));
+		}
+		Expression value = sum();
+		spent += multiplier * 2;
+		if (choice < 7)
+			return new Assign(random.nextInt(locals), 0, 0, value);
+		return new Assign(-1, random.nextInt(chain + 1), random.nextInt(fields), value);
+	}
+
+	private Sum sum() {
+		Sum sum = new Sum();
+		for (int i = 0; i < terms; i++) {
+			sum.terms.add(term(true));
+			sum.minus.add(random.nextBoolean());
+		}
+		spent += multiplier * terms;
+		return sum;
+	}
+
+	private Expression term(boolean scale) {
+		int choice = random.nextInt(callProfile ? 12 : 16);
+		if (choice < 3)
+			return new Constant(random.nextInt(100));
+		if (choice < 6)
+			return new Local(random.nextInt(locals));
+		if (choice < 8)
+			return new FieldRef(random.nextInt(chain + 1), random.nextInt(fields));
+		if (choice < 10 && scale) {
+			int operator = random.nextInt(3);
+			return new Scaled(term(false), "*/-".charAt(operator), 1 + random.nextInt(9));
+		}
+		Expression call = call();
+		return call != null ? call : new Local(random.nextInt(locals));
+	}
+
+	// a call within budget of a later class or an earlier method, if any
+	private Expression call() {
+		for (int attempt = 0; attempt < 4; attempt++) {
+			int links = random.nextInt(chain + 1);
+			int target = currentClass + links;
+			if (target >= classes)
+				continue;
+			int method = random.nextInt(methods);
+			if (links == 0 && method >= currentMethod)
+				continue;
+			long cost = multiplier * (costs[target][method] + 4);
+			if (spent + cost > budget)
+				continue;
+			spent += cost;
+			return new Call(links, method, term(false));
+		}
+		return null;
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * miniJava sources for the benchmarks
+ */
+package miniJava;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mJAM.ObjectFile;
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.CodeGenerator.CodeGenerator;
+import miniJava.ContextualAnalysis.Identification;
+import miniJava.ContextualAnalysis.TypeChecker;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+
+/**
+ * Reads and compiles the miniJava programs the benchmarks run on
+ */
+public final class Sources {
+
+	private Sources() {
+	}
+
+	/**
+	 * @return the .java files of directory, by name
+	 */
+	public static List<File> list(File directory) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException("no directory " + directory);
+		Arrays.sort(files);
+		List<File> sources = new ArrayList<File>();
+		for (File file : files)
+			if (file.getName().endsWith(".java"))
+				sources.add(file);
+		return sources;
+	}
+
+	/**
+	 * Compile source as the compiler driver does, in a scratch directory and
+	 * without the messages of the compiler
+	 * @return the code store, packed as Machine.code
+	 * @throws IOException if the source is not a valid miniJava program
+	 */
+	public static int[] compile(String name, byte[] source) throws IOException {
+		Path directory = Files.createTempDirectory("miniJava");
+		File sourceFile = new File(directory.toFile(), name + ".java");
+		File objectFile = new File(directory.toFile(), name + ".mJAM");
+		PrintStream out = System.out;
+		try {
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {
+				}
+			}));
+			ErrorReporter errorReporter = new ErrorReporter();
+			Scanner scanner = new Scanner(new ByteArrayInputStream(source), errorReporter);
+			Parser parser = new Parser(scanner, errorReporter);
+			parser.setTrace(false);
+			AST ast = parser.parse();
+			if (ast != null) {
+				new Identification(errorReporter).beginIdentification(ast);
+				new TypeChecker(errorReporter).beginTypeChecking(ast);
+			}
+			if (ast == null || errorReporter.hasErrors())
+				throw new IOException(name + " is not a valid miniJava program");
+			new CodeGenerator(errorReporter).beginCodeGen(ast, sourceFile.getPath());
+			int[] code = new ObjectFile(objectFile.getPath()).readCode();
+			if (code == null)
+				throw new IOException("unable to compile " + name);
+			return code;
+		} finally {
+			System.setOut(out);
+			objectFile.delete();
+			directory.toFile().delete();
+		}
+	}
+}
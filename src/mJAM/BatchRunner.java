@@ -0,0 +1,211 @@
+/**
+ * Runs many mJAM programs in parallel
+ */
+package mJAM;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Batch mode of the interpreter.  The programs are given either by a
+ * directory, in which every name.mJAM is run with name.in as its input and
+ * compared with name.out, where these exist, or by a manifest whose lines
+ * read
+ *
+ *     objectFile [inputFile [expectedOutputFile]]
+ *
+ * with - for no file, # starting a comment and paths relative to the
+ * manifest.  Every program runs on its own MachineInstance, on a pool of
+ * threads, and the summary is written as tab separated lines, in the order
+ * of the programs: name, status, status code, output (match, mismatch or
+ * none), instructions executed, milliseconds taken and a message.  The
+ * status is the name of a MachineInstance status constant, with its
+ * showStatus message, or unloadable for an object file that cannot be read,
+ * or crashed for a program whose run threw, with the exception.
+ */
+final class BatchRunner {
+
+	// statuses of jobs that did not end with a machine status
+	private final static int unloadable = -1, crashed = -2;
+
+	private final static byte[] noInput = new byte[0];
+
+	// a program of the batch, and the result of running it
+	private static class Job {
+		final String name;
+		final File object, input, expected;
+		int status = unloadable;
+		String output = "none", message = "Unable to read object file.";
+		long instructions, millis;
+
+		Job(String name, File object, File input, File expected) {
+			this.name = name;
+			this.object = object;
+			this.input = input;
+			this.expected = expected;
+		}
+	}
+
+	/**
+	 * Run the programs of the directory or manifest source with the given
+	 * number of threads, and write the summary to summary
+	 * @return true if every program halted with the expected output, if any
+	 */
+	static boolean run(String source, int threads, PrintStream summary) {
+		List<Job> jobs;
+		try {
+			File file = new File(source);
+			jobs = file.isDirectory() ? scanDirectory(file) : readManifest(file);
+		} catch (IOException e) {
+			System.out.println("Unable to read batch " + source);
+			return false;
+		}
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (final Job job : jobs) {
+			results.add(pool.submit(new Runnable() {
+				public void run() {
+					runJob(job);
+				}
+			}));
+		}
+		pool.shutdown();
+		for (int i = 0; i < jobs.size(); i++) {
+			try {
+				results.get(i).get();
+			} catch (ExecutionException e) {
+				jobs.get(i).status = crashed;
+				jobs.get(i).message = "Crashed: " + e.getCause();
+			} catch (InterruptedException e) {
+				jobs.get(i).status = crashed;
+				jobs.get(i).message = "Interrupted.";
+			}
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		int passed = 0;
+		long instructions = 0;
+		summary.println("program\tstatus\tcode\toutput\tinstructions\tms\tmessage");
+		for (Job job : jobs) {
+			summary.println(job.name + "\t" + statusName(job.status) + "\t" + job.status
+					+ "\t" + job.output + "\t" + job.instructions + "\t" + job.millis
+					+ "\t" + job.message);
+			if (passed(job))
+				passed++;
+			instructions += job.instructions;
+		}
+		summary.println("# " + passed + " of " + jobs.size() + " passed, " + instructions
+				+ " instructions, " + millis + " ms on " + threads + " threads");
+		summary.flush();
+		return passed == jobs.size();
+	}
+
+	private static boolean passed(Job job) {
+		return job.status == MachineInstance.halted && !job.output.equals("mismatch");
+	}
+
+	private static String statusName(int status) {
+		if (status == unloadable)
+			return "unloadable";
+		if (status == crashed)
+			return "crashed";
+		String name = MachineInstance.statusName(status);
+		return name != null ? name : "unknown";
+	}
+
+	private static void runJob(Job job) {
+		ObjectFile objectFile = new ObjectFile(job.object.getPath());
+		int[] code = objectFile.readCode();
+		if (code == null) {
+			job.message = "Unable to load object file: " + objectFile.error + ".";
+			return;
+		}
+		try {
+			InputStream in = job.input == null ? new ByteArrayInputStream(noInput)
+					: new FileInputStream(job.input);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			MachineInstance machine = Interpreter.newMachine(code, in, new PrintStream(out));
+			long start = System.nanoTime();
+			job.status = machine.run();
+			job.message = machine.statusMessage();
+			job.millis = (System.nanoTime() - start) / 1000000;
+			job.instructions = machine.instructions;
+			in.close();
+			if (job.expected != null)
+				job.output = Arrays.equals(out.toByteArray(), Files.readAllBytes(job.expected.toPath()))
+						? "match" : "mismatch";
+		} catch (IOException e) {
+			job.status = MachineInstance.failedIOError;
+			job.message = "Program has failed due to an IO error: " + e.getMessage();
+		}
+	}
+
+	// the object files of the directory, by name, with their .in and .out files
+	private static List<Job> scanDirectory(File directory) throws IOException {
+		String[] names = directory.list();
+		if (names == null)
+			throw new IOException();
+		Arrays.sort(names);
+		List<Job> jobs = new ArrayList<Job>();
+		for (String name : names) {
+			if (!name.endsWith(".mJAM"))
+				continue;
+			String base = name.substring(0, name.length() - ".mJAM".length());
+			jobs.add(new Job(base, new File(directory, name),
+					existing(new File(directory, base + ".in")),
+					existing(new File(directory, base + ".out"))));
+		}
+		return jobs;
+	}
+
+	private static List<Job> readManifest(File manifest) throws IOException {
+		File directory = manifest.getAbsoluteFile().getParentFile();
+		List<Job> jobs = new ArrayList<Job>();
+		BufferedReader reader = new BufferedReader(new FileReader(manifest));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0)
+					line = line.substring(0, comment);
+				String[] fields = line.trim().split("\\s+");
+				if (fields[0].isEmpty())
+					continue;
+				jobs.add(new Job(fields[0], resolve(directory, fields[0]),
+						fields.length > 1 ? resolve(directory, fields[1]) : null,
+						fields.length > 2 ? resolve(directory, fields[2]) : null));
+			}
+		} finally {
+			reader.close();
+		}
+		return jobs;
+	}
+
+	private static File resolve(File directory, String path) {
+		if (path.equals("-"))
+			return null;
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(directory, path);
+	}
+
+	private static File existing(File file) {
+		return file.exists() ? file : null;
+	}
+}
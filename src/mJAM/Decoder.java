@@ -0,0 +1,318 @@
+/**
+ * Translates the mJAM code store into the internal form run by the
+ * fast execution loop of the interpreter
+ */
+package mJAM;
+
+/**
+ * The decoded code store holds one internal instruction per mJAM instruction,
+ * at the same address, so that code addresses (return addresses, CALLD method
+ * table entries, jump targets) mean the same thing in both forms.
+ *
+ * Decoding resolves everything that can be known before execution starts:
+ * registers with a fixed content (CB, CT, PB, PT, SB, HB, and CP for the
+ * instruction itself) are folded into the displacement, so the remaining
+ * register-relative forms (LB, OB, ST, HT) each get their own opcode and the
+ * execution loop never has to look up a register number.  Each call of a
+ * primitive (CALL prim[PB]) becomes an opcode of its own that takes its
+ * operands straight off the stack.  Instructions that can never execute
+ * correctly are decoded as failure opcodes.
+ *
+ * One extra instruction is placed just past the end of the code (at CT).  It
+ * fails with an invalid code address, and any static branch to an address
+ * outside the code segment is redirected to it, so the execution loop only
+ * has to range check the code addresses it computes at run time.
+ */
+public final class Decoder {
+
+	// internal opcodes
+	public final static int
+		LOADL = 0,        // push d (also LOADA with a fixed register)
+		LOAD = 1,         // push data[d]
+		LOAD_LB = 2,
+		LOAD_OB = 3,
+		LOAD_ST = 4,
+		LOAD_HT = 5,
+		LOADA_LB = 6,
+		LOADA_OB = 7,
+		LOADA_ST = 8,
+		LOADA_HT = 9,
+		LOADI = 10,
+		STORE = 11,       // pop into data[d]
+		STORE_LB = 12,
+		STORE_OB = 13,
+		STORE_ST = 14,
+		STORE_HT = 15,
+		STOREI = 16,
+		CALL = 17,        // call code address d
+		CALL_REG = 18,    // call relative to LB, OB, ST or HT
+		CALLI = 19,       // call instance method at code address d
+		CALLI_REG = 20,   // call instance method relative to LB, OB, ST or HT
+		CALLD = 21,
+		RETURN = 22,
+		PUSH = 23,
+		POP = 24,
+		JUMP = 25,        // jump to code address d
+		JUMP_REG = 26,    // jump relative to LB, OB, ST or HT
+		JUMPI = 27,
+		JUMPIF = 28,      // jump to code address d if popped value is n
+		JUMPIF_REG = 29,  // conditional jump relative to LB, OB, ST or HT
+		HALT = 30,
+		FAIL_CODE_ADDR = 31,
+		FAIL_INSTR = 32,
+
+		// superinstructions, see Fuser
+		INC_LB = 33,      // LOAD n[LB]; LOADL d; CALL add; STORE n[LB]
+		LB_ADD_K = 34,    // LOAD n[LB]; LOADL d; CALL add
+		LB_LOADL = 35,    // LOAD n[LB]; LOADL d
+		LOAD2_LB = 36,    // LOAD n[LB]; LOAD d[LB]
+		DUP_JUMPIF = 37,  // LOAD -1[ST]; JUMPIF (n) d
+		FIELDREF_K = 38,  // LOADL d; CALL fieldref
+		IF_LT = 39,       // CALL lt; JUMPIF (1) d   or   CALL ge; JUMPIF (0) d
+		IF_LE = 40,
+		IF_GT = 41,
+		IF_GE = 42,
+		IF_EQ = 43,
+		IF_NE = 44,
+
+		// primitives, numbered PRIM + the ordinal of Machine.Prim
+		PRIM = 45,
+		PRIM_ID = 45,
+		PRIM_NOT = 46,
+		PRIM_AND = 47,
+		PRIM_OR = 48,
+		PRIM_SUCC = 49,
+		PRIM_PRED = 50,
+		PRIM_NEG = 51,
+		PRIM_ADD = 52,
+		PRIM_SUB = 53,
+		PRIM_MULT = 54,
+		PRIM_DIV = 55,
+		PRIM_MOD = 56,
+		PRIM_LT = 57,
+		PRIM_LE = 58,
+		PRIM_GE = 59,
+		PRIM_GT = 60,
+		PRIM_EQ = 61,
+		PRIM_NE = 62,
+		PRIM_EOL = 63,
+		PRIM_EOF = 64,
+		PRIM_GET = 65,
+		PRIM_PUT = 66,
+		PRIM_GETEOL = 67,
+		PRIM_PUTEOL = 68,
+		PRIM_GETINT = 69,
+		PRIM_PUTINT = 70,
+		PRIM_PUTINTNL = 71,
+		PRIM_ALLOC = 72,
+		PRIM_DISPOSE = 73,
+		PRIM_NEWOBJ = 74,
+		PRIM_NEWARR = 75,
+		PRIM_ARRAYLEN = 76,
+		PRIM_ARRAYREF = 77,
+		PRIM_ARRAYUPD = 78,
+		PRIM_FIELDREF = 79,
+		PRIM_FIELDUPD = 80,
+
+		// tiered execution, see JitCompiler
+		PROFILE = 81,     // count for the method, then run the instruction replaced
+		COMPILED = 82,    // run compiled code unit n from this entry point
+
+		// more superinstructions, see Fuser
+		LB_SUB_K = 83,    // LOAD n[LB]; LOADL d; CALL sub
+		ADD_LB = 84,      // LOAD d[LB]; CALL add
+		SUB_LB = 85,      // LOAD d[LB]; CALL sub
+		MULT_LB = 86,     // LOAD d[LB]; CALL mult
+		ADD_STORE_LB = 87,   // CALL add; STORE d[LB]
+		STORE_LOAD_LB = 88;  // STORE n[LB]; LOAD d[LB]
+
+	public final static int opCount = 89;
+
+	/**
+	 * decoded code store, indexed by code address, with one extra slot at CT
+	 */
+	public final int[] op, n, d;
+	public final int CT;
+
+	// code store being decoded, packed as Machine.code, and the heap base
+	private final int[] code;
+	private final int heapBase;
+
+	private final static int
+		CB = Machine.Reg.CB.ordinal(),
+		CTReg = Machine.Reg.CT.ordinal(),
+		CP = Machine.Reg.CP.ordinal(),
+		PB = Machine.Reg.PB.ordinal(),
+		PT = Machine.Reg.PT.ordinal(),
+		SB = Machine.Reg.SB.ordinal(),
+		ST = Machine.Reg.ST.ordinal(),
+		LB = Machine.Reg.LB.ordinal(),
+		HB = Machine.Reg.HB.ordinal(),
+		HT = Machine.Reg.HT.ordinal(),
+		OB = Machine.Reg.OB.ordinal();
+
+	/**
+	 * Decode code, a code store packed as Machine.code, for a machine whose
+	 * heap starts at heapBase
+	 */
+	public Decoder(int[] code, int heapBase) {
+		this.code = code;
+		this.heapBase = heapBase;
+		CT = code.length / Machine.instrSize;
+		op = new int[CT + 1];
+		n = new int[CT + 1];
+		d = new int[CT + 1];
+		for (int addr = Machine.CB; addr < CT; addr++) {
+			decodeInstruction(addr);
+		}
+		op[CT] = FAIL_CODE_ADDR;
+	}
+
+	/**
+	 * @return true if register reg holds a value that is known before execution starts
+	 */
+	static boolean isFixed(int reg) {
+		return reg != LB && reg != OB && reg != ST && reg != HT;
+	}
+
+	/**
+	 * @return the content of fixed register reg while the instruction at addr executes
+	 */
+	int fixedContent(int reg, int addr) {
+		if (reg == CB)
+			return Machine.CB;
+		else if (reg == CTReg)
+			return CT;
+		else if (reg == CP)
+			return addr;
+		else if (reg == PB)
+			return Machine.PB;
+		else if (reg == PT)
+			return Machine.PT;
+		else if (reg == SB)
+			return MachineInstance.SB;
+		else if (reg == HB)
+			return heapBase;
+		else
+			return 0;  // ZR
+	}
+
+	/**
+	 * @return target if it is an address in the code segment, otherwise the
+	 * address of the failure instruction placed at CT
+	 */
+	private int codeAddr(int target) {
+		return (target < Machine.CB || target >= CT) ? CT : target;
+	}
+
+	private void emit(int addr, int internalOp, int nField, int dField) {
+		op[addr] = internalOp;
+		n[addr] = nField;
+		d[addr] = dField;
+	}
+
+	private void decodeInstruction(int addr) {
+		int base = addr * Machine.instrSize;
+		int opField = code[base + Machine.opField];
+		int nField = code[base + Machine.nField];
+		int rField = code[base + Machine.rField];
+		int dField = code[base + Machine.dField];
+
+		if (opField < 0 || opField >= Machine.intToOp.length
+				|| rField < 0 || rField >= Machine.intToReg.length) {
+			emit(addr, FAIL_INSTR, nField, dField);
+			return;
+		}
+
+		boolean fixed = isFixed(rField);
+		int target = fixed ? dField + fixedContent(rField, addr) : dField;
+
+		switch (Machine.intToOp[opField]) {
+		case LOAD:
+			emit(addr, fixed ? LOAD : registerForm(LOAD_LB, rField), 0, target);
+			break;
+		case LOADA:
+			emit(addr, fixed ? LOADL : registerForm(LOADA_LB, rField), 0, target);
+			break;
+		case LOADI:
+			emit(addr, LOADI, 0, 0);
+			break;
+		case LOADL:
+			emit(addr, LOADL, 0, dField);
+			break;
+		case STORE:
+			emit(addr, fixed ? STORE : registerForm(STORE_LB, rField), 0, target);
+			break;
+		case STOREI:
+			emit(addr, STOREI, 0, 0);
+			break;
+		case CALL:
+			if (!fixed)
+				emit(addr, CALL_REG, 0, dField);
+			else if (target >= Machine.PB) {
+				if (target - Machine.PB < Machine.intToPrim.length)
+					emit(addr, PRIM + target - Machine.PB, 0, 0);
+				else
+					emit(addr, FAIL_INSTR, nField, dField);
+			} else
+				emit(addr, CALL, 0, codeAddr(target));
+			break;
+		case CALLI:
+			if (!fixed)
+				emit(addr, CALLI_REG, 0, dField);
+			else if (target >= CT)
+				emit(addr, FAIL_INSTR, nField, dField);
+			else
+				emit(addr, CALLI, 0, codeAddr(target));
+			break;
+		case CALLD:
+			emit(addr, CALLD, nField, dField);
+			break;
+		case RETURN:
+			if (nField < 0 || nField > 1)
+				emit(addr, FAIL_INSTR, nField, dField);
+			else
+				emit(addr, RETURN, nField, dField);
+			break;
+		case PUSH:
+			emit(addr, PUSH, 0, dField);
+			break;
+		case POP:
+			emit(addr, POP, 0, dField);
+			break;
+		case JUMP:
+			if (fixed)
+				emit(addr, JUMP, 0, codeAddr(target));
+			else
+				emit(addr, JUMP_REG, 0, dField);
+			break;
+		case JUMPI:
+			emit(addr, JUMPI, 0, 0);
+			break;
+		case JUMPIF:
+			if (fixed)
+				emit(addr, JUMPIF, nField, codeAddr(target));
+			else
+				emit(addr, JUMPIF_REG, nField, dField);
+			break;
+		case HALT:
+			emit(addr, HALT, nField, 0);
+			break;
+		}
+	}
+
+	/**
+	 * @return the opcode among the four consecutive LB, OB, ST, HT forms starting
+	 * at lbForm that addresses relative to register reg
+	 */
+	private static int registerForm(int lbForm, int reg) {
+		if (reg == LB)
+			return lbForm;
+		else if (reg == OB)
+			return lbForm + 1;
+		else if (reg == ST)
+			return lbForm + 2;
+		else
+			return lbForm + 3;  // HT
+	}
+}
@@ -7,6 +7,8 @@ package mJAM;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedSet;
@@ -28,6 +30,11 @@ public class Disassembler {
 	private boolean error = false;
 	private Map<Integer, String> addrToLabel;
 
+	// execution counts to annotate the instructions with, if any, and
+	// addresses to label besides the branch targets
+	private long[] counts;
+	private Collection<Integer> extraTargets = Collections.emptySet();
+
 	public Disassembler(String objectFileName) {
 		this.objectFileName = objectFileName;
 	}
@@ -79,29 +86,34 @@ public class Disassembler {
 	}
 		
 	/**
-	 * Writes the given instruction in assembly-code format.
-	 * @param instr   the instruction to display.
+	 * Writes the instruction at the given code store address in assembly-code format.
+	 * @param addr   the address of the instruction to display.
 	 */
-	private void writeInstruction(Instruction instr) {
+	private void writeInstruction(int addr) {
+
+		int op = Machine.opAt(addr);
+		int n = Machine.nAt(addr);
+		int r = Machine.rAt(addr);
+		int d = Machine.dAt(addr);
 
 		String targetLabel = "***";
 		// get label of destination addr, if instr transfers control
-		if (instr.r == Machine.Reg.CB.ordinal())
-			targetLabel = addrToLabel.get(instr.d);
+		if (r == Machine.Reg.CB.ordinal())
+			targetLabel = addrToLabel.get(d);
 
-		Machine.Op instruction = Machine.intToOp[instr.op];
+		Machine.Op instruction = Machine.intToOp[op];
 		asmWrite(String.format("%-7s",instruction.toString()));
 		switch (instruction) {
 		case LOAD:
 			blankN();
-			writeD(instr.d);
-			writeR('[', instr.r, ']');
+			writeD(d);
+			writeR('[', r, ']');
 			break;
 
 		case LOADA:
 			blankN();
-			writeD(instr.d);
-			writeR('[', instr.r, ']');
+			writeD(d);
+			writeR('[', r, ']');
 			break;
 
 		case LOADI:
@@ -109,22 +121,22 @@ public class Disassembler {
 
 		case LOADL:
 			blankN();
-			writeD(instr.d);
+			writeD(d);
 			break;
 
 		case STORE:
 			blankN();
-			writeD(instr.d);
-			writeR('[', instr.r, ']');
+			writeD(d);
+			writeR('[', r, ']');
 			break;
 
 		case STOREI:
 			break;
 
 		case CALL:
-			if (instr.r == Machine.Reg.PB.ordinal()) {
+			if (r == Machine.Reg.PB.ordinal()) {
 				blankN();
-				writePrimitive(instr.d);
+				writePrimitive(d);
 			} else {
 				blankN();
 				asmWrite(targetLabel);
@@ -137,23 +149,23 @@ public class Disassembler {
 			break;
 
 		case RETURN:
-			writeN(instr.n);
-			writeD(instr.d);
+			writeN(n);
+			writeD(d);
 			break;
 
 		case CALLD:
 			blankN();
-			writeD(instr.d);
+			writeD(d);
 			break;
 
 		case PUSH:
 			blankN();
-			writeD(instr.d);
+			writeD(d);
 			break;
 
 		case POP:
 			blankN();
-			writeD(instr.d);
+			writeD(d);
 			break;
 
 		case JUMP:
@@ -165,19 +177,19 @@ public class Disassembler {
 			break;
 
 		case JUMPIF:
-			writeN(instr.n);
+			writeN(n);
 			asmWrite(targetLabel);
 			break;
 
 		case HALT:
-			writeN(instr.n);
+			writeN(n);
 			break;
 
 		default:
 			asmWrite("????  ");
-			writeN(instr.n);
-			writeD(instr.d);
-			writeR('[', instr.r, ']');
+			writeN(n);
+			writeD(d);
+			writeR('[', r, ']');
 			break;
 		}
 	}
@@ -199,28 +211,28 @@ public class Disassembler {
 		// collect all addresses that may be the target of a jump instruction
 		SortedSet<Integer> targets = new TreeSet<Integer>();
 		for (int addr = Machine.CB; addr < Machine.CT; addr++) {
-			Instruction inst = Machine.code[addr];
-			Machine.Op op = Machine.intToOp[inst.op];
+			Machine.Op op = Machine.intToOp[Machine.opAt(addr)];
 			switch (op) {
 			case CALL:
 			case CALLI:
 				// only consider calls (branches) within code memory (i.e. not primitives)
-				if (inst.r == Machine.Reg.CB.ordinal())
-					targets.add(inst.d);
+				if (Machine.rAt(addr) == Machine.Reg.CB.ordinal())
+					targets.add(Machine.dAt(addr));
 				break;
 			case JUMP:
 				// address following an unconditional branch is an implicit target
 				targets.add(addr+1);
-				targets.add(inst.d);
+				targets.add(Machine.dAt(addr));
 				break;
 			case JUMPIF:
 				// a jump of any sort creates a branch target
-				targets.add(inst.d);
+				targets.add(Machine.dAt(addr));
 				break;
 			default:
 				break;
 			}
 		}
+		targets.addAll(extraTargets);
 
 		// map branch target addresses to unique labels
 		addrToLabel = new HashMap<Integer, String>();
@@ -233,6 +245,11 @@ public class Disassembler {
 		// disassemble each instruction
 		for (int addr = Machine.CB; addr < Machine.CT; addr++) {
 			
+			// execution count, if annotating
+			if (counts != null)
+				asmWrite(addr < counts.length && counts[addr] > 0
+						? String.format("%12d  ", counts[addr]) : "           -  ");
+
 			// generate instruction address
 			asmWrite(String.format("%3d  ", addr));
 
@@ -243,7 +260,7 @@ public class Disassembler {
 				asmWrite("       ");
 
 			// instruction
-			writeInstruction(Machine.code[addr]);
+			writeInstruction(addr);
 
 			// newline 
 			asmWrite("\n");
@@ -257,6 +274,13 @@ public class Disassembler {
 		}
 	}
 
+	/**
+	 * @return the label of addr in the last disassembly, or null if none
+	 */
+	public String labelAt(int addr) {
+		return addrToLabel == null ? null : addrToLabel.get(addr);
+	}
+
 	private void asmWrite(String s) {
 		try {
 			asmOut.write(s);
@@ -279,6 +303,23 @@ public class Disassembler {
 	 * @return true if error encountered else false
 	 */
 	public boolean disassemble() {
+		// assembler-code output file name
+		if (objectFileName.endsWith(".mJAM"))
+			asmName = objectFileName.substring(0, objectFileName.length() - 5)
+					+ ".asm";
+		else
+			asmName = objectFileName + ".asm";
+
+		return disassemble(asmName, null, Collections.<Integer>emptySet());
+	}
+
+	/**
+	 * Disassemble object file into asmFileName, labelling the extra targets
+	 * as well as the branch targets, and prefixing each instruction with its
+	 * execution count if counts is not null
+	 * @return true if error encountered else false
+	 */
+	public boolean disassemble(String asmFileName, long[] counts, Collection<Integer> extraTargets) {
 		ObjectFile objectFile = new ObjectFile(objectFileName);
 
 		// read object file into code store
@@ -288,12 +329,9 @@ public class Disassembler {
 			return true;
 		}
 
-		// assembler-code output file name
-		if (objectFileName.endsWith(".mJAM"))
-			asmName = objectFileName.substring(0, objectFileName.length() - 5)
-					+ ".asm";
-		else
-			asmName = objectFileName + ".asm";
+		asmName = asmFileName;
+		this.counts = counts;
+		this.extraTargets = extraTargets;
 
 		// disassemble to file
 		disassembleProgram(asmName);
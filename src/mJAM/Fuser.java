@@ -0,0 +1,138 @@
+/**
+ * Rewrites common instruction sequences in the decoded code store
+ * into superinstructions
+ */
+package mJAM;
+
+/**
+ * Load time pass run after decoding (see Decoder).  Each recognized sequence is
+ * replaced by a single superinstruction at the address of its first
+ * instruction; the superinstruction does the work of the whole sequence and
+ * continues at the address following it.
+ *
+ * The remaining instructions of a sequence are left in place, so a branch
+ * into the middle of a sequence (or a return address pointing there) still
+ * finds the instructions it expects and every code address keeps its meaning.
+ * Sequences are matched against the decoded code before fusion, so they may
+ * overlap: the tail of one sequence can itself start another.
+ *
+ * When a superinstruction would fail (data store full, overflow, bad field
+ * reference) it leaves the machine state untouched and the execution loop
+ * runs the original instructions of the sequence with the reference
+ * interpreter, which reports the failure exactly as it always has.
+ */
+public final class Fuser {
+
+	// decoded code store, and its code before fusion
+	private final Decoder decoded;
+	private final int[] op, n, d;
+
+	private Fuser(Decoder decoded) {
+		this.decoded = decoded;
+		op = decoded.op.clone();
+		n = decoded.n.clone();
+		d = decoded.d.clone();
+	}
+
+	/**
+	 * Fuse sequences in the decoded code store
+	 */
+	public static void fuse(Decoder decoded) {
+		Fuser fuser = new Fuser(decoded);
+		for (int addr = Machine.CB; addr < decoded.CT; addr++) {
+			fuser.fuseAt(addr);
+		}
+	}
+
+	private void replace(int addr, int fusedOp, int nField, int dField) {
+		decoded.op[addr] = fusedOp;
+		decoded.n[addr] = nField;
+		decoded.d[addr] = dField;
+	}
+
+	private void fuseAt(int addr) {
+		// number of decoded instructions from addr up to the failure slot at CT
+		int avail = decoded.CT - addr;
+
+		switch (op[addr]) {
+		case Decoder.LOAD_LB:
+			if (avail >= 4 && op[addr + 1] == Decoder.LOADL && op[addr + 2] == Decoder.PRIM_ADD
+					&& op[addr + 3] == Decoder.STORE_LB && d[addr + 3] == d[addr]) {
+				// x = x + k
+				replace(addr, Decoder.INC_LB, d[addr], d[addr + 1]);
+			} else if (avail >= 3 && op[addr + 1] == Decoder.LOADL && op[addr + 2] == Decoder.PRIM_ADD) {
+				// ... x + k
+				replace(addr, Decoder.LB_ADD_K, d[addr], d[addr + 1]);
+			} else if (avail >= 3 && op[addr + 1] == Decoder.LOADL && op[addr + 2] == Decoder.PRIM_SUB) {
+				// ... x - k
+				replace(addr, Decoder.LB_SUB_K, d[addr], d[addr + 1]);
+			} else if (avail >= 2 && op[addr + 1] == Decoder.LOADL) {
+				replace(addr, Decoder.LB_LOADL, d[addr], d[addr + 1]);
+			} else if (avail >= 2 && op[addr + 1] == Decoder.PRIM_ADD) {
+				// ... + x
+				replace(addr, Decoder.ADD_LB, 0, d[addr]);
+			} else if (avail >= 2 && op[addr + 1] == Decoder.PRIM_SUB) {
+				replace(addr, Decoder.SUB_LB, 0, d[addr]);
+			} else if (avail >= 2 && op[addr + 1] == Decoder.PRIM_MULT) {
+				replace(addr, Decoder.MULT_LB, 0, d[addr]);
+			} else if (avail >= 2 && op[addr + 1] == Decoder.LOAD_LB) {
+				replace(addr, Decoder.LOAD2_LB, d[addr], d[addr + 1]);
+			}
+			break;
+		case Decoder.STORE_LB:
+			// x = ...; followed by a use of y
+			if (avail >= 2 && op[addr + 1] == Decoder.LOAD_LB)
+				replace(addr, Decoder.STORE_LOAD_LB, d[addr], d[addr + 1]);
+			break;
+		case Decoder.PRIM_ADD:
+			// x = ... + ...
+			if (avail >= 2 && op[addr + 1] == Decoder.STORE_LB)
+				replace(addr, Decoder.ADD_STORE_LB, 0, d[addr + 1]);
+			break;
+		case Decoder.LOAD_ST:
+			// short circuit test of && and ||
+			if (avail >= 2 && d[addr] == -1 && op[addr + 1] == Decoder.JUMPIF)
+				replace(addr, Decoder.DUP_JUMPIF, n[addr + 1], d[addr + 1]);
+			break;
+		case Decoder.LOADL:
+			// field of a qualified reference
+			if (avail >= 2 && op[addr + 1] == Decoder.PRIM_FIELDREF)
+				replace(addr, Decoder.FIELDREF_K, 0, d[addr]);
+			break;
+		case Decoder.PRIM_LT:
+		case Decoder.PRIM_LE:
+		case Decoder.PRIM_GT:
+		case Decoder.PRIM_GE:
+		case Decoder.PRIM_EQ:
+		case Decoder.PRIM_NE:
+			// comparison controlling an if or while
+			if (avail >= 2 && op[addr + 1] == Decoder.JUMPIF && (n[addr + 1] == Machine.trueRep
+					|| n[addr + 1] == Machine.falseRep))
+				replace(addr, compareOp(op[addr], n[addr + 1] == Machine.trueRep), 0, d[addr + 1]);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * @return the IF_xx opcode that jumps when comparison primitive compareOp
+	 * yields jumpWhen
+	 */
+	private static int compareOp(int compareOp, boolean jumpWhen) {
+		switch (compareOp) {
+		case Decoder.PRIM_LT:
+			return jumpWhen ? Decoder.IF_LT : Decoder.IF_GE;
+		case Decoder.PRIM_LE:
+			return jumpWhen ? Decoder.IF_LE : Decoder.IF_GT;
+		case Decoder.PRIM_GT:
+			return jumpWhen ? Decoder.IF_GT : Decoder.IF_LE;
+		case Decoder.PRIM_GE:
+			return jumpWhen ? Decoder.IF_GE : Decoder.IF_LT;
+		case Decoder.PRIM_EQ:
+			return jumpWhen ? Decoder.IF_EQ : Decoder.IF_NE;
+		default: // Decoder.PRIM_NE
+			return jumpWhen ? Decoder.IF_NE : Decoder.IF_EQ;
+		}
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * Storage management for the mJAM heap
+ */
+package mJAM;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Allocation and garbage collection for the heap, which occupies [HB, HT) of
+ * the data store.  Every heap block starts with a two word header, a tag and
+ * the number of words that follow it: objects are tagged with the address of
+ * their class object, arrays with arrayTag, blocks reserved by the alloc
+ * primitive with rawTag and free blocks with freeTag.  The heap can therefore
+ * be walked from HB to HT by the sizes in the headers.
+ *
+ * The collector is a conservative mark-sweep collector.  mJAM words carry no
+ * types, so any word of the stack (which holds the static segment), of OB or
+ * of a reachable block that holds the address of a heap block keeps that
+ * block alive.  As any of these words may be an integer that happens to look
+ * like an address, blocks are never moved.  Instead the sweep coalesces
+ * adjacent unreachable and free blocks, hands the free run at the top of the
+ * heap back to bump allocation by lowering HT, and keeps the holes below it
+ * on free lists, which allocation uses once the space above HT runs out.
+ *
+ * In explicit mode there is no collector.  The dispose primitive frees a
+ * block onto the free lists, which allocation tries before bumping HT.
+ * Adjacent free blocks are coalesced lazily, by a sweep without marking,
+ * once enough words have been disposed and no free block fits.  A bitmap
+ * of the block headers below HT is kept, so that dispose only frees the
+ * address of a block, and not some word within one.
+ */
+public final class Heap {
+
+	// the machine whose heap this is
+	private final MachineInstance machine;
+
+	Heap(MachineInstance machine) {
+		this.machine = machine;
+	}
+
+	public final static int arrayTag = -2, freeTag = -3, rawTag = -4;
+
+	// collect garbage before growing the heap
+	boolean collecting = true;
+
+	// report every collection on System.err
+	boolean logging = false;
+
+	// free blocks only when disposed, see above
+	boolean explicit = false;
+
+	// free blocks below HT, as header addresses: free[size] holds the blocks
+	// of size words for size <= smallSize, and free[0] all larger blocks
+	private final static int smallSize = 32;
+	private final int[][] free = new int[smallSize + 1][];
+	private final int[] freeCount = new int[smallSize + 1];
+	private long freeWords;
+
+	// words disposed since free blocks were last coalesced
+	private long disposedWords;
+
+	// in explicit mode, the headers of the blocks below HT, relative to HB
+	private final BitSet starts = new BitSet();
+
+	// collector state
+	private BitSet blocks, marked;
+	private int[] work = new int[256];
+	private int workCount;
+	private int collections;
+	private long totalReclaimed, totalPause;
+
+	/**
+	 * Forget all free blocks and statistics, for a new run of the machine
+	 */
+	void reset() {
+		for (int size = 0; size <= smallSize; size++) {
+			free[size] = new int[16];
+			freeCount[size] = 0;
+		}
+		freeWords = 0;
+		disposedWords = 0;
+		starts.clear();
+		collections = 0;
+		totalReclaimed = 0;
+		totalPause = 0;
+	}
+
+	/**
+	 * @return the number of heap words in use
+	 */
+	long inUse() {
+		return machine.HT - machine.HB - freeWords;
+	}
+
+	/**
+	 * Reserve a block of size words, including its header, which the caller
+	 * sets.  Bump allocates above HT while the data array has room, then
+	 * reuses free blocks, then collects garbage and finally grows the data
+	 * array.  In explicit mode free blocks are reused first, and coalesced
+	 * instead of collected.
+	 * @return the address of the block, or -1 after signalling failure if the
+	 * heap would exceed maxHeapSize
+	 */
+	int allocate(int size) {
+		int addr;
+		if (explicit) {
+			addr = reuse(size);
+			if (addr < 0 && disposedWords >= size
+					&& 8 * disposedWords >= machine.HT - machine.HB) {
+				coalesce();
+				addr = reuse(size);
+			}
+			if (addr >= 0)
+				return addr;
+		}
+		if (machine.data.length - machine.HT >= size)
+			return bump(size);
+		if (!explicit) {
+			addr = reuse(size);
+			if (addr >= 0)
+				return addr;
+		}
+
+		if (explicit ? disposedWords > 0 : collecting && machine.HT > machine.HB) {
+			if (explicit) {
+				coalesce();
+			} else {
+				collect();
+				// grow as well if less than half the heap is free, so that
+				// the next collection is not due straight away
+				long capacity = machine.data.length - machine.HB;
+				if (2 * (capacity - inUse()) < capacity)
+					grow(machine.data.length + capacity);
+			}
+			if (machine.data.length - machine.HT >= size)
+				return bump(size);
+			addr = reuse(size);
+			if (addr >= 0)
+				return addr;
+		}
+
+		long top = (long) machine.HT + size;
+		if (top - machine.HB > machine.maxHeapSize) {
+			machine.status = MachineInstance.failedOutOfMemory;
+			return -1;
+		}
+		grow(Math.max(top, machine.HB + 2L * (machine.data.length - machine.HB)));
+		return bump(size);
+	}
+
+	/**
+	 * Free the block of the object, array or alloc block at addr, in explicit
+	 * mode
+	 * @return false if addr is not the address of a block in use
+	 */
+	boolean dispose(int addr) {
+		int[] data = machine.data;
+		int header = addr - 2;
+		if (header < machine.HB || addr > machine.HT || !starts.get(header - machine.HB)
+				|| data[header] == freeTag)
+			return false;
+		int size = data[addr - 1] + 2;
+		disposedWords += size;
+		if (header + size == machine.HT) {
+			machine.HT = header;
+			starts.clear(header - machine.HB);
+		} else {
+			addFree(header, size);
+		}
+		return true;
+	}
+
+	private int bump(int size) {
+		int addr = machine.HT;
+		machine.HT = addr + size;
+		if (explicit)
+			starts.set(addr - machine.HB);
+		return addr;
+	}
+
+	// replace the data array by one of the given length, up to HB + maxHeapSize
+	private void grow(long length) {
+		length = Math.min(length, (long) machine.HB + machine.maxHeapSize);
+		if (length > machine.data.length)
+			machine.data = Arrays.copyOf(machine.data, (int) length);
+	}
+
+	/**
+	 * @return the address of a free block of exactly size words, or of the
+	 * first part of a larger one, or -1 if none fits
+	 */
+	private int reuse(int size) {
+		if (freeWords < size)
+			return -1;
+		if (size <= smallSize) {
+			if (freeCount[size] > 0)
+				return split(free[size][--freeCount[size]], size, size);
+			// the rest of a split block needs room for a header
+			for (int blockSize = size + 2; blockSize <= smallSize; blockSize++) {
+				if (freeCount[blockSize] > 0)
+					return split(free[blockSize][--freeCount[blockSize]], blockSize, size);
+			}
+		}
+		int[] data = machine.data;
+		for (int i = 0; i < freeCount[0]; i++) {
+			int addr = free[0][i];
+			int blockSize = data[addr + 1] + 2;
+			if (blockSize == size || blockSize - size >= 2) {
+				free[0][i] = free[0][--freeCount[0]];
+				return split(addr, blockSize, size);
+			}
+		}
+		return -1;
+	}
+
+	private int split(int addr, int blockSize, int size) {
+		freeWords -= blockSize;
+		if (blockSize > size)
+			addFree(addr + size, blockSize - size);
+		return addr;
+	}
+
+	private void addFree(int addr, int size) {
+		machine.data[addr] = freeTag;
+		machine.data[addr + 1] = size - 2;
+		if (explicit)
+			starts.set(addr - machine.HB);
+		int list = size <= smallSize ? size : 0;
+		if (freeCount[list] == free[list].length)
+			free[list] = Arrays.copyOf(free[list], 2 * freeCount[list]);
+		free[list][freeCount[list]++] = addr;
+		freeWords += size;
+	}
+
+	/**
+	 * Collect garbage: mark the blocks reachable from the roots, then sweep
+	 * the heap into free blocks and lower HT to the last block in use
+	 */
+	void collect() {
+		long start = System.nanoTime();
+		int[] data = machine.data;
+		int hb = machine.HB, ht = machine.HT;
+		long before = inUse();
+
+		// find the block headers; give up if the heap has been overwritten
+		blocks = new BitSet(ht - hb);
+		for (int addr = hb; addr < ht; addr += data[addr + 1] + 2) {
+			if (data[addr + 1] < 0 || data[addr + 1] > ht - addr - 2) {
+				blocks = null;
+				return;
+			}
+			blocks.set(addr - hb);
+		}
+
+		// mark from the stack, which holds the static segment, and OB
+		marked = new BitSet(ht - hb);
+		workCount = 0;
+		for (int addr = MachineInstance.SB; addr < machine.ST; addr++)
+			mark(data[addr]);
+		mark(machine.OB);
+		while (workCount > 0) {
+			int addr = work[--workCount];
+			int end = addr + 2 + data[addr + 1];
+			for (int i = addr + 2; i < end; i++)
+				mark(data[i]);
+		}
+
+		sweep();
+		blocks = null;
+		marked = null;
+
+		long pause = System.nanoTime() - start;
+		long reclaimed = before - inUse();
+		collections++;
+		totalReclaimed += reclaimed;
+		totalPause += pause;
+		if (logging)
+			System.err.println("[GC " + collections + ": " + before + " -> " + inUse()
+					+ " words in use, " + 4 * reclaimed + " bytes reclaimed, heap "
+					+ (data.length - hb) + " words, " + millis(pause) + " ms]");
+	}
+
+	/**
+	 * Coalesce adjacent free blocks, and lower HT past the free blocks at the
+	 * top of the heap
+	 */
+	void coalesce() {
+		marked = null;
+		sweep();
+	}
+
+	// rebuild the free lists from the blocks that are free or, if the heap
+	// has been marked, unmarked, coalescing runs of them
+	private void sweep() {
+		int[] data = machine.data;
+		int hb = machine.HB, ht = machine.HT;
+		for (int size = 0; size <= smallSize; size++)
+			freeCount[size] = 0;
+		freeWords = 0;
+		disposedWords = 0;
+		int run = -1;
+		for (int addr = hb; addr < ht; addr += data[addr + 1] + 2) {
+			if (data[addr] == freeTag || marked != null && !marked.get(addr - hb)) {
+				if (run < 0)
+					run = addr;
+			} else if (run >= 0) {
+				addFree(run, addr - run);
+				if (explicit)
+					starts.clear(run + 1 - hb, addr - hb);
+				run = -1;
+			}
+		}
+		if (run >= 0) {
+			machine.HT = run;
+			if (explicit)
+				starts.clear(run - hb, ht - hb);
+		}
+	}
+
+	// mark the block whose address (just past the header) may be value
+	private void mark(int value) {
+		int header = value - 2 - machine.HB;
+		if (header < 0 || value > machine.HT || !blocks.get(header) || marked.get(header)
+				|| machine.data[value - 2] == freeTag)
+			return;
+		marked.set(header);
+		if (workCount == work.length)
+			work = Arrays.copyOf(work, 2 * workCount);
+		work[workCount++] = value - 2;
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / 1e6);
+	}
+
+	/**
+	 * Report the totals of all collections on System.err
+	 */
+	void report() {
+		System.err.println("[GC total: " + collections + " collections, " + 4 * totalReclaimed
+				+ " bytes reclaimed, " + millis(totalPause) + " ms paused]");
+	}
+}
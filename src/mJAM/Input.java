@@ -0,0 +1,98 @@
+/**
+ * Buffered input for the mJAM get primitives
+ */
+package mJAM;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input of the get, geteol and getint primitives.  The input stream of the
+ * machine is read in blocks, and integers are parsed straight out of the block.  currentChar is
+ * the last character read, or -1 at the end of the input, as tested by the
+ * eol and eof primitives.  Buffered output is flushed before reading a
+ * block, so that prompts show up.
+ */
+final class Input {
+
+	private final byte[] buffer = new byte[1 << 16];
+	private int position, limit;
+
+	int currentChar;
+
+	private final InputStream in;
+	private final Output output;
+
+	Input(InputStream in, Output output) {
+		this.in = in;
+		this.output = output;
+	}
+
+	/**
+	 * Read the next character into currentChar
+	 */
+	int read() throws IOException {
+		if (position == limit && !fill())
+			return currentChar = -1;
+		return currentChar = buffer[position++] & 0xff;
+	}
+
+	/**
+	 * Skip the rest of the current line, up to and including its end
+	 */
+	void skipLine() throws IOException {
+		do {
+			while (position < limit) {
+				if (buffer[position++] == '\n') {
+					currentChar = '\n';
+					return;
+				}
+			}
+		} while (fill());
+		currentChar = -1;
+	}
+
+	/**
+	 * Read an integer: white space, any number of signs of which the last
+	 * counts, then digits.  currentChar is left at the character after the
+	 * digits.
+	 */
+	int readInt() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (Character.isWhitespace((char) c));
+
+		int sign = 1;
+		while (c == '-' || c == '+') {
+			sign = c == '-' ? -1 : 1;
+			c = read();
+		}
+
+		int value = 0;
+		while (c >= '0' && c <= '9') {
+			value = value * 10 + (c - '0');
+			// digits within the block need no further checks
+			while (position < limit) {
+				c = buffer[position++] & 0xff;
+				if (c < '0' || c > '9')
+					break;
+				value = value * 10 + (c - '0');
+			}
+			if (c >= '0' && c <= '9')
+				c = read();
+		}
+		currentChar = c;
+		return sign * value;
+	}
+
+	private boolean fill() throws IOException {
+		output.flush();
+		int count = in.read(buffer, 0, buffer.length);
+		if (count <= 0)
+			return false;
+		position = 0;
+		limit = count;
+		return true;
+	}
+}
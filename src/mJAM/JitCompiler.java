@@ -0,0 +1,296 @@
+/**
+ * Compiles hot mJAM methods to JVM bytecode while the program runs
+ */
+package mJAM;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * Second tier of the tiered execution mode.  A method is identified by its
+ * entry address, found from the targets of CALL and CALLI as the Disassembler
+ * does, and extends up to the next method entry.  While a method runs in the
+ * execution loop, its entry and the heads of its loops carry the PROFILE
+ * opcode, which counts invocations and backward jumps for the method.  Once
+ * the count reaches compileThreshold the method is translated to a JVM class
+ * (see Translator) and loaded as a hidden class, so that HotSpot compiles it
+ * to native code, and the entry points of the translation get the COMPILED
+ * opcode, which runs the translation.
+ *
+ * Translations are kept with the code store they were made from, and shared
+ * by every machine that runs the same code store array with the same heap.
+ * A method compiled by one run is compiled from the start of the next, and
+ * a method that could not be translated is no longer profiled.
+ *
+ * Hidden classes need Java 15; on older runtimes the translations are loaded
+ * by a class loader of their own instead.
+ */
+public final class JitCompiler {
+
+	/**
+	 * A translated method, see Translator
+	 */
+	public interface CompiledCode {
+		int run(int[] data, int[] regs);
+	}
+
+	public final static int compileThreshold = 1000;
+
+	// translation state of a method of Translations.unitOf, when not a unit
+	private final static int notCompiled = -1, untranslatable = -2;
+
+	/**
+	 * The translations of the methods of one code store
+	 */
+	private final static class Translations {
+		// heap the translations were made for
+		final int hb;
+		final boolean explicit;
+
+		// unit of each method, or notCompiled or untranslatable, and the entry
+		// points of the units
+		final int[] unitOf;
+		final int[][] entryPoints;
+
+		volatile CompiledCode[] units = new CompiledCode[0];
+
+		Translations(int hb, boolean explicit, int methods) {
+			this.hb = hb;
+			this.explicit = explicit;
+			unitOf = new int[methods];
+			Arrays.fill(unitOf, notCompiled);
+			entryPoints = new int[methods][];
+		}
+	}
+
+	// translations by code store
+	private final static Map<int[], Translations> translations = new WeakHashMap<int[], Translations>();
+
+	// machine running the code, and its decoded code store
+	private final MachineInstance machine;
+	private final Decoder decoded;
+
+	// decoded code store before fusion
+	private final int[] op, n, d;
+
+	// method entry addresses, ascending, and the method of each code address
+	private final int[] entries;
+	private final int[] methodOf;
+	private final int[] counts;
+
+	// decoded instruction replaced by PROFILE at each profiled address
+	private int[] profiledOp;
+
+	// translations of the code store of machine
+	private final Translations shared;
+	private final int[] regs = new int[5];
+
+	/**
+	 * Find the methods of the decoded code store of machine, to be called
+	 * after decoding and before Fuser.fuse()
+	 */
+	JitCompiler(MachineInstance machine) {
+		this.machine = machine;
+		decoded = machine.decoder;
+		op = decoded.op.clone();
+		n = decoded.n.clone();
+		d = decoded.d.clone();
+
+		TreeSet<Integer> targets = new TreeSet<Integer>();
+		for (int addr = Machine.CB; addr < decoded.CT; addr++) {
+			if ((op[addr] == Decoder.CALL || op[addr] == Decoder.CALLI) && d[addr] < decoded.CT)
+				targets.add(d[addr]);
+		}
+		entries = new int[targets.size()];
+		int i = 0;
+		for (int addr : targets)
+			entries[i++] = addr;
+		counts = new int[entries.length];
+
+		methodOf = new int[decoded.CT + 1];
+		int method = -1;
+		for (int addr = Machine.CB; addr <= decoded.CT; addr++) {
+			if (method + 1 < entries.length && entries[method + 1] == addr)
+				method++;
+			methodOf[addr] = addr == decoded.CT ? -1 : method;
+		}
+
+		synchronized (translations) {
+			Translations t = translations.get(machine.code);
+			if (t == null || t.hb != machine.HB || t.explicit != machine.heap.explicit) {
+				t = new Translations(machine.HB, machine.heap.explicit, entries.length);
+				translations.put(machine.code, t);
+			}
+			shared = t;
+		}
+	}
+
+	/**
+	 * Place COMPILED at the entry points of the methods already compiled,
+	 * and PROFILE at the entries and loop heads of the methods that may yet
+	 * be, to be called after Fuser.fuse()
+	 */
+	public void installProfiling() {
+		profiledOp = new int[decoded.CT];
+		for (int method = 0; method < entries.length; method++) {
+			int unit = unit(method);
+			if (unit >= 0)
+				install(method, unit);
+			else if (unit == notCompiled)
+				profile(entries[method]);
+		}
+		for (int addr = Machine.CB; addr < decoded.CT; addr++) {
+			if ((op[addr] == Decoder.JUMP || op[addr] == Decoder.JUMPIF)
+					&& d[addr] <= addr && methodOf[addr] >= 0 && methodOf[d[addr]] == methodOf[addr])
+				profile(d[addr]);
+		}
+	}
+
+	private void profile(int addr) {
+		if (unit(methodOf[addr]) != notCompiled)
+			return;
+		if (decoded.op[addr] != Decoder.PROFILE) {
+			profiledOp[addr] = decoded.op[addr];
+			decoded.op[addr] = Decoder.PROFILE;
+		}
+	}
+
+	/**
+	 * Count an invocation or loop iteration of the method containing addr,
+	 * the address of a PROFILE instruction, and compile it when it is hot.
+	 * @return true if addr is now an entry point of compiled code
+	 */
+	boolean count(int addr) {
+		int method = methodOf[addr];
+		if (++counts[method] < compileThreshold)
+			return false;
+		compile(method);
+		return decoded.op[addr] == Decoder.COMPILED;
+	}
+
+	private void compile(int method) {
+		int start = entries[method];
+		int end = method + 1 < entries.length ? entries[method + 1] : decoded.CT;
+		int unit;
+		synchronized (shared) {
+			unit = shared.unitOf[method];
+			if (unit == notCompiled) {
+				Translator translator = new Translator(op, n, d, decoded.CT, start, end, machine.HB,
+						machine.heap.explicit);
+				CompiledCode code = load(translator.translate());
+				if (code == null) {
+					unit = untranslatable;
+				} else {
+					unit = shared.units.length;
+					shared.units = Arrays.copyOf(shared.units, unit + 1);
+					shared.units[unit] = code;
+					shared.entryPoints[method] = translator.entryPoints();
+				}
+				shared.unitOf[method] = unit;
+			}
+		}
+		// stop profiling the method
+		for (int addr = start; addr < end; addr++) {
+			if (decoded.op[addr] == Decoder.PROFILE)
+				decoded.op[addr] = profiledOp[addr];
+		}
+		if (unit >= 0)
+			install(method, unit);
+	}
+
+	/**
+	 * @return the unit compiled for method, or notCompiled or untranslatable
+	 */
+	private int unit(int method) {
+		synchronized (shared) {
+			return shared.unitOf[method];
+		}
+	}
+
+	/**
+	 * Place COMPILED at the entry points of unit, the translation of method
+	 */
+	private void install(int method, int unit) {
+		int[] entryPoints;
+		synchronized (shared) {
+			entryPoints = shared.entryPoints[method];
+		}
+		for (int addr : entryPoints) {
+			decoded.op[addr] = Decoder.COMPILED;
+			decoded.n[addr] = unit;
+		}
+	}
+
+	/**
+	 * @return an instance of the class in classFile, or null if it cannot be
+	 * loaded
+	 */
+	private static CompiledCode load(byte[] classFile) {
+		if (classFile == null)
+			return null;
+		try {
+			Class<?> c = defineHidden(classFile);
+			if (c == null)
+				c = new Loader().define(classFile);
+			return (CompiledCode) c.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the class defined by MethodHandles.Lookup.defineHiddenClass, or
+	 * null if the runtime has no hidden classes
+	 */
+	private static Class<?> defineHidden(byte[] classFile) throws ReflectiveOperationException {
+		Class<?> optionClass;
+		try {
+			optionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		Object options = Array.newInstance(optionClass, 0);
+		Method define = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+				byte[].class, boolean.class, options.getClass());
+		MethodHandles.Lookup lookup = (MethodHandles.Lookup) define.invoke(MethodHandles.lookup(),
+				classFile, true, options);
+		return lookup.lookupClass();
+	}
+
+	private final static class Loader extends ClassLoader {
+		Loader() {
+			super(JitCompiler.class.getClassLoader());
+		}
+
+		Class<?> define(byte[] classFile) {
+			return defineClass(null, classFile, 0, classFile.length);
+		}
+	}
+
+	/**
+	 * Run compiled code unit from the entry point CP, with the registers and
+	 * status of the machine
+	 */
+	void enter(int unit) {
+		regs[0] = machine.CP;
+		regs[1] = machine.ST;
+		regs[2] = machine.HT;
+		regs[3] = machine.LB;
+		regs[4] = machine.OB;
+		int exit = shared.units[unit].run(machine.data, regs);
+		machine.CP = regs[0];
+		machine.ST = regs[1];
+		machine.HT = regs[2];
+		machine.LB = regs[3];
+		machine.OB = regs[4];
+		if (exit == Translator.EXIT_INTERPRET)
+			machine.interpretOperations(1);
+	}
+}
@@ -1,5 +1,7 @@
 package mJAM;
 
+import java.util.Arrays;
+
 /**
  * Defines names and sizes of mJAM instructions and primitives
  * @author prins
@@ -102,12 +104,35 @@ public final class Machine {
 
   
   // CODE STORE REGISTERS
+  // The code store grows as instructions are emitted.  A code store of
+  // instrSize words per instruction cannot reach 2^29 instructions in a Java
+  // array, so primitives at PB and above never collide with instructions.
   public final static int CB = 0; // start of code space
-  public final static int PB = 1024; // size of code space reserved for instructions
+  public final static int PB = 1 << 30; // primitives base, above any code address
   public final static int PT = PB + Prim.values().length;  // code space reserved for primitives
 
+  // primitives base of object files written when the code space held 1024
+  // instructions, see ObjectFile.readCode
+  public final static int legacyPB = 1024;
+
   // CODE STORE
-  public static Instruction[] code = new Instruction[PB];
+  // Instructions are packed into a single int array, instrSize words apiece,
+  // so that fetching an instruction touches one cache line instead of
+  // chasing a pointer to a separate object.  The words of the instruction
+  // at address a are at code[a * instrSize + opField] etc.
+  //
+  //    op = 0..15             (4 bits unsigned)
+  //    r  = 0..15             (4 bits unsigned)
+  //    n  = 0..255            (8 bits unsigned)
+  //    d  = -2147483648 .. +2147483647   (32 bits signed for use with LOADL)
+  public final static int
+    opField = 0,
+    nField = 1,
+    rField = 2,
+    dField = 3,
+    instrSize = 4;
+
+  public static int[] code = new int[1024 * instrSize];
   public static int CT = CB;
   
   public static void initCodeGen() {
@@ -181,18 +206,58 @@ public static void emit(Op op, int d) {
    * helper operation for emit using integer values
    */
 private static void emit (int op, int n, int r, int d) {
+    code = emit(code, CT, op, n, r, d);
+    CT = CT + 1;
+  }
+
+  /**
+   * Store the instruction op n r d as instruction count of code, packed as
+   * in the code store, for code generated apart from the code store too
+   * @return code, or a larger copy of it if it was full
+   */
+public static int[] emit(int[] code, int count, int op, int n, int r, int d) {
     if (n > 255) {
         System.out.println("length of operand can't exceed 255 words");
         n = 255; // to allow code generation to continue
     }
-    if (CT >= Machine.PB)
-        System.out.println("mJAM: code segment capacity exceeded");
-    
-    Instruction nextInstr = new Instruction(op, n, r, d);
-        Machine.code[CT] = nextInstr;
-        CT = CT + 1;
+    int base = count * instrSize;
+    if (base == code.length)
+        code = Arrays.copyOf(code, 2 * code.length);
+    code[base + opField] = op;
+    code[base + nField] = n;
+    code[base + rField] = r;
+    code[base + dField] = d;
+    return code;
   }
 
+/**
+ * @return op field of the instruction at addr
+ */
+public static int opAt(int addr) {
+	return code[addr * instrSize + opField];
+}
+
+/**
+ * @return n field of the instruction at addr
+ */
+public static int nAt(int addr) {
+	return code[addr * instrSize + nField];
+}
+
+/**
+ * @return r field of the instruction at addr
+ */
+public static int rAt(int addr) {
+	return code[addr * instrSize + rField];
+}
+
+/**
+ * @return d field of the instruction at addr
+ */
+public static int dAt(int addr) {
+	return code[addr * instrSize + dField];
+}
+
 /**
  * @return address (relative to CB) of next instruction to be generated
  */
@@ -206,16 +271,23 @@ public static int nextInstrAddr() {
  * @param displacement
  */
 public static void patch(int addr, int displacement) {
-	if (addr < 0 || addr >= CT) {
+	patch(code, CT, addr, displacement);
+}
+
+/**
+ * Update the displacement component of the instruction at addr of code,
+ * which holds count instructions
+ */
+public static void patch(int[] code, int count, int addr, int displacement) {
+	if (addr < 0 || addr >= count) {
 		System.out.println("patch:  address of instruction to be patched is out of range");
 		return;
 	}
-	if (displacement < 0 || displacement > CT) {
+	if (displacement < 0 || displacement > count) {
 		System.out.println("patch:  target address of patch is out of range");
 		return;
 	}
-	Machine.code[addr].d = displacement;
-	return;
+	code[addr * instrSize + dField] = displacement;
 }
 
 // DATA REPRESENTATION
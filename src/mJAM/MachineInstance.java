@@ -0,0 +1,1609 @@
+/**
+ * An mJAM machine running one program
+ * @author prins
+ * @version COMP 520 V2.3
+ */
+package mJAM;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * The state of one run of an mJAM program: its code store, data store,
+ * registers, heap and input and output streams.  Machines share no state, so
+ * any number of them can run at once on different threads.
+ */
+public class MachineInstance {
+
+	// DATA STORE
+	// The stack occupies [SB, HB) and the heap grows upward from HB.  The data
+	// array covers the stack and the heap in use, and is replaced by one twice
+	// the size when the heap needs more room than a garbage collection frees,
+	// up to HB + maxHeapSize.  See Heap.
+	int[] data = new int[0];
+
+	// sizes of the stack and the largest heap, in words
+	int stackSize = 1 << 20, maxHeapSize = 1 << 24;
+	final static int initialHeapSize = 1024;
+
+	// DATA STORE REGISTERS AND OTHER REGISTERS
+	final static int CB = 0, SB = 0;
+	int HB; // = SB + stackSize
+
+	int CT, CP, ST, HT, LB, OB, status, temp;
+
+	// machine status values
+	final static int running = 0, halted = 1, failedDataStoreFull = 2,
+			failedInvalidCodeAddress = 3, failedInvalidInstruction = 4,
+			failedOverflow = 5, failedZeroDivide = 6, failedIOError = 7,
+			failedArrayIndex = 8, failedNullRef = 9, failedHeapRef =10,
+			failedFieldIndex = 11, failedMethodIndex = 12,
+			failedOutOfMemory = 13, failedInstructionLimit = 14,
+			failedTimeLimit = 15;
+
+	long accumulator;
+
+	// INSTRUCTION AND TIME LIMITS
+	// Instructions executed, not counting those run by compiled code.  The
+	// program fails once instructionLimit instructions have been executed or
+	// timeLimit milliseconds have passed (0 for no limit).  The limits are
+	// checked every checkInterval instructions at most.
+	long instructions;
+	long instructionLimit = Long.MAX_VALUE, timeLimit = 0;
+	private long deadline, checkpoint;
+	private final static long checkInterval = 1 << 20;
+
+	// code store, packed as in Machine.code
+	final int[] code;
+
+	// run with the reference interpreter (interpretOneOperation) instead of
+	// the fast execution loop
+	boolean referenceMode = false;
+
+	// compile hot methods to JVM bytecode, see JitCompiler
+	boolean tiered = false;
+
+	final Heap heap;
+	final Input input;
+	final Output output;
+	final PrintStream out;
+	Decoder decoder;
+	JitCompiler jit;
+
+	// counts every instruction run, on the reference interpreter, if set
+	Profiler profiler;
+
+	/**
+	 * A machine for the code store code, packed as in Machine.code, that
+	 * reads the input of the program from in and writes its output, status
+	 * and dumps to out
+	 */
+	public MachineInstance(int[] code, InputStream in, PrintStream out) {
+		this.code = code;
+		this.out = out;
+		output = new Output(out);
+		input = new Input(in, output);
+		heap = new Heap(this);
+	}
+
+	int content(int r) {
+		// Returns the current content of register r,
+		Machine.Reg reg = Machine.intToReg[r];
+		switch (reg) {
+		case CB:
+			return CB;
+		case CT:
+			return CT;
+		case PB:
+			return Machine.PB;
+		case PT:
+			return Machine.PT;
+		case SB:
+			return SB;
+		case ST:
+			return ST;
+		case HB:
+			return HB;
+		case HT:
+			return HT;
+		case LB:
+			return LB;
+		case OB:
+			return OB;
+		case CP:
+			return CP;
+		default:
+			return 0;
+		}
+	}
+
+	// PROGRAM STATUS
+
+	// the most heap words a dump shows, from HT down, and stack words, from
+	// ST down
+	final static int dumpHeapWords = 64, dumpStackWords = 64;
+
+	void dump() {
+		// Writes a summary of the machine state.
+		int addr, dynamicLink;
+		output.flush();
+		out.println("");
+		out.println("At instruction " + CP
+				+ ", state of mJAM data store and registers is:");
+		out.println("");
+		if (HT == HB)
+			out.println("            |--------|          (heap is empty)");
+		else {
+			out.println("      HT--> ");
+			out.println("            |--------|");
+			int bottom = Math.max(HB, HT - dumpHeapWords);
+			for (addr = HT - 1; addr >= bottom; addr--) {
+				out.print(rightPad(6, addr + ":"));
+				if (addr == OB)
+					out.print("OB--> ");
+				else if (addr == HB)
+					out.print("HB--> ");
+				else
+					out.print("      ");
+				out.println("|" + leftPad(8, String.valueOf(data[addr]))
+						+ "|");
+			}
+			if (bottom > HB)
+				out.println("            |  ....  |          (" + (bottom - HB) + " more words down to HB="
+						+ HB + ", " + heap.inUse() + " of " + (HT - HB) + " in use)");
+			out.println("            |--------|");
+		}
+		out.println("            |////////|");
+		out.println("            |////////|");
+		if (ST == SB)
+			out.println("            |--------|          (stack is empty)");
+		else {
+			dynamicLink = LB;
+			out.println("      ST--> |////////|");
+			out.println("            |--------|");
+			int bottom = Math.max(SB, ST - dumpStackWords);
+			for (addr = ST - 1; addr >= bottom; addr--) {
+				out.print(rightPad(6, addr + ": "));
+				if (addr == SB)
+					out.print("SB--> ");
+				else if (addr == LB)
+					out.print("LB--> ");
+				else
+					out.print("      ");
+				if ((addr == dynamicLink) && (dynamicLink != SB))
+					out.print("|OB="
+							+ leftPad(5, String.valueOf(data[addr])) + "|");
+				else if ((addr == dynamicLink + 1) && (dynamicLink != SB))
+					out.print("|DL="
+							+ leftPad(5, String.valueOf(data[addr])) + "|");
+				else if ((addr == dynamicLink + 2) && (dynamicLink != SB))
+					out.print("|RA="
+							+ leftPad(5, String.valueOf(data[addr])) + "|");
+				else
+					out.print("|"
+							+ leftPad(8, String.valueOf(data[addr])) + "|");
+				out.println("");
+				if (addr == dynamicLink) {
+					out.println("            |--------|");
+					dynamicLink = data[addr + 1];
+				}
+			}
+			if (bottom > SB)
+				out.println("            |  ....  |          (" + (bottom - SB) + " more words down to SB="
+						+ SB + ", " + (ST - SB) + " of " + (HB - SB) + " in use)");
+		}
+		out.println("");
+	}
+
+	private static String leftPad(int len, String s) {
+		int aLen = Math.max(len, s.length());
+		StringBuffer buf = new StringBuffer(s);
+		String r = buf.insert(0, "        ").toString();
+		return r.substring(r.length() - aLen, r.length());
+	}
+
+	private static String rightPad(int len, String s) {
+		int aLen = Math.max(len, s.length());
+		String r = s + "        ";
+		return r.substring(0, aLen);
+	}
+
+	public void showStatus() {
+		// Writes an indication of whether and why the program has terminated.
+		output.flush();
+		out.println("");
+		out.println("*** " + statusMessage());
+		if (status == failedDataStoreFull || status == failedOutOfMemory)
+			out.println("    " + usage());
+		if (status != halted)
+			dump();
+	}
+
+	/**
+	 * @return what showStatus says of the status of the machine
+	 */
+	String statusMessage() {
+		switch (status) {
+		case running:
+			return "Program is running.";
+		case halted:
+			return "Program has halted normally.";
+		case failedDataStoreFull:
+			return "Program has failed due to exhaustion of Data Store: stack overflow.";
+		case failedOutOfMemory:
+			return "Program has failed due to exhaustion of Data Store: heap out of memory.";
+		case failedInvalidCodeAddress:
+			return "Program has failed due to an invalid code address.";
+		case failedInvalidInstruction:
+			return "Program has failed due to an invalid instruction.";
+		case failedOverflow:
+			return "Program has failed due to overflow.";
+		case failedZeroDivide:
+			return "Program has failed due to division by zero.";
+		case failedIOError:
+			return "Program has failed due to an IO error.";
+		case failedArrayIndex:
+			return "Program has failed due to an array index error.";
+		case failedNullRef:
+			return "Program has failed due to a null pointer reference.";
+		case failedHeapRef:
+			return "Program has failed due to an invalid Heap reference.";
+		case failedFieldIndex:
+			return "Program has failed due to a field index error.";
+		case failedMethodIndex:
+			return "Program has failed due to an improper method index in CALLD.";
+		case failedInstructionLimit:
+			return "Program has failed due to exceeding the limit of " + instructionLimit + " instructions.";
+		case failedTimeLimit:
+			return "Program has failed due to exceeding the time limit of " + timeLimit + " ms.";
+		default:
+			return "Machine is in an unknown state.";
+		}
+	}
+
+	/**
+	 * @return the name of the constant of the status value status, or null
+	 *         if there is none
+	 */
+	public static String statusName(int status) {
+		return status >= 0 && status < statusNames.length ? statusNames[status] : null;
+	}
+
+	// the names of the status constants above, by value
+	private final static String[] statusNames = new String[failedTimeLimit + 1];
+	static {
+		for (Field field : MachineInstance.class.getDeclaredFields()) {
+			String name = field.getName();
+			if (field.getType() == int.class && Modifier.isStatic(field.getModifiers())
+					&& (name.equals("running") || name.equals("halted") || name.startsWith("failed"))) {
+				try {
+					statusNames[field.getInt(null)] = name;
+				} catch (IllegalAccessException e) {
+					throw new AssertionError(e);
+				}
+			}
+		}
+	}
+
+	// INTERPRETATION
+
+	boolean checkSpace(int spaceNeeded) {
+		// Signals failure if there is not enough space to expand the stack by
+		// spaceNeeded, otherwise returns true.
+		if (HB - ST < spaceNeeded) {
+			status = failedDataStoreFull;
+			return false;
+		}
+		return true;
+	}
+
+	String usage() {
+		return "stack: " + (ST - SB) + " of " + (HB - SB) + " words, heap: "
+				+ heap.inUse() + " of " + maxHeapSize + " words in use";
+	}
+
+	boolean invalidHeapRef(int addr) {
+		// if addr is null ptr or outside of heap bounds, sets status to failure
+		if (addr == Machine.nullRep)
+			status = failedNullRef;
+		else if (addr < HB + 2 || addr > HT)
+			status = failedHeapRef;
+		return (status != running);
+	}
+
+	boolean isTrue(int datum) {
+		// Tests whether the given datum represents true.
+		return (datum == Machine.trueRep);
+	}
+
+	int overflowChecked(long datum) {
+		// Signals failure if the datum is too large to fit into a single word,
+		// otherwise returns the datum as a single word.
+		if ((Machine.minintRep <= datum) && (datum <= Machine.maxintRep))
+			return (int) datum;
+		else {
+			status = failedOverflow;
+			return 0;
+		}
+	}
+
+	int toInt(boolean b) {
+		return b ? Machine.trueRep : Machine.falseRep;
+	}
+
+	// Invoke primitive operation with argument(s) on the stack
+	// primitives are static and are not supplied an instance on the stack.
+	void callPrimitive(int id) {
+
+		int addr, size, index;
+		char ch;
+
+		Machine.Prim prim = Machine.intToPrim[id];
+		switch (prim) {
+		case id:
+			break; // nothing to be done
+		case not:
+			data[ST - 1] = toInt(!isTrue(data[ST - 1]));
+			break;
+		case and:
+			ST = ST - 1;
+			data[ST - 1] = toInt(isTrue(data[ST - 1]) & isTrue(data[ST]));
+			break;
+		case or:
+			ST = ST - 1;
+			data[ST - 1] = toInt(isTrue(data[ST - 1]) | isTrue(data[ST]));
+			break;
+		case succ:
+			data[ST - 1] = overflowChecked(data[ST - 1] + 1);
+			break;
+		case pred:
+			data[ST - 1] = overflowChecked(data[ST - 1] - 1);
+			break;
+		case neg:
+			data[ST - 1] = overflowChecked(-data[ST - 1]);
+			break;
+		case add:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator + data[ST]);
+			break;
+		case sub:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator - data[ST]);
+			break;
+		case mult:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator * data[ST]);
+			break;
+		case div:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			if (data[ST] != 0)
+				data[ST - 1] = (int) (accumulator / data[ST]);
+			else
+				status = failedZeroDivide;
+			break;
+		case mod:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			if (data[ST] != 0)
+				data[ST - 1] = (int) (accumulator % data[ST]);
+			else
+				status = failedZeroDivide;
+			break;
+		case lt:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] < data[ST]);
+			break;
+		case le:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] <= data[ST]);
+			break;
+		case ge:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] >= data[ST]);
+			break;
+		case gt:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] > data[ST]);
+			break;
+		case eq:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] == data[ST]);
+			break;
+		case ne:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] != data[ST]);
+			break;
+		case eol:
+			data[ST] = toInt(input.currentChar == '\n');
+			ST = ST + 1;
+			break;
+		case eof:
+			data[ST] = toInt(input.currentChar == -1);
+			ST = ST + 1;
+			break;
+		case get:
+			ST = ST - 1;
+			addr = data[ST];
+			try {
+				data[addr] = input.read();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case put:
+			ST = ST - 1;
+			ch = (char) data[ST];
+			output.put(ch);
+			break;
+		case geteol:
+			try {
+				input.skipLine();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case puteol:
+			output.putEol();
+			break;
+		case getint:
+			ST = ST - 1;
+			addr = data[ST];
+			try {
+				accumulator = input.readInt();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			data[addr] = (int) accumulator;
+			break;
+		case putint:
+			ST = ST - 1;
+			accumulator = data[ST];
+			output.putInt(data[ST]);
+			break;
+		// output with prefix for tester
+		case putintnl:
+			ST = ST - 1;
+			accumulator = data[ST];
+			output.putIntNl(data[ST]);
+			break;
+		case alloc:
+			size = data[ST - 1];
+			if (size < 0 || size > maxHeapSize) {
+				status = failedOutOfMemory;
+				break;
+			}
+			addr = heap.allocate(size + 2);
+			if (addr < 0)
+				break;
+			data[addr] = Heap.rawTag;   // header keeps the heap walkable
+			data[addr + 1] = size;
+			data[ST - 1] = addr + 2;
+			break;
+		case dispose:
+			// ..., addr ==> ...  frees addr in explicit mode, see Heap
+			addr = data[ST - 1];
+			if (heap.explicit && addr != Machine.nullRep && !heap.dispose(addr)) {
+				status = failedHeapRef;
+				break;
+			}
+			ST = ST - 1;
+			break;
+		case newobj:
+			// ..., class obj addr, number of fields ==> ..., new obj addr
+			size = data[ST - 1] + 2; // number of fields + 2 word descriptor
+			if (size < 2) {
+				status = failedFieldIndex;
+				break;
+			}
+			addr = heap.allocate(size);   // reserve space
+			if (addr < 0)
+				break;
+			data[addr] = data[ST - 2]; // set class object addr
+			data[addr + 1] = size - 2; // set size of object
+			data[ST - 2] = addr + 2;   // addr of new object instance, returned on stack
+			ST = ST - 1;             // net effect of pop 2 args, push 1 result
+			for (int i = 2; i < size; i++) {
+				data[addr + i] = 0;    // zero all fields of new object
+			}
+			break;
+		case newarr:
+			// ..., number of elements ==> ..., new int[] addr
+			size = data[ST - 1] + 2;  // array  + 2 word descriptor
+			if (size < 2) {
+				status = failedArrayIndex;
+				break;
+			}
+			addr = heap.allocate(size);
+			if (addr < 0)
+				break;
+			data[addr] = -2;            // tag for array
+			data[addr + 1] = size - 2;  // size of array
+			data[ST - 1] = addr + 2;    // addr of array instance, returned on stack
+			for (int i = 2; i < size; i++) {
+				data[addr + i] = 0;     // zero all elements of new array
+			}
+			break;
+		case arraylen:
+			// ..., array addr a ==> ... , array.length
+			addr = data[ST-1];
+			if (invalidHeapRef(addr))
+				break;                   // invalid heap address
+			if (data[addr - 2] != -2) {
+				status = failedHeapRef;  // not tagged as array in heap
+				break;
+			}
+			data[ST-1] = data[addr - 1]; // return array length field
+			break;
+		case arrayref:
+			// ..., array addr a, element index i ==> ..., a[i]
+			addr = data[ST - 2];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 1];
+			if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+				status = failedArrayIndex;
+				break;
+			}
+			data[ST - 2] = data[addr + index];  // result element, returned on stack
+			ST = ST - 1;                        // pop two args, return one result
+			break;
+		case arrayupd:
+			// ..., array addr a, element index i, new value v ==> ...
+			// and a[i] := v
+			addr = data[ST - 3];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 2];
+			if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+				status = failedArrayIndex;
+				break;
+			}
+			data[addr + index] = data[ST - 1]; // update array element
+			ST = ST - 3;                       // pop 3 args, return no result
+			break;
+		case fieldref:
+			// ..., obj addr a, field index i ==> ..., value of ith field of a
+			addr = data[ST - 2];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 1];
+			if (index < 0 || index >= data[addr - 1]) {
+				status = failedFieldIndex;
+				break;
+			}
+			data[ST - 2] = data[addr + index];   // field to stack top
+			ST = ST - 1;                         // pop two args, return one result
+			break;
+		case fieldupd:
+			// ..., obj addr a, field index i, new value v ==> ...
+			// and a.i := v
+			addr = data[ST - 3];
+			if (invalidHeapRef(addr))
+				break;
+			index = data[ST - 2];
+			if (index < 0 || index >= data[addr - 1]) {
+				status = failedFieldIndex;	
+				break;	
+			}	
+			data[addr + index] = data[ST - 1];	// update field to new value
+			ST = ST - 3;						// pop 3 args, return no result
+			break;
+		}
+	}
+
+	void interpretOneOperation() {
+		// Fetch and decode instruction ...
+		instructions++;
+		int base = CP * Machine.instrSize;
+		int op = code[base + Machine.opField];
+		int r = code[base + Machine.rField];
+		int n = code[base + Machine.nField];
+		int d = code[base + Machine.dField];
+		int addr;
+		// Execute instruction ...
+
+		Machine.Op operation = Machine.intToOp[op];
+
+		switch (operation) {
+		case LOAD:
+			addr = d + content(r);
+			if (!checkSpace(1))
+				break;
+			data[ST] = data[addr];
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case LOADA:
+			addr = d + content(r);
+			if (!checkSpace(1))
+				break;
+			data[ST] = addr;
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case LOADI:
+			if (!checkSpace(0))
+				break;
+			ST = ST - 1;
+			addr = data[ST];
+			data[ST] = data[addr];
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case LOADL:
+			if (!checkSpace(1))
+				break;
+			data[ST] = d;
+			ST = ST + 1;
+			CP = CP + 1;
+			break;
+		case STORE:
+			addr = d + content(r);
+			ST = ST - 1;
+			data[addr] = data[ST];
+			CP = CP + 1;
+			break;
+		case STOREI:
+			ST = ST - 1;
+			addr = data[ST];
+			ST = ST - 1;
+			data[addr] = data[ST];
+			CP = CP + 1;
+			break;
+			
+		case CALL:
+			// call static method, including primitives
+			// arguments are on stack
+			addr = d + content(r);      // effective address
+			if (addr >= Machine.PB) {
+				callPrimitive(addr - Machine.PB);
+				CP = CP + 1;
+			} else {
+				// static method in code segment, no instance addr on stack
+				if (!checkSpace(3))
+					break;
+				data[ST] = OB;         // save caller OB in callee frame
+				data[ST + 1] = LB;     // save caller LB in callee frame (dynamic link)
+				data[ST + 2] = CP + 1; // save caller return address in callee frame
+				OB = Machine.nullRep;  // set callee OB (null since no instance) 
+				LB = ST;               // set LB = start of callee frame
+				ST = ST + 3;           // set ST = end of callee frame
+				CP = addr;             // execution resumes at addr specified in CALL inst
+			}
+			break;
+			
+		case CALLI:
+			// call instance method
+			// arguments on stack, followed by instance address
+			addr = d + content(r);      // effective address
+			if (addr >= CT) {
+				// no instance methods outside of code segment
+				status = failedInvalidInstruction;
+				break;
+			}
+			// instance address is last arg on stack and is overwritten by frame
+			if (!checkSpace(2))
+				break;
+			temp = data[ST - 1];   // save instance address temporarily
+			data[ST - 1] = OB;     // save caller OB in callee frame
+			data[ST] = LB;         // save caller LB in callee frame (dynamic link)
+			data[ST + 1] = CP + 1; // save caller return address in callee frame
+			OB = temp;             // set OB for callee
+			LB = ST - 1;           // set LB = start of callee frame
+			ST = ST + 2;           // set ST = end of callee frame 
+			CP = addr;             // execution resumes at addr specified in CALL inst
+			break;
+			
+		case RETURN: 
+			// d = number of method args (does not include instance addr for CALLI)
+			// n = size of result (0 or 1)
+			if (n < 0 || n > 1) {
+				status = failedInvalidInstruction;
+				break;
+			}
+			addr = LB - d;          // addr of caller args
+			OB = data[LB];          // restore caller OB, LB, CP
+			CP = data[LB + 2];
+			LB = data[LB + 1];
+			if (n == 1)
+				data[addr] = data[ST - 1];  // return value if any
+			ST = addr + n;          // caller stack top
+			break;
+			
+		case CALLD: 
+			// dynamic method dispatch of method with index d (origin 0)
+			// arguments on stack, followed by instance addr
+			{
+				addr = data[ST - 1];    // instance addr
+				if (invalidHeapRef(addr))
+					break;
+				int classDescAddr = data[addr - 2];
+				if (classDescAddr >= ST || classDescAddr <= SB || d >= data[classDescAddr + 1] || d < 0) {
+					status = failedMethodIndex;
+					break;
+				}
+				if (!checkSpace(2))
+					break;
+				ST = ST - 1;
+				data[ST] = OB;
+				data[ST + 1] = LB;
+				data[ST + 2] = CP + 1;
+				OB = addr;
+				LB = ST;
+				ST = ST + 3;
+				CP = data[classDescAddr + 2 + n];
+			}
+			break;
+		case PUSH: // push d elements on stack
+			if (!checkSpace(d))
+				break;
+			ST = ST + d;
+			CP = CP + 1;
+			break;
+		case POP: // pop d elements off stack
+			ST = ST - d;
+			CP = CP + 1;
+			break;
+		case JUMP:
+			CP = d + content(r);
+			break;
+		case JUMPI:
+			ST = ST - 1;
+			CP = data[ST];
+			break;
+		case JUMPIF:
+			ST = ST - 1;
+			if (data[ST] == n)
+				CP = d + content(r);
+			else
+				CP = CP + 1;
+			break;
+		case HALT:
+			if (n > 0) {
+				// halt n > 0 --> snapshot machine state and continue execution
+				dump();
+				CP = CP + 1;
+			} else {
+				status = halted;
+				output.flush();
+			}
+			break;
+		}
+
+		if ((CP < CB) || (CP >= CT))
+			status = failedInvalidCodeAddress;
+	}
+
+	void initMachine() {
+		// Initialize data store and registers ...
+		HB = SB + stackSize;
+		data = new int[HB + Math.min(initialHeapSize, maxHeapSize)];
+		ST = SB;
+		HT = HB;
+		heap.reset();
+		LB = SB;
+		CP = CB;
+		OB = -1; // invalid instance addr
+		CT = code.length / Machine.instrSize;
+		status = running;
+		instructions = 0;
+		checkpoint = 0;
+		deadline = System.nanoTime() + timeLimit * 1000000;
+	}
+
+	boolean withinLimits(long pending) {
+		// Signals failure if the instructions executed, including pending ones
+		// not yet added to instructions, or the time taken exceed the limits.
+		// Otherwise sets the checkpoint, in terms of pending, at which to check
+		// again and returns true.
+		long executed = instructions + pending;
+		if (executed >= instructionLimit) {
+			status = failedInstructionLimit;
+			return false;
+		}
+		if (timeLimit > 0 && System.nanoTime() - deadline > 0) {
+			status = failedTimeLimit;
+			return false;
+		}
+		checkpoint = pending + Math.min(checkInterval, instructionLimit - executed);
+		return true;
+	}
+
+	void profileProgram() {
+		// Runs the program in code store with the reference interpreter,
+		// one instruction at a time through the profiler.
+		initMachine();
+		do {
+			if (instructions >= checkpoint && !withinLimits(0))
+				break;
+			profiler.step();
+		} while (status == running);
+	}
+
+	void interpretProgram() {
+		// Runs the program in code store.
+		initMachine();
+		do {
+			if (instructions >= checkpoint && !withinLimits(0))
+				break;
+			interpretOneOperation();
+		} while (status == running);
+	}
+
+	// FAST EXECUTION
+
+	void executeProgram() {
+		// Runs the program in code store using the decoded form of the code.
+		initMachine();
+		decoder = new Decoder(code, HB);
+		// compiled code neither counts instructions nor checks the limits
+		boolean compiling = tiered && instructionLimit == Long.MAX_VALUE && timeLimit == 0;
+		if (compiling)
+			jit = new JitCompiler(this);
+		Fuser.fuse(decoder);
+		if (compiling)
+			jit.installProfiling();
+		execute();
+	}
+
+	void interpretOperations(int count) {
+		// Runs up to count instructions with the reference interpreter, stopping
+		// early if the program stops running.
+		for (int i = 0; i < count && status == running; i++)
+			interpretOneOperation();
+	}
+
+	/**
+	 * Execution loop for the decoded code store.  The registers live in locals
+	 * for the duration of the loop and are written back to the machine state
+	 * only when control leaves the loop or passes through code shared with the
+	 * reference interpreter (primitives, dump, rare register forms).
+	 *
+	 * An instruction that fails for lack of space leaves the machine state as
+	 * it was before the instruction, with CP at the failing instruction.
+	 */
+	void execute() {
+		final int[] op = decoder.op, n = decoder.n, d = decoder.d;
+		int[] data = this.data;
+		final int ct = decoder.CT, hb = HB;
+		int cp = CP, st = ST, ht = HT, lb = LB, ob = OB;
+		int addr;
+		// instructions executed by this loop, as opposed to those run by the
+		// reference interpreter, which counts its own
+		long count = 0, nextCheck = checkpoint;
+
+		loop: while (true) {
+			if (count >= nextCheck) {
+				if (!withinLimits(count))
+					break loop;
+				nextCheck = checkpoint;
+			}
+			count++;
+			failedPrimitive: {
+				switch (op[cp]) {
+				case Decoder.LOADL:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = d[cp++];
+					break;
+				case Decoder.LOAD:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = data[d[cp++]];
+					break;
+				case Decoder.LOAD_LB:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = data[lb + d[cp++]];
+					break;
+				case Decoder.LOAD_OB:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = data[ob + d[cp++]];
+					break;
+				case Decoder.LOAD_ST:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st] = data[st + d[cp++]];
+					st++;
+					break;
+				case Decoder.LOAD_HT:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = data[ht + d[cp++]];
+					break;
+				case Decoder.LOADA_LB:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = lb + d[cp++];
+					break;
+				case Decoder.LOADA_OB:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = ob + d[cp++];
+					break;
+				case Decoder.LOADA_ST:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st] = st + d[cp++];
+					st++;
+					break;
+				case Decoder.LOADA_HT:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st++] = ht + d[cp++];
+					break;
+				case Decoder.LOADI:
+					data[st - 1] = data[data[st - 1]];
+					cp++;
+					break;
+				case Decoder.STORE:
+					data[d[cp++]] = data[--st];
+					break;
+				case Decoder.STORE_LB:
+					data[lb + d[cp++]] = data[--st];
+					break;
+				case Decoder.STORE_OB:
+					data[ob + d[cp++]] = data[--st];
+					break;
+				case Decoder.STORE_ST:
+					addr = st + d[cp++];
+					data[addr] = data[--st];
+					break;
+				case Decoder.STORE_HT:
+					data[ht + d[cp++]] = data[--st];
+					break;
+				case Decoder.STOREI:
+					st = st - 2;
+					data[data[st + 1]] = data[st];
+					cp++;
+					break;
+				case Decoder.CALL:
+					if (hb - st < 3) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st] = ob;
+					data[st + 1] = lb;
+					data[st + 2] = cp + 1;
+					ob = Machine.nullRep;
+					lb = st;
+					st = st + 3;
+					cp = d[cp];
+					break;
+				case Decoder.CALLI:
+					if (hb - st < 2) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					addr = data[st - 1];
+					data[st - 1] = ob;
+					data[st] = lb;
+					data[st + 1] = cp + 1;
+					ob = addr;
+					lb = st - 1;
+					st = st + 2;
+					cp = d[cp];
+					break;
+				case Decoder.CALLD: {
+					addr = data[st - 1];
+					if (addr == Machine.nullRep) {
+						status = failedNullRef;
+						break loop;
+					}
+					if (addr < hb + 2 || addr > ht) {
+						status = failedHeapRef;
+						break loop;
+					}
+					int classDescAddr = data[addr - 2];
+					if (classDescAddr >= st || classDescAddr <= SB || d[cp] >= data[classDescAddr + 1] || d[cp] < 0) {
+						status = failedMethodIndex;
+						break loop;
+					}
+					if (hb - st < 2) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					st = st - 1;
+					data[st] = ob;
+					data[st + 1] = lb;
+					data[st + 2] = cp + 1;
+					ob = addr;
+					lb = st;
+					st = st + 3;
+					cp = data[classDescAddr + 2 + n[cp]];
+					if (cp < CB || cp >= ct) {
+						status = failedInvalidCodeAddress;
+						break loop;
+					}
+					break;
+				}
+				case Decoder.RETURN:
+					addr = lb - d[cp];
+					if (n[cp] == 1) {
+						ob = data[lb];
+						cp = data[lb + 2];
+						lb = data[lb + 1];
+						data[addr] = data[st - 1];
+						st = addr + 1;
+					} else {
+						ob = data[lb];
+						cp = data[lb + 2];
+						lb = data[lb + 1];
+						st = addr;
+					}
+					if (cp < CB || cp >= ct) {
+						status = failedInvalidCodeAddress;
+						break loop;
+					}
+					break;
+				case Decoder.PUSH:
+					if (hb - st < d[cp]) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					st = st + d[cp++];
+					break;
+				case Decoder.POP:
+					st = st - d[cp++];
+					break;
+				case Decoder.JUMP:
+					cp = d[cp];
+					break;
+				case Decoder.JUMPI:
+					cp = data[--st];
+					if (cp < CB || cp >= ct) {
+						status = failedInvalidCodeAddress;
+						break loop;
+					}
+					break;
+				case Decoder.JUMPIF:
+					if (data[--st] == n[cp])
+						cp = d[cp];
+					else
+						cp++;
+					break;
+				case Decoder.HALT:
+					if (n[cp] > 0) {
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						dump();
+						cp++;
+						break;
+					}
+					status = halted;
+					output.flush();
+					break loop;
+				case Decoder.CALL_REG:
+				case Decoder.CALLI_REG:
+				case Decoder.JUMP_REG:
+				case Decoder.JUMPIF_REG:
+					// targets relative to LB, OB, ST or HT are never generated by the
+					// compiler, let the reference interpreter deal with them
+					count--;
+					CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+					interpretOneOperation();
+					cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+					data = this.data;
+					if (status != running)
+						break loop;
+					break;
+				case Decoder.INC_LB: {
+					long sum = (long) data[lb + n[cp]] + d[cp];
+					if (hb - st < 2 || sum != (int) sum) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(4);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[lb + n[cp]] = (int) sum;
+					cp = cp + 4;
+					count += 3;
+					break;
+				}
+				case Decoder.LB_ADD_K: {
+					long sum = (long) data[lb + n[cp]] + d[cp];
+					if (hb - st < 2 || sum != (int) sum) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(3);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[st++] = (int) sum;
+					cp = cp + 3;
+					count += 2;
+					break;
+				}
+				case Decoder.LB_SUB_K: {
+					long difference = (long) data[lb + n[cp]] - d[cp];
+					if (hb - st < 2 || difference != (int) difference) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(3);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[st++] = (int) difference;
+					cp = cp + 3;
+					count += 2;
+					break;
+				}
+				case Decoder.ADD_LB: {
+					long sum = (long) data[st - 1] + data[lb + d[cp]];
+					if (st >= hb || sum != (int) sum) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(2);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[st - 1] = (int) sum;
+					cp = cp + 2;
+					count++;
+					break;
+				}
+				case Decoder.SUB_LB: {
+					long difference = (long) data[st - 1] - data[lb + d[cp]];
+					if (st >= hb || difference != (int) difference) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(2);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[st - 1] = (int) difference;
+					cp = cp + 2;
+					count++;
+					break;
+				}
+				case Decoder.MULT_LB: {
+					long product = (long) data[st - 1] * data[lb + d[cp]];
+					if (st >= hb || product != (int) product) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(2);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[st - 1] = (int) product;
+					cp = cp + 2;
+					count++;
+					break;
+				}
+				case Decoder.ADD_STORE_LB: {
+					long sum = (long) data[st - 2] + data[st - 1];
+					if (sum != (int) sum) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(2);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					st = st - 2;
+					data[lb + d[cp]] = (int) sum;
+					cp = cp + 2;
+					count++;
+					break;
+				}
+				case Decoder.STORE_LOAD_LB:
+					data[lb + n[cp]] = data[st - 1];
+					data[st - 1] = data[lb + d[cp]];
+					cp = cp + 2;
+					count++;
+					break;
+				case Decoder.LB_LOADL:
+					if (hb - st < 2) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st] = data[lb + n[cp]];
+					data[st + 1] = d[cp];
+					st = st + 2;
+					cp = cp + 2;
+					count++;
+					break;
+				case Decoder.LOAD2_LB:
+					if (hb - st < 2) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					data[st] = data[lb + n[cp]];
+					data[st + 1] = data[lb + d[cp]];
+					st = st + 2;
+					cp = cp + 2;
+					count++;
+					break;
+				case Decoder.DUP_JUMPIF:
+					if (st >= hb) {
+						status = failedDataStoreFull;
+						break loop;
+					}
+					if (data[st - 1] == n[cp])
+						cp = d[cp];
+					else
+						cp = cp + 2;
+					count++;
+					break;
+				case Decoder.FIELDREF_K:
+					addr = data[st - 1];
+					if (st >= hb || addr == Machine.nullRep || addr < hb + 2 || addr > ht
+							|| d[cp] < 0 || d[cp] >= data[addr - 1]) {
+						count--;
+						CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+						interpretOperations(2);
+						cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+						data = this.data;
+						if (status != running)
+							break loop;
+						break;
+					}
+					data[st - 1] = data[addr + d[cp]];
+					cp = cp + 2;
+					count++;
+					break;
+				case Decoder.IF_LT:
+					st = st - 2;
+					cp = data[st] < data[st + 1] ? d[cp] : cp + 2;
+					count++;
+					break;
+				case Decoder.IF_LE:
+					st = st - 2;
+					cp = data[st] <= data[st + 1] ? d[cp] : cp + 2;
+					count++;
+					break;
+				case Decoder.IF_GT:
+					st = st - 2;
+					cp = data[st] > data[st + 1] ? d[cp] : cp + 2;
+					count++;
+					break;
+				case Decoder.IF_GE:
+					st = st - 2;
+					cp = data[st] >= data[st + 1] ? d[cp] : cp + 2;
+					count++;
+					break;
+				case Decoder.IF_EQ:
+					st = st - 2;
+					cp = data[st] == data[st + 1] ? d[cp] : cp + 2;
+					count++;
+					break;
+				case Decoder.IF_NE:
+					st = st - 2;
+					cp = data[st] != data[st + 1] ? d[cp] : cp + 2;
+					count++;
+					break;
+				// primitives, operands taken straight off the stack.  Anything that
+				// fails is handed to callPrimitive, which reports the failure.
+				case Decoder.PRIM_ID:
+					cp++;
+					break;
+				case Decoder.PRIM_NOT:
+					data[st - 1] = data[st - 1] == Machine.trueRep ? Machine.falseRep : Machine.trueRep;
+					cp++;
+					break;
+				case Decoder.PRIM_AND:
+					st--;
+					data[st - 1] = (data[st - 1] == Machine.trueRep & data[st] == Machine.trueRep) ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_OR:
+					st--;
+					data[st - 1] = (data[st - 1] == Machine.trueRep | data[st] == Machine.trueRep) ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_SUCC: {
+					long result = (long) data[st - 1] + 1;
+					if (result != (int) result) 
+						break failedPrimitive;
+					data[st - 1] = (int) result;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_PRED: {
+					long result = (long) data[st - 1] - 1;
+					if (result != (int) result) 
+						break failedPrimitive;
+					data[st - 1] = (int) result;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_NEG: {
+					long result = -(long) data[st - 1];
+					if (result != (int) result) 
+						break failedPrimitive;
+					data[st - 1] = (int) result;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_ADD: {
+					long result = (long) data[st - 2] + data[st - 1];
+					if (result != (int) result) 
+						break failedPrimitive;
+					st--;
+					data[st - 1] = (int) result;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_SUB: {
+					long result = (long) data[st - 2] - data[st - 1];
+					if (result != (int) result) 
+						break failedPrimitive;
+					st--;
+					data[st - 1] = (int) result;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_MULT: {
+					long result = (long) data[st - 2] * data[st - 1];
+					if (result != (int) result) 
+						break failedPrimitive;
+					st--;
+					data[st - 1] = (int) result;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_DIV:
+					if (data[st - 1] == 0) 
+						break failedPrimitive;
+					st--;
+					data[st - 1] = (int) ((long) data[st - 1] / data[st]);
+					cp++;
+					break;
+				case Decoder.PRIM_MOD:
+					if (data[st - 1] == 0) 
+						break failedPrimitive;
+					st--;
+					data[st - 1] = (int) ((long) data[st - 1] % data[st]);
+					cp++;
+					break;
+				case Decoder.PRIM_LT:
+					st--;
+					data[st - 1] = data[st - 1] < data[st] ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_LE:
+					st--;
+					data[st - 1] = data[st - 1] <= data[st] ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_GE:
+					st--;
+					data[st - 1] = data[st - 1] >= data[st] ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_GT:
+					st--;
+					data[st - 1] = data[st - 1] > data[st] ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_EQ:
+					st--;
+					data[st - 1] = data[st - 1] == data[st] ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_NE:
+					st--;
+					data[st - 1] = data[st - 1] != data[st] ? Machine.trueRep : Machine.falseRep;
+					cp++;
+					break;
+				case Decoder.PRIM_NEWOBJ: {
+					// ..., class obj addr, number of fields ==> ..., new obj addr
+					int size = data[st - 1] + 2;
+					if (size < 2 || data.length - ht < size || heap.explicit)
+						break failedPrimitive;
+					addr = ht;
+					ht = ht + size;
+					data[addr] = data[st - 2];
+					data[addr + 1] = size - 2;
+					for (int i = 2; i < size; i++)
+						data[addr + i] = 0;
+					data[st - 2] = addr + 2;
+					st--;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_NEWARR: {
+					// ..., number of elements ==> ..., new int[] addr
+					int size = data[st - 1] + 2;
+					if (size < 2 || data.length - ht < size || heap.explicit)
+						break failedPrimitive;
+					addr = ht;
+					ht = ht + size;
+					data[addr] = -2;
+					data[addr + 1] = size - 2;
+					for (int i = 2; i < size; i++)
+						data[addr + i] = 0;
+					data[st - 1] = addr + 2;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_ARRAYLEN:
+					// ..., array addr a ==> ... , array.length
+					addr = data[st - 1];
+					if (addr == Machine.nullRep || addr < hb + 2 || addr > ht || data[addr - 2] != -2) 
+						break failedPrimitive;
+					data[st - 1] = data[addr - 1];
+					cp++;
+					break;
+				case Decoder.PRIM_ARRAYREF: {
+					// ..., array addr a, element index i ==> ..., a[i]
+					addr = data[st - 2];
+					int index = data[st - 1];
+					if (addr == Machine.nullRep || addr < hb + 2 || addr > ht
+							|| data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) 
+						break failedPrimitive;
+					data[st - 2] = data[addr + index];
+					st--;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_ARRAYUPD: {
+					// ..., array addr a, element index i, new value v ==> ...
+					addr = data[st - 3];
+					int index = data[st - 2];
+					if (addr == Machine.nullRep || addr < hb + 2 || addr > ht
+							|| data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) 
+						break failedPrimitive;
+					data[addr + index] = data[st - 1];
+					st = st - 3;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_FIELDREF: {
+					// ..., obj addr a, field index i ==> ..., value of ith field of a
+					addr = data[st - 2];
+					int index = data[st - 1];
+					if (addr == Machine.nullRep || addr < hb + 2 || addr > ht
+							|| index < 0 || index >= data[addr - 1]) 
+						break failedPrimitive;
+					data[st - 2] = data[addr + index];
+					st--;
+					cp++;
+					break;
+				}
+				case Decoder.PRIM_FIELDUPD: {
+					// ..., obj addr a, field index i, new value v ==> ...
+					addr = data[st - 3];
+					int index = data[st - 2];
+					if (addr == Machine.nullRep || addr < hb + 2 || addr > ht
+							|| index < 0 || index >= data[addr - 1]) 
+						break failedPrimitive;
+					data[addr + index] = data[st - 1];
+					st = st - 3;
+					cp++;
+					break;
+				}
+				case Decoder.PROFILE:
+					// the replaced instruction is run by the reference interpreter
+					// until the method is compiled
+					count--;
+					if (jit.count(cp))
+						break;
+					CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+					interpretOperations(1);
+					cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+					data = this.data;
+					if (status != running)
+						break loop;
+					break;
+				case Decoder.COMPILED:
+					count--;
+					CP = cp; ST = st; HT = ht; LB = lb; OB = ob;
+					jit.enter(n[cp]);
+					cp = CP; st = ST; ht = HT; lb = LB; ob = OB;
+					data = this.data;
+					if (status != running)
+						break loop;
+					break;
+				case Decoder.FAIL_CODE_ADDR:
+					// not an instruction, the branch to it failed
+					count--;
+					status = failedInvalidCodeAddress;
+					break loop;
+				case Decoder.FAIL_INSTR:
+					status = failedInvalidInstruction;
+					break loop;
+				default:
+					// input/output and storage management primitives
+					ST = st;
+					HT = ht;
+					OB = ob;
+					callPrimitive(op[cp] - Decoder.PRIM);
+					st = ST;
+					ht = HT;
+					data = this.data;
+					cp++;
+					if (status != running)
+						break loop;
+					break;
+				}
+				continue loop;
+			}
+
+			// a primitive whose operands are invalid or that needs more heap: let
+			// callPrimitive report the failure or grow the data store
+			ST = st;
+			HT = ht;
+			OB = ob;
+			callPrimitive(op[cp] - Decoder.PRIM);
+			st = ST;
+			ht = HT;
+			data = this.data;
+			cp++;
+			if (status != running)
+				break loop;
+		}
+
+		CP = cp;
+		ST = st;
+		HT = ht;
+		LB = lb;
+		OB = ob;
+		instructions += count;
+	}
+
+	// RUNNING
+
+	/**
+	 * Run the program from the start until it halts or fails, and flush its
+	 * output
+	 * @return the final status, halted or one of the failures
+	 */
+	public int run() {
+		if (profiler != null)
+			profileProgram();
+		else if (referenceMode)
+			interpretProgram();
+		else
+			executeProgram();
+		output.flush();
+		return status;
+	}
+}
@@ -5,6 +5,7 @@
  */
 package mJAM;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.DataInputStream;
 import java.io.FileOutputStream;
@@ -14,6 +15,12 @@ public class ObjectFile {
 	
 	String objectFileName;
 
+	// why readCode last failed
+	String error;
+
+	// the most words a code store array can hold
+	private final static long maxCodeWords = Integer.MAX_VALUE - 8;
+
 	public ObjectFile(String objectFileName) {
 		super();
 		this.objectFileName = objectFileName;
@@ -29,12 +36,8 @@ public class ObjectFile {
 		try {
 			FileOutputStream objectFile = new FileOutputStream(objectFileName);
 			DataOutputStream is = new DataOutputStream(objectFile);
-			for (int i = Machine.CB; i < Machine.CT; i++ ){
-				Instruction inst = Machine.code[i];
-				is.writeInt(inst.op);
-				is.writeInt(inst.n);
-				is.writeInt(inst.r);
-				is.writeInt(inst.d);
+			for (int i = Machine.CB * Machine.instrSize; i < Machine.CT * Machine.instrSize; i++ ){
+				is.writeInt(Machine.code[i]);   // op, n, r, d in code store order
 			}
 			objectFile.close();
 		}
@@ -47,24 +50,57 @@ public class ObjectFile {
 	 * @return true if object code read fails
 	 */
 	public boolean read() {
-		boolean failed = false;
+		int[] code = readCode();
+		if (code == null)
+			return true;
+		if (code.length > Machine.code.length)
+			Machine.code = new int[code.length];
+		System.arraycopy(code, 0, Machine.code, 0, code.length);
+		Machine.CT = Machine.CB + code.length / Machine.instrSize;
+		return false;
+	}
+
+	/**
+	 * Read binary object file into a code store of its own, packed as
+	 * Machine.code, without touching Machine.code.  Object files that fit
+	 * the old 1024 instruction code space may call primitives at absolute
+	 * addresses from Machine.legacyPB, which are moved to PB.
+	 * @return the code store, or null if object code read fails, and then
+	 *         error tells why
+	 */
+	public int[] readCode() {
 		try {
 			FileInputStream objectFile = new FileInputStream(objectFileName);
-			DataInputStream is = new DataInputStream(objectFile);
-			
-			Machine.CT = Machine.CB;
-			while (is.available() > 0 && Machine.CT < Machine.PB){
-				Instruction inst = new Instruction();
-				inst.op = is.readInt();
-				inst.n = is.readInt();
-				inst.r = is.readInt();
-				inst.d = is.readInt();
-				Machine.code[Machine.CT++] = inst;
+			DataInputStream is = new DataInputStream(new BufferedInputStream(objectFile));
+			long instructions = objectFile.getChannel().size() / (4 * Machine.instrSize);
+			if (instructions >= Machine.PB || instructions * Machine.instrSize > maxCodeWords) {
+				objectFile.close();
+				error = "object file too large";
+				return null;
 			}
+			int[] code = new int[(int) (instructions * Machine.instrSize)];
+			for (int i = 0; i < code.length; i++)
+				code[i] = is.readInt();   // op, n, r, d in code store order
 			objectFile.close();
+			if (instructions <= Machine.legacyPB)
+				relocateLegacyPrimitives(code);
+			return code;
 		} catch (Exception e) {
-			failed = true;
-		}	
-		return failed;
+			error = "object file cannot be read";
+			return null;
+		}
+	}
+
+	// replace CALL d[CB] of a primitive at legacyPB + p by CALL p[PB]
+	private static void relocateLegacyPrimitives(int[] code) {
+		for (int i = 0; i < code.length; i += Machine.instrSize) {
+			int prim = code[i + Machine.dField] - Machine.legacyPB;
+			if (code[i + Machine.opField] == Machine.Op.CALL.ordinal()
+					&& code[i + Machine.rField] == Machine.Reg.CB.ordinal()
+					&& prim >= 0 && prim < Machine.intToPrim.length) {
+				code[i + Machine.rField] = Machine.Reg.PB.ordinal();
+				code[i + Machine.dField] = prim;
+			}
+		}
 	}
 }
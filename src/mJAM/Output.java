@@ -0,0 +1,89 @@
+/**
+ * Buffered output for the mJAM put primitives
+ */
+package mJAM;
+
+import java.io.PrintStream;
+
+/**
+ * Output of the put, puteol, putint and putintnl primitives.  Characters and
+ * integers are formatted straight into a byte buffer, which is written to
+ * the output stream of the machine when it fills, when the program halts,
+ * and before the machine writes anything else to the stream or reads input.
+ */
+final class Output {
+
+	private final static int bufferSize = 8192;
+	private final byte[] buffer = new byte[bufferSize];
+	private int count;
+
+	private final static byte[] lineSeparator = System.lineSeparator().getBytes();
+	private final static byte[] testerPrefix = { '>', '>', '>', ' ' };
+
+	private final PrintStream out;
+
+	Output(PrintStream out) {
+		this.out = out;
+	}
+
+	void put(char c) {
+		if (c >= 0x80) {
+			// leave the encoding to the stream
+			flush();
+			out.print(c);
+			return;
+		}
+		if (count == bufferSize)
+			flush();
+		buffer[count++] = (byte) c;
+	}
+
+	void putEol() {
+		putBytes(lineSeparator);
+	}
+
+	void putInt(int value) {
+		if (bufferSize - count < 11)
+			flush();
+		// format the negated value, so that Integer.MIN_VALUE needs no care
+		if (value < 0)
+			buffer[count++] = '-';
+		else
+			value = -value;
+		int start = count;
+		do {
+			buffer[count++] = (byte) ('0' - value % 10);
+			value /= 10;
+		} while (value != 0);
+		for (int i = start, j = count - 1; i < j; i++, j--) {
+			byte digit = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = digit;
+		}
+	}
+
+	// output with prefix for tester
+	void putIntNl(int value) {
+		putBytes(testerPrefix);
+		putInt(value);
+		put('\n');
+	}
+
+	private void putBytes(byte[] bytes) {
+		if (bufferSize - count < bytes.length)
+			flush();
+		System.arraycopy(bytes, 0, buffer, count, bytes.length);
+		count += bytes.length;
+	}
+
+	/**
+	 * Write the buffered output to the stream
+	 */
+	void flush() {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+		out.flush();
+	}
+}
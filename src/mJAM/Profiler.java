@@ -0,0 +1,197 @@
+/**
+ * Execution profiler for mJAM programs
+ */
+package mJAM;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Counts the instructions a machine executes, per code address and per call
+ * stack.  The program runs one instruction at a time on the reference
+ * interpreter, so that every count is exact.  Methods start at the targets
+ * of CALL and CALLI instructions in the code store, and of the dynamic calls
+ * made by CALLD, and extend up to the next method.  Calls and returns are
+ * followed by watching the frames that CALL, CALLI, CALLD and RETURN push
+ * and pop, which gives a calling context tree, written out as folded stacks.
+ */
+final class Profiler {
+
+	private final MachineInstance machine;
+
+	// executions of each instruction, and calls of each method, by address
+	final long[] counts, calls;
+
+	// method entry points
+	private final TreeSet<Integer> methods = new TreeSet<Integer>();
+
+	// calling context tree node: a method called along a path of calls
+	private static final class Context {
+		final int method;
+		final Context caller;
+		final int depth;
+		final Map<Integer, Context> callees = new HashMap<Integer, Context>();
+		long instructions;
+
+		Context(int method, Context caller) {
+			this.method = method;
+			this.caller = caller;
+			this.depth = caller == null ? 0 : caller.depth + 1;
+		}
+	}
+
+	// the program starts at CB, as if called
+	private final Context root = new Context(Machine.CB, null);
+	private Context current = root;
+
+	private final static int CALL = Machine.Op.CALL.ordinal(),
+			CALLI = Machine.Op.CALLI.ordinal(), CALLD = Machine.Op.CALLD.ordinal(),
+			RETURN = Machine.Op.RETURN.ordinal();
+
+	Profiler(MachineInstance machine) {
+		this.machine = machine;
+		int[] code = machine.code;
+		int ct = code.length / Machine.instrSize;
+		counts = new long[ct];
+		calls = new long[ct];
+		methods.add(Machine.CB);
+		for (int addr = 0; addr < ct; addr++) {
+			int base = addr * Machine.instrSize;
+			int op = code[base + Machine.opField];
+			if ((op == CALL || op == CALLI) && code[base + Machine.rField] == Machine.Reg.CB.ordinal()
+					&& code[base + Machine.dField] >= 0 && code[base + Machine.dField] < ct)
+				methods.add(code[base + Machine.dField]);
+		}
+		calls[Machine.CB] = 1;
+	}
+
+	/**
+	 * Execute one instruction on the machine, counting it and following the
+	 * call or return it makes
+	 */
+	void step() {
+		int cp = machine.CP, lb = machine.LB;
+		if (cp < 0 || cp >= counts.length) {
+			// the machine fails on the invalid address
+			machine.interpretOneOperation();
+			return;
+		}
+		counts[cp]++;
+		current.instructions++;
+		int op = machine.code[cp * Machine.instrSize + Machine.opField];
+		machine.interpretOneOperation();
+		if (machine.status != MachineInstance.running)
+			return;
+		if ((op == CALL || op == CALLI || op == CALLD) && machine.LB != lb) {
+			// a new frame, so not a primitive
+			int target = machine.CP;
+			if (target >= 0 && target < calls.length) {
+				calls[target]++;
+				methods.add(target);
+			}
+			Context callee = current.callees.get(target);
+			if (callee == null) {
+				callee = new Context(target, current);
+				current.callees.put(target, callee);
+			}
+			current = callee;
+		} else if (op == RETURN && current.caller != null) {
+			current = current.caller;
+		}
+	}
+
+	/**
+	 * Write the annotated listing of objectFileName to baseName.prof.asm and
+	 * the folded stacks to baseName.folded, and summarize the methods on
+	 * System.err
+	 * @return true if writing fails
+	 */
+	boolean write(String objectFileName, String baseName) {
+		String listingName = baseName + ".prof.asm", foldedName = baseName + ".folded";
+		Disassembler disassembler = new Disassembler(objectFileName);
+		if (disassembler.disassemble(listingName, counts, methods))
+			return true;
+
+		// method names: the label of the entry point in the listing
+		final Map<Integer, String> names = new HashMap<Integer, String>();
+		for (int method : methods) {
+			String label = disassembler.labelAt(method);
+			names.put(method, (label == null ? "" : label) + "@" + method);
+		}
+
+		try {
+			PrintWriter folded = new PrintWriter(new FileWriter(foldedName));
+			writeFolded(folded, names);
+			folded.close();
+			if (folded.checkError())
+				return true;
+		} catch (IOException e) {
+			return true;
+		}
+
+		// self instructions of each method, from the addresses it spans
+		Integer[] starts = methods.toArray(new Integer[methods.size()]);
+		final long[] self = new long[starts.length];
+		long total = 0;
+		for (int i = 0; i < starts.length; i++) {
+			int end = i + 1 < starts.length ? starts[i + 1] : counts.length;
+			for (int addr = starts[i]; addr < end; addr++)
+				self[i] += counts[addr];
+			total += self[i];
+		}
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < starts.length; i++)
+			if (self[i] > 0 || calls[starts[i]] > 0)
+				order.add(i);
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(self[b], self[a]);
+			}
+		});
+
+		System.err.println("[Profile: " + total + " instructions, listing " + listingName
+				+ ", stacks " + foldedName + "]");
+		System.err.println(String.format("%14s %7s %12s  %s", "instructions", "%", "calls", "method"));
+		for (int i : order)
+			System.err.println(String.format("%14d %7.2f %12d  %s", self[i],
+					total == 0 ? 0.0 : 100.0 * self[i] / total, calls[starts[i]], names.get(starts[i])));
+		return false;
+	}
+
+	// one line per calling context that executed instructions: the methods
+	// from the root, separated by semicolons, and the instruction count
+	private void writeFolded(PrintWriter out, Map<Integer, String> names) {
+		// depth first, without recursion, as call stacks may be deep
+		// stack holds the path to the context, ends[i] the end of its first
+		// i + 1 names
+		ArrayDeque<Context> pending = new ArrayDeque<Context>();
+		StringBuilder stack = new StringBuilder();
+		int[] ends = new int[16];
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Context context = pending.pop();
+			int depth = context.depth;
+			stack.setLength(depth == 0 ? 0 : ends[depth - 1]);
+			if (depth > 0)
+				stack.append(';');
+			stack.append(names.get(context.method));
+			if (depth == ends.length)
+				ends = Arrays.copyOf(ends, 2 * depth);
+			ends[depth] = stack.length();
+			if (context.instructions > 0)
+				out.println(stack + " " + context.instructions);
+			for (Context callee : context.callees.values())
+				pending.push(callee);
+		}
+	}
+}
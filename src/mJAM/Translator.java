@@ -0,0 +1,1266 @@
+/**
+ * Translates a method of the decoded code store into a JVM class
+ */
+package mJAM;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Translates the instructions of one mJAM method (the code addresses from
+ * its entry up to the next method entry) into the class file of a
+ * JitCompiler.CompiledCode implementation.  The translation works on the
+ * decoded code store before fusion, and each mJAM instruction becomes a short
+ * sequence of JVM instructions operating on the data store array, with the
+ * registers ST, HT, LB and OB kept in JVM locals.
+ *
+ * run(data, regs) takes the registers CP, ST, HT, LB, OB in regs, starts at
+ * the entry point CP and returns with the registers written back to regs.  It
+ * returns EXIT_CONTINUE when execution should continue in the interpreter at
+ * CP, and EXIT_INTERPRET when the instruction at CP must first be executed by
+ * the reference interpreter.  The latter is how every failure is reported:
+ * the translated code checks the conditions under which an instruction would
+ * fail before changing any state and, when one holds, leaves at that
+ * instruction so that the reference interpreter fails there exactly as it
+ * always has.  Instructions that are rare or not worth translating (input,
+ * output, HALT, CALLD, computed jumps) are left the same way.
+ *
+ * The entry points of a translation are the method entry, the heads of its
+ * loops, the return address of each call it makes, and every address
+ * following an instruction that leaves for the interpreter.  Calls of the
+ * method itself and returns to one of its entry points stay inside the
+ * translated code.
+ */
+public final class Translator {
+
+	public final static int EXIT_CONTINUE = 0, EXIT_INTERPRET = 1;
+
+	/**
+	 * translations larger than this are not compiled by HotSpot
+	 * (-XX:-DontCompileHugeMethods), so they are not worth loading
+	 */
+	public final static int maxCodeLength = 8000;
+
+	public final static String className = "mJAM/CompiledMethod";
+
+	// JVM locals of run(data, regs), after this (0), data (1) and regs (2)
+	private final static int CP = 3, ST = 4,
+			HT = 5, LB = 6, OB = 7, T1 = 8, T2 = 9, LONG = 10, maxLocals = 12,
+			maxStack = 10;
+
+	// JVM opcodes
+	private final static int
+		ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13,
+		ILOAD = 0x15, LLOAD = 0x16, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c,
+		IALOAD = 0x2e, ARRAYLENGTH = 0xbe, ISTORE = 0x36, LSTORE = 0x37, IASTORE = 0x4f,
+		IADD = 0x60, LADD = 0x61, ISUB = 0x64, LSUB = 0x65, LMUL = 0x69,
+		IDIV = 0x6c, IREM = 0x70, LNEG = 0x75, IAND = 0x7e, IOR = 0x80,
+		IINC = 0x84, I2L = 0x85, L2I = 0x88, LCMP = 0x94,
+		IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IF_ICMPEQ = 0x9f,
+		IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3,
+		IF_ICMPLE = 0xa4, GOTO = 0xa7, LOOKUPSWITCH = 0xab, IRETURN = 0xac,
+		RETURN = 0xb1, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+	// decoded code store before fusion
+	private final int[] op, n, d;
+	private final int start, end, ct;
+
+	// heap base of the machine, and whether its heap is in explicit mode
+	private final int hb;
+	private final boolean explicitFree;
+
+	// entry points, loop heads and other branch targets in [start, end)
+	private final TreeSet<Integer> entryPoints = new TreeSet<Integer>();
+	private final TreeSet<Integer> targets = new TreeSet<Integer>();
+
+	// code of run, its labels and the branches still to be resolved
+	private final Bytes code = new Bytes();
+	private final ArrayList<Integer> labelPos = new ArrayList<Integer>();
+	private final ArrayList<int[]> fixups = new ArrayList<int[]>();
+	private final Map<Integer, Integer> instrLabel = new HashMap<Integer, Integer>();
+	private final Map<Long, Integer> exitLabel = new HashMap<Long, Integer>();
+	private int dispatchLabel, exitContinueLabel, exitInterpretLabel;
+
+	// constant pool
+	private final Bytes pool = new Bytes();
+	private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+	private int poolCount = 1;
+
+	/**
+	 * @param op, n, d   decoded code store before fusion (see Decoder)
+	 * @param ct         code top of the decoded code store
+	 * @param start      entry address of the method
+	 * @param end        address following the last instruction of the method
+	 * @param hb         heap base of the machine running the code
+	 * @param explicitFree  whether the heap of the machine is in explicit mode
+	 */
+	public Translator(int[] op, int[] n, int[] d, int ct, int start, int end, int hb,
+			boolean explicitFree) {
+		this.op = op;
+		this.n = n;
+		this.d = d;
+		this.ct = ct;
+		this.start = start;
+		this.end = end;
+		this.hb = hb;
+		this.explicitFree = explicitFree;
+	}
+
+	/**
+	 * @return the entry points of the translation, valid after translate()
+	 */
+	public int[] entryPoints() {
+		int[] result = new int[entryPoints.size()];
+		int i = 0;
+		for (int addr : entryPoints)
+			result[i++] = addr;
+		return result;
+	}
+
+	/**
+	 * @return the class file of the translation, or null if the method is too
+	 * large to be worth translating
+	 */
+	public byte[] translate() {
+		findTargets();
+		dispatchLabel = newLabel();
+		exitContinueLabel = newLabel();
+		exitInterpretLabel = newLabel();
+		for (int addr : targets)
+			instrLabel.put(addr, newLabel());
+
+		// prologue: registers from regs
+		loadReg(CP, 0);
+		loadReg(ST, 1);
+		loadReg(HT, 2);
+		loadReg(LB, 3);
+		loadReg(OB, 4);
+
+		// continue at the entry point CP, or leave if CP is not one
+		bind(dispatchLabel);
+		iload(CP);
+		lookupSwitch();
+
+		boolean reachable = false;
+		int regionStart = -1;
+		for (int addr = start; addr < end; addr++) {
+			if (targets.contains(addr)) {
+				bind(instrLabel.get(addr));
+				reachable = true;
+			}
+			if (!reachable)
+				continue;
+			if (regionStart < 0 || targets.contains(addr)) {
+				regionStart = addr;
+				checkSpace(addr);
+			}
+			if (isCompareJump(addr)) {
+				compareJump(addr);
+				addr++;
+				continue;
+			}
+			if (translateInstruction(addr))
+				continue;
+			// control never falls through to the next instruction
+			reachable = false;
+			regionStart = -1;
+		}
+		if (reachable)
+			jumpTo(end);
+
+		// exits
+		for (Map.Entry<Long, Integer> exit : exitLabel.entrySet()) {
+			bind(exit.getValue());
+			iconst((int) (long) exit.getKey());
+			istore(CP);
+			gotoLabel(exit.getKey() >> 32 == EXIT_CONTINUE ? exitContinueLabel : exitInterpretLabel);
+		}
+		bind(exitInterpretLabel);
+		iconst(EXIT_INTERPRET);
+		istore(T1);
+		int writeBack = newLabel();
+		gotoLabel(writeBack);
+		bind(exitContinueLabel);
+		iconst(EXIT_CONTINUE);
+		istore(T1);
+		bind(writeBack);
+		storeReg(CP, 0);
+		storeReg(ST, 1);
+		storeReg(HT, 2);
+		storeReg(LB, 3);
+		storeReg(OB, 4);
+		iload(T1);
+		u1(IRETURN);
+
+		resolveFixups();
+		if (code.length > maxCodeLength)
+			return null;
+		return classFile();
+	}
+
+	// TARGETS AND ENTRY POINTS
+
+	private boolean inMethod(int addr) {
+		return addr >= start && addr < end;
+	}
+
+	private void findTargets() {
+		entryPoints.add(start);
+		for (int addr = start; addr < end; addr++) {
+			switch (op[addr]) {
+			case Decoder.JUMP:
+			case Decoder.JUMPIF:
+				if (inMethod(d[addr])) {
+					targets.add(d[addr]);
+					if (d[addr] <= addr)
+						entryPoints.add(d[addr]);  // loop head
+				}
+				break;
+			case Decoder.CALL:
+			case Decoder.CALLI:
+				// return address
+				if (addr + 1 < end)
+					entryPoints.add(addr + 1);
+				break;
+			default:
+				break;
+			}
+			if (leavesForInterpreter(addr) && addr + 1 < end)
+				entryPoints.add(addr + 1);
+		}
+		targets.addAll(entryPoints);
+	}
+
+	/**
+	 * @return true if the instruction at addr is always left to the reference
+	 * interpreter
+	 */
+	private boolean leavesForInterpreter(int addr) {
+		switch (op[addr]) {
+		case Decoder.CALL_REG:
+		case Decoder.CALLI_REG:
+		case Decoder.CALLD:
+		case Decoder.JUMP_REG:
+		case Decoder.JUMPI:
+		case Decoder.JUMPIF_REG:
+		case Decoder.HALT:
+		case Decoder.FAIL_CODE_ADDR:
+		case Decoder.FAIL_INSTR:
+		case Decoder.PRIM_EOL:
+		case Decoder.PRIM_EOF:
+		case Decoder.PRIM_GET:
+		case Decoder.PRIM_PUT:
+		case Decoder.PRIM_GETEOL:
+		case Decoder.PRIM_PUTEOL:
+		case Decoder.PRIM_GETINT:
+		case Decoder.PRIM_PUTINT:
+		case Decoder.PRIM_PUTINTNL:
+		case Decoder.PRIM_ALLOC:
+		case Decoder.PRIM_DISPOSE:
+			return true;
+		case Decoder.PRIM_NEWOBJ:
+		case Decoder.PRIM_NEWARR:
+			// free blocks come first in explicit mode
+			return explicitFree;
+		case Decoder.CALL:
+		case Decoder.CALLI:
+		case Decoder.JUMP:
+		case Decoder.JUMPIF:
+			// branch to an invalid code address
+			return d[addr] == ct;
+		default:
+			return false;
+		}
+	}
+
+	// DATA STORE CHECKS
+
+	/**
+	 * Stack space instructions check for before they execute, relative to ST
+	 * before the instruction, or Integer.MIN_VALUE if there is no check
+	 */
+	private int spaceNeeded(int addr) {
+		switch (op[addr]) {
+		case Decoder.LOADL:
+		case Decoder.LOAD:
+		case Decoder.LOAD_LB:
+		case Decoder.LOAD_OB:
+		case Decoder.LOAD_ST:
+		case Decoder.LOAD_HT:
+		case Decoder.LOADA_LB:
+		case Decoder.LOADA_OB:
+		case Decoder.LOADA_ST:
+		case Decoder.LOADA_HT:
+			return 1;
+		case Decoder.LOADI:
+			return 0;
+		case Decoder.PUSH:
+			return d[addr];
+		case Decoder.CALL:
+			return 3;
+		case Decoder.CALLI:
+			return 2;
+		default:
+			return Integer.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Change of ST by the instruction at addr when it falls through
+	 */
+	private int stackEffect(int addr) {
+		switch (op[addr]) {
+		case Decoder.LOADL:
+		case Decoder.LOAD:
+		case Decoder.LOAD_LB:
+		case Decoder.LOAD_OB:
+		case Decoder.LOAD_ST:
+		case Decoder.LOAD_HT:
+		case Decoder.LOADA_LB:
+		case Decoder.LOADA_OB:
+		case Decoder.LOADA_ST:
+		case Decoder.LOADA_HT:
+			return 1;
+		case Decoder.PUSH:
+			return d[addr];
+		case Decoder.POP:
+			return -d[addr];
+		case Decoder.STOREI:
+			return -2;
+		case Decoder.STORE:
+		case Decoder.STORE_LB:
+		case Decoder.STORE_OB:
+		case Decoder.STORE_ST:
+		case Decoder.STORE_HT:
+		case Decoder.JUMPIF:
+		case Decoder.PRIM_AND:
+		case Decoder.PRIM_OR:
+		case Decoder.PRIM_ADD:
+		case Decoder.PRIM_SUB:
+		case Decoder.PRIM_MULT:
+		case Decoder.PRIM_DIV:
+		case Decoder.PRIM_MOD:
+		case Decoder.PRIM_LT:
+		case Decoder.PRIM_LE:
+		case Decoder.PRIM_GE:
+		case Decoder.PRIM_GT:
+		case Decoder.PRIM_EQ:
+		case Decoder.PRIM_NE:
+		case Decoder.PRIM_NEWOBJ:
+		case Decoder.PRIM_ARRAYREF:
+		case Decoder.PRIM_FIELDREF:
+			return -1;
+		case Decoder.PRIM_ARRAYUPD:
+		case Decoder.PRIM_FIELDUPD:
+			return -3;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Emit one check of the space on the stack for the instructions from addr
+	 * up to the next branch target or transfer of control, in place of the
+	 * check each of them would make.  If the check fails the instruction
+	 * at addr is left to the reference interpreter, and execution continues
+	 * with precise checks in the interpreter.
+	 */
+	private void checkSpace(int addr) {
+		boolean any = false;
+		int needed = Integer.MIN_VALUE, effect = 0;
+		for (int a = addr; a < end; a++) {
+			if (a > addr && targets.contains(a))
+				break;
+			int space = spaceNeeded(a);
+			if (space != Integer.MIN_VALUE) {
+				any = true;
+				needed = Math.max(needed, effect + space);
+			}
+			if (endsRegion(a))
+				break;
+			effect += stackEffect(a);
+		}
+		if (!any)
+			return;
+		// if (hb - st < needed) leave
+		iconst(hb);
+		iload(ST);
+		u1(ISUB);
+		iconst(needed);
+		branch(IF_ICMPLT, exit(EXIT_INTERPRET, addr));
+	}
+
+	private boolean endsRegion(int addr) {
+		switch (op[addr]) {
+		case Decoder.CALL:
+		case Decoder.CALLI:
+		case Decoder.RETURN:
+		case Decoder.JUMP:
+			return true;
+		default:
+			return leavesForInterpreter(addr);
+		}
+	}
+
+	// INSTRUCTIONS
+
+	/**
+	 * @return whether the comparison at addr and the conditional jump after
+	 * it can be translated as one JVM branch
+	 */
+	private boolean isCompareJump(int addr) {
+		return op[addr] >= Decoder.PRIM_LT && op[addr] <= Decoder.PRIM_NE
+				&& addr + 1 < end && !targets.contains(addr + 1)
+				&& op[addr + 1] == Decoder.JUMPIF && d[addr + 1] != ct
+				&& (n[addr + 1] == Machine.trueRep || n[addr + 1] == Machine.falseRep);
+	}
+
+	private void compareJump(int addr) {
+		boolean jumpWhen = n[addr + 1] == Machine.trueRep;
+		int branchOp;
+		switch (op[addr]) {
+		case Decoder.PRIM_LT:
+			branchOp = jumpWhen ? IF_ICMPLT : IF_ICMPGE;
+			break;
+		case Decoder.PRIM_LE:
+			branchOp = jumpWhen ? IF_ICMPLE : IF_ICMPGT;
+			break;
+		case Decoder.PRIM_GE:
+			branchOp = jumpWhen ? IF_ICMPGE : IF_ICMPLT;
+			break;
+		case Decoder.PRIM_GT:
+			branchOp = jumpWhen ? IF_ICMPGT : IF_ICMPLE;
+			break;
+		case Decoder.PRIM_EQ:
+			branchOp = jumpWhen ? IF_ICMPEQ : IF_ICMPNE;
+			break;
+		default: // Decoder.PRIM_NE
+			branchOp = jumpWhen ? IF_ICMPNE : IF_ICMPEQ;
+			break;
+		}
+		iinc(ST, -2);
+		loadStack(0);
+		loadStack(1);
+		branch(branchOp, jumpTarget(d[addr + 1]));
+	}
+
+	/**
+	 * Translate the instruction at addr
+	 * @return false if control never reaches the next instruction
+	 */
+	private boolean translateInstruction(int addr) {
+		if (leavesForInterpreter(addr)) {
+			gotoLabel(exit(EXIT_INTERPRET, addr));
+			return false;
+		}
+		int nField = n[addr], dField = d[addr];
+		switch (op[addr]) {
+		case Decoder.LOADL:
+			push();
+			iconst(dField);
+			pushEnd();
+			break;
+		case Decoder.LOAD:
+			push();
+			u1(ALOAD_1);
+			iconst(dField);
+			u1(IALOAD);
+			pushEnd();
+			break;
+		case Decoder.LOAD_LB:
+			push();
+			loadData(LB, dField);
+			pushEnd();
+			break;
+		case Decoder.LOAD_OB:
+			push();
+			loadData(OB, dField);
+			pushEnd();
+			break;
+		case Decoder.LOAD_ST:
+			push();
+			loadData(ST, dField);
+			pushEnd();
+			break;
+		case Decoder.LOAD_HT:
+			push();
+			loadData(HT, dField);
+			pushEnd();
+			break;
+		case Decoder.LOADA_LB:
+			push();
+			address(LB, dField);
+			pushEnd();
+			break;
+		case Decoder.LOADA_OB:
+			push();
+			address(OB, dField);
+			pushEnd();
+			break;
+		case Decoder.LOADA_ST:
+			push();
+			address(ST, dField);
+			pushEnd();
+			break;
+		case Decoder.LOADA_HT:
+			push();
+			address(HT, dField);
+			pushEnd();
+			break;
+		case Decoder.LOADI:
+			// data[st - 1] = data[data[st - 1]]
+			stackAddress(-1);
+			u1(ALOAD_1);
+			loadStack(-1);
+			u1(IALOAD);
+			u1(IASTORE);
+			break;
+		case Decoder.STORE:
+			u1(ALOAD_1);
+			iconst(dField);
+			storeEnd();
+			break;
+		case Decoder.STORE_LB:
+			u1(ALOAD_1);
+			address(LB, dField);
+			storeEnd();
+			break;
+		case Decoder.STORE_OB:
+			u1(ALOAD_1);
+			address(OB, dField);
+			storeEnd();
+			break;
+		case Decoder.STORE_ST:
+			u1(ALOAD_1);
+			address(ST, dField);
+			storeEnd();
+			break;
+		case Decoder.STORE_HT:
+			u1(ALOAD_1);
+			address(HT, dField);
+			storeEnd();
+			break;
+		case Decoder.STOREI:
+			// st = st - 2; data[data[st + 1]] = data[st]
+			iinc(ST, -2);
+			u1(ALOAD_1);
+			loadStack(1);
+			loadStack(0);
+			u1(IASTORE);
+			break;
+		case Decoder.PUSH:
+			iinc(ST, dField);
+			break;
+		case Decoder.POP:
+			iinc(ST, -dField);
+			break;
+		case Decoder.CALL:
+			// data[st..st+2] = ob, lb, return address
+			storeStack(0, OB);
+			storeStack(1, LB);
+			stackAddress(2);
+			iconst(addr + 1);
+			u1(IASTORE);
+			iconst(Machine.nullRep);
+			istore(OB);
+			iload(ST);
+			istore(LB);
+			iinc(ST, 3);
+			call(dField);
+			return false;
+		case Decoder.CALLI:
+			// instance address on the stack is replaced by the frame
+			loadStack(-1);
+			istore(T1);
+			storeStack(-1, OB);
+			storeStack(0, LB);
+			stackAddress(1);
+			iconst(addr + 1);
+			u1(IASTORE);
+			iload(T1);
+			istore(OB);
+			iload(ST);
+			iconst(1);
+			u1(ISUB);
+			istore(LB);
+			iinc(ST, 2);
+			call(dField);
+			return false;
+		case Decoder.RETURN:
+			translateReturn(addr, nField, dField);
+			return false;
+		case Decoder.JUMP:
+			gotoLabel(jumpTarget(dField));
+			return false;
+		case Decoder.JUMPIF:
+			iinc(ST, -1);
+			loadStack(0);
+			if (nField == 0) {
+				branch(IFEQ, jumpTarget(dField));
+			} else {
+				iconst(nField);
+				branch(IF_ICMPEQ, jumpTarget(dField));
+			}
+			break;
+		default:
+			return translatePrimitive(addr, op[addr]);
+		}
+		return true;
+	}
+
+	private void translateReturn(int addr, int nField, int dField) {
+		// leave if the return address is not a code address
+		loadData(LB, 2);
+		istore(T1);
+		iload(T1);
+		branch(IFLT, exit(EXIT_INTERPRET, addr));
+		iload(T1);
+		iconst(ct);
+		branch(IF_ICMPGE, exit(EXIT_INTERPRET, addr));
+		// T2 = address of the caller's arguments
+		iload(LB);
+		iconst(dField);
+		u1(ISUB);
+		istore(T2);
+		loadData(LB, 0);
+		istore(OB);
+		loadData(LB, 1);
+		istore(LB);
+		if (nField == 1) {
+			u1(ALOAD_1);
+			iload(T2);
+			loadStack(-1);
+			u1(IASTORE);
+		}
+		iload(T2);
+		iconst(nField);
+		u1(IADD);
+		istore(ST);
+		iload(T1);
+		istore(CP);
+		gotoLabel(dispatchLabel);
+	}
+
+	/**
+	 * Continue at code address target after a call, with the frame in place
+	 */
+	private void call(int target) {
+		if (target == start) {
+			gotoLabel(instrLabel.get(start));
+		} else {
+			gotoLabel(exit(EXIT_CONTINUE, target));
+		}
+	}
+
+	private boolean translatePrimitive(int addr, int prim) {
+		int fail = exit(EXIT_INTERPRET, addr);
+		switch (prim) {
+		case Decoder.PRIM_ID:
+			break;
+		case Decoder.PRIM_NOT:
+			stackAddress(-1);
+			loadStack(-1);
+			iconst(Machine.trueRep);
+			booleanOf(IF_ICMPNE);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_AND:
+		case Decoder.PRIM_OR:
+			iinc(ST, -1);
+			stackAddress(-1);
+			loadStack(-1);
+			iconst(Machine.trueRep);
+			booleanOf(IF_ICMPEQ);
+			loadStack(0);
+			iconst(Machine.trueRep);
+			booleanOf(IF_ICMPEQ);
+			u1(prim == Decoder.PRIM_AND ? IAND : IOR);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_SUCC:
+		case Decoder.PRIM_PRED:
+		case Decoder.PRIM_NEG:
+			loadStack(-1);
+			u1(I2L);
+			if (prim == Decoder.PRIM_NEG) {
+				u1(LNEG);
+			} else {
+				iconst(1);
+				u1(I2L);
+				u1(prim == Decoder.PRIM_SUCC ? LADD : LSUB);
+			}
+			overflowCheck(fail);
+			stackAddress(-1);
+			u1(LLOAD);
+			u1(LONG);
+			u1(L2I);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_ADD:
+		case Decoder.PRIM_SUB:
+		case Decoder.PRIM_MULT:
+			loadStack(-2);
+			u1(I2L);
+			loadStack(-1);
+			u1(I2L);
+			u1(prim == Decoder.PRIM_ADD ? LADD : prim == Decoder.PRIM_SUB ? LSUB : LMUL);
+			overflowCheck(fail);
+			iinc(ST, -1);
+			stackAddress(-1);
+			u1(LLOAD);
+			u1(LONG);
+			u1(L2I);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_DIV:
+		case Decoder.PRIM_MOD:
+			loadStack(-1);
+			branch(IFEQ, fail);
+			iinc(ST, -1);
+			stackAddress(-1);
+			loadStack(-1);
+			loadStack(0);
+			u1(prim == Decoder.PRIM_DIV ? IDIV : IREM);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_LT:
+		case Decoder.PRIM_LE:
+		case Decoder.PRIM_GE:
+		case Decoder.PRIM_GT:
+		case Decoder.PRIM_EQ:
+		case Decoder.PRIM_NE:
+			iinc(ST, -1);
+			stackAddress(-1);
+			loadStack(-1);
+			loadStack(0);
+			booleanOf(prim == Decoder.PRIM_LT ? IF_ICMPLT
+					: prim == Decoder.PRIM_LE ? IF_ICMPLE
+					: prim == Decoder.PRIM_GE ? IF_ICMPGE
+					: prim == Decoder.PRIM_GT ? IF_ICMPGT
+					: prim == Decoder.PRIM_EQ ? IF_ICMPEQ : IF_ICMPNE);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_NEWOBJ:
+		case Decoder.PRIM_NEWARR:
+			// T1 = size of the object including its 2 word descriptor, leave
+			// unless it fits into the data array as it is
+			loadStack(-1);
+			iconst(2);
+			u1(IADD);
+			istore(T1);
+			iload(T1);
+			iconst(2);
+			branch(IF_ICMPLT, fail);
+			u1(ALOAD_1);
+			u1(ARRAYLENGTH);
+			iload(HT);
+			u1(ISUB);
+			iload(T1);
+			branch(IF_ICMPLT, fail);
+			// T2 = address of the descriptor
+			iload(HT);
+			istore(T2);
+			iload(HT);
+			iload(T1);
+			u1(IADD);
+			istore(HT);
+			// descriptor: class object address or array tag, then size
+			u1(ALOAD_1);
+			iload(T2);
+			if (prim == Decoder.PRIM_NEWOBJ)
+				loadStack(-2);
+			else
+				iconst(-2);
+			u1(IASTORE);
+			u1(ALOAD_1);
+			address(T2, 1);
+			iload(T1);
+			iconst(2);
+			u1(ISUB);
+			u1(IASTORE);
+			// zero the fields or elements
+			u1(ALOAD_1);
+			address(T2, 2);
+			iload(HT);
+			iconst(0);
+			u1(INVOKESTATIC);
+			u2(methodRef("java/util/Arrays", "fill", "([IIII)V"));
+			if (prim == Decoder.PRIM_NEWOBJ)
+				iinc(ST, -1);
+			stackAddress(-1);
+			address(T2, 2);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_ARRAYLEN:
+			loadStack(-1);
+			istore(T1);
+			heapRefCheck(fail, true);
+			stackAddress(-1);
+			loadData(T1, -1);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_ARRAYREF:
+		case Decoder.PRIM_FIELDREF:
+			loadStack(-2);
+			istore(T1);
+			loadStack(-1);
+			istore(T2);
+			heapRefCheck(fail, prim == Decoder.PRIM_ARRAYREF);
+			indexCheck(fail);
+			iinc(ST, -1);
+			stackAddress(-1);
+			elementAddress();
+			u1(IALOAD);
+			u1(IASTORE);
+			break;
+		case Decoder.PRIM_ARRAYUPD:
+		case Decoder.PRIM_FIELDUPD:
+			loadStack(-3);
+			istore(T1);
+			loadStack(-2);
+			istore(T2);
+			heapRefCheck(fail, prim == Decoder.PRIM_ARRAYUPD);
+			indexCheck(fail);
+			elementAddress();
+			loadStack(-1);
+			u1(IASTORE);
+			iinc(ST, -3);
+			break;
+		default:
+			gotoLabel(fail);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Leave for fail unless the long result on the operand stack fits into
+	 * an int; the result is kept in LONG
+	 */
+	private void overflowCheck(int fail) {
+		u1(LSTORE);
+		u1(LONG);
+		u1(LLOAD);
+		u1(LONG);
+		u1(L2I);
+		u1(I2L);
+		u1(LLOAD);
+		u1(LONG);
+		u1(LCMP);
+		branch(IFNE, fail);
+	}
+
+	/**
+	 * Leave for fail unless T1 is the address of an object (or array if
+	 * isArray) in the heap
+	 */
+	private void heapRefCheck(int fail, boolean isArray) {
+		iload(T1);
+		if (Machine.nullRep == 0) {
+			branch(IFEQ, fail);
+		} else {
+			iconst(Machine.nullRep);
+			branch(IF_ICMPEQ, fail);
+		}
+		iload(T1);
+		iconst(hb + 2);
+		branch(IF_ICMPLT, fail);
+		iload(T1);
+		iload(HT);
+		branch(IF_ICMPGT, fail);
+		if (isArray) {
+			loadData(T1, -2);
+			iconst(-2);
+			branch(IF_ICMPNE, fail);
+		}
+	}
+
+	/**
+	 * Leave for fail unless 0 <= T2 < size of the object at T1
+	 */
+	private void indexCheck(int fail) {
+		iload(T2);
+		branch(IFLT, fail);
+		iload(T2);
+		loadData(T1, -1);
+		branch(IF_ICMPGE, fail);
+	}
+
+	/**
+	 * Pushes data, T1 + T2
+	 */
+	private void elementAddress() {
+		u1(ALOAD_1);
+		iload(T1);
+		iload(T2);
+		u1(IADD);
+	}
+
+	// start of data[st] = value; st = st + 1
+	private void push() {
+		stackAddress(0);
+	}
+
+	private void pushEnd() {
+		u1(IASTORE);
+		iinc(ST, 1);
+	}
+
+	// data, address on the operand stack: address = data[--st]
+	private void storeEnd() {
+		iinc(ST, -1);
+		loadStack(0);
+		u1(IASTORE);
+	}
+
+	/**
+	 * Pushes data, st + offset
+	 */
+	private void stackAddress(int offset) {
+		u1(ALOAD_1);
+		address(ST, offset);
+	}
+
+	/**
+	 * Pushes data[st + offset]
+	 */
+	private void loadStack(int offset) {
+		loadData(ST, offset);
+	}
+
+	/**
+	 * data[st + offset] = local
+	 */
+	private void storeStack(int offset, int local) {
+		stackAddress(offset);
+		iload(local);
+		u1(IASTORE);
+	}
+
+	/**
+	 * Pushes data[local + offset]
+	 */
+	private void loadData(int local, int offset) {
+		u1(ALOAD_1);
+		address(local, offset);
+		u1(IALOAD);
+	}
+
+	/**
+	 * Pushes local + offset
+	 */
+	private void address(int local, int offset) {
+		iload(local);
+		if (offset != 0) {
+			iconst(offset);
+			u1(IADD);
+		}
+	}
+
+	/**
+	 * Replaces the two ints on the operand stack by trueRep if comparing them
+	 * with branchOp succeeds, otherwise by falseRep
+	 */
+	private void booleanOf(int branchOp) {
+		int isTrue = newLabel(), done = newLabel();
+		branch(branchOp, isTrue);
+		iconst(Machine.falseRep);
+		gotoLabel(done);
+		bind(isTrue);
+		iconst(Machine.trueRep);
+		bind(done);
+	}
+
+	/**
+	 * @return the label to jump to for code address target
+	 */
+	private int jumpTarget(int target) {
+		if (inMethod(target))
+			return instrLabel.get(target);
+		return exit(target == ct ? EXIT_INTERPRET : EXIT_CONTINUE, target);
+	}
+
+	private void jumpTo(int target) {
+		gotoLabel(jumpTarget(target));
+	}
+
+	/**
+	 * @return the label of code that leaves run with CP = addr
+	 */
+	private int exit(int kind, int addr) {
+		Long key = ((long) kind << 32) | (addr & 0xffffffffL);
+		Integer label = exitLabel.get(key);
+		if (label == null) {
+			label = newLabel();
+			exitLabel.put(key, label);
+		}
+		return label;
+	}
+
+	private void loadReg(int local, int index) {
+		u1(ALOAD_2);
+		iconst(index);
+		u1(IALOAD);
+		istore(local);
+	}
+
+	private void storeReg(int local, int index) {
+		u1(ALOAD_2);
+		iconst(index);
+		iload(local);
+		u1(IASTORE);
+	}
+
+	// JVM CODE
+
+	private void u1(int b) {
+		code.u1(b);
+	}
+
+	private void u2(int v) {
+		code.u2(v);
+	}
+
+	private void u4(int v) {
+		code.u4(v);
+	}
+
+	private void iconst(int v) {
+		if (v >= -1 && v <= 5) {
+			u1(ICONST_0 + v);
+		} else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+			u1(BIPUSH);
+			u1(v);
+		} else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+			u1(SIPUSH);
+			u2(v);
+		} else {
+			int index = intConstant(v);
+			if (index < 256) {
+				u1(LDC);
+				u1(index);
+			} else {
+				u1(LDC_W);
+				u2(index);
+			}
+		}
+	}
+
+	private void iload(int local) {
+		u1(ILOAD);
+		u1(local);
+	}
+
+	private void istore(int local) {
+		u1(ISTORE);
+		u1(local);
+	}
+
+	private void iinc(int local, int v) {
+		if (v == 0)
+			return;
+		if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+			u1(IINC);
+			u1(local);
+			u1(v);
+		} else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+			u1(WIDE);
+			u1(IINC);
+			u2(local);
+			u2(v);
+		} else {
+			iload(local);
+			iconst(v);
+			u1(IADD);
+			istore(local);
+		}
+	}
+
+	private int newLabel() {
+		labelPos.add(-1);
+		return labelPos.size() - 1;
+	}
+
+	private void bind(int label) {
+		labelPos.set(label, code.length);
+	}
+
+	private void branch(int branchOp, int label) {
+		fixups.add(new int[] { code.length, code.length + 1, label, 2 });
+		u1(branchOp);
+		u2(0);
+	}
+
+	private void gotoLabel(int label) {
+		branch(GOTO, label);
+	}
+
+	/**
+	 * Dispatch on CP to the entry points, anything else leaves run
+	 */
+	private void lookupSwitch() {
+		int opPos = code.length;
+		u1(LOOKUPSWITCH);
+		while (code.length % 4 != 0)
+			u1(0);
+		fixups.add(new int[] { opPos, code.length, exitContinueLabel, 4 });
+		u4(0);
+		u4(entryPoints.size());
+		for (int addr : entryPoints) {
+			u4(addr);
+			fixups.add(new int[] { opPos, code.length, instrLabel.get(addr), 4 });
+			u4(0);
+		}
+	}
+
+	private void resolveFixups() {
+		for (int[] fixup : fixups) {
+			int offset = labelPos.get(fixup[2]) - fixup[0];
+			int pos = fixup[1];
+			if (fixup[3] == 4) {
+				code.buf[pos++] = (byte) (offset >> 24);
+				code.buf[pos++] = (byte) (offset >> 16);
+			}
+			code.buf[pos++] = (byte) (offset >> 8);
+			code.buf[pos] = (byte) offset;
+		}
+	}
+
+	// CLASS FILE
+
+	private int constant(String key, int tag, int... contents) {
+		Integer index = poolIndex.get(key);
+		if (index == null) {
+			pool.u1(tag);
+			for (int i = 0; i < contents.length; i += 2) {
+				if (contents[i] == 2)
+					pool.u2(contents[i + 1]);
+				else
+					pool.u4(contents[i + 1]);
+			}
+			index = poolCount++;
+			poolIndex.put(key, index);
+		}
+		return index;
+	}
+
+	private int utf8(String s) {
+		Integer index = poolIndex.get("U" + s);
+		if (index == null) {
+			pool.u1(1);
+			pool.u2(s.length());
+			for (int i = 0; i < s.length(); i++)
+				pool.u1(s.charAt(i));
+			index = poolCount++;
+			poolIndex.put("U" + s, index);
+		}
+		return index;
+	}
+
+	private int intConstant(int v) {
+		return constant("I" + v, 3, 4, v);
+	}
+
+	private int classRef(String name) {
+		int nameIndex = utf8(name);
+		return constant("C" + name, 7, 2, nameIndex);
+	}
+
+	private int methodRef(String owner, String name, String descriptor) {
+		int classIndex = classRef(owner);
+		int nameIndex = utf8(name), descIndex = utf8(descriptor);
+		int nameAndType = constant("N" + name + descriptor, 12, 2, nameIndex, 2, descIndex);
+		return constant("M" + owner + "." + name + descriptor, 10, 2, classIndex, 2, nameAndType);
+	}
+
+	/**
+	 * Class file (version 49, so that no stack map frames are needed) of a
+	 * public final class implementing JitCompiler.CompiledCode with run as
+	 * translated
+	 */
+	private byte[] classFile() {
+		int thisClass = classRef(className);
+		int superClass = classRef("java/lang/Object");
+		int iface = classRef("mJAM/JitCompiler$CompiledCode");
+		int superInit = methodRef("java/lang/Object", "<init>", "()V");
+		int initName = utf8("<init>"), initDesc = utf8("()V");
+		int runName = utf8("run"), runDesc = utf8("([I[I)I");
+		int codeName = utf8("Code");
+
+		Bytes out = new Bytes();
+		out.u4(0xcafebabe);
+		out.u2(0);
+		out.u2(49);
+		out.u2(poolCount);
+		out.bytes(pool.buf, pool.length);
+		out.u2(0x0031);  // public final super
+		out.u2(thisClass);
+		out.u2(superClass);
+		out.u2(1);
+		out.u2(iface);
+		out.u2(0);  // fields
+		out.u2(2);  // methods
+
+		// public <init>()
+		out.u2(0x0001);
+		out.u2(initName);
+		out.u2(initDesc);
+		out.u2(1);
+		out.u2(codeName);
+		out.u4(12 + 5);
+		out.u2(1);
+		out.u2(1);
+		out.u4(5);
+		out.u1(ALOAD_0);
+		out.u1(INVOKESPECIAL);
+		out.u2(superInit);
+		out.u1(RETURN);
+		out.u2(0);
+		out.u2(0);
+
+		// public int run(int[] data, int[] regs)
+		out.u2(0x0001);
+		out.u2(runName);
+		out.u2(runDesc);
+		out.u2(1);
+		out.u2(codeName);
+		out.u4(12 + code.length);
+		out.u2(maxStack);
+		out.u2(maxLocals);
+		out.u4(code.length);
+		out.bytes(code.buf, code.length);
+		out.u2(0);
+		out.u2(0);
+
+		out.u2(0);  // attributes
+		return java.util.Arrays.copyOf(out.buf, out.length);
+	}
+
+	private final static class Bytes {
+		byte[] buf = new byte[256];
+		int length;
+
+		void u1(int b) {
+			if (length == buf.length)
+				buf = java.util.Arrays.copyOf(buf, 2 * length);
+			buf[length++] = (byte) b;
+		}
+
+		void u2(int v) {
+			u1(v >> 8);
+			u1(v);
+		}
+
+		void u4(int v) {
+			u2(v >> 16);
+			u2(v);
+		}
+
+		void bytes(byte[] b, int count) {
+			for (int i = 0; i < count; i++)
+				u1(b[i]);
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package miniJava.AbstractSyntaxTrees;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Fingerprint a declaration: a hash of its nodes and spellings, in the
+ * order of an in-order traversal, which positions do not enter, so that a
+ * declaration moved or reformatted has the same fingerprint.  The spellings
+ * of the identifiers met on the way are collected as the names the
+ * declaration may refer to.
+ */
+public class Fingerprint implements Visitor<Object, Object> {
+
+	private long hash;
+	private Set<String> names;
+
+	/**
+	 * @return the fingerprint of ast, with the names it refers to added to names
+	 */
+	public long of(AST ast, Set<String> names) {
+		hash = 0xcbf29ce484222325L;
+		this.names = names;
+		ast.visit(this, null);
+		return hash;
+	}
+
+	public long of(AST ast) {
+		return of(ast, new HashSet<String>());
+	}
+
+	// FNV-1a over the chars of text, then a separator
+	private void mix(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+		}
+		hash = (hash ^ 0xff) * 0x100000001b3L;
+	}
+
+	private void mix(AST node) {
+		mix(node.getClass().getSimpleName());
+	}
+
+	private void mixModifiers(MemberDecl md) {
+		mix((md.isPrivate ? "private" : "public") + (md.isStatic ? " static" : ""));
+	}
+
+	// a missing (optional) node
+	private void visitOptional(AST node) {
+		if (node == null) {
+			mix("-");
+		} else {
+			node.visit(this, null);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// PACKAGE
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitPackage(Package prog, Object arg) {
+		mix(prog);
+		for (ClassDecl cd: prog.classDeclList) {
+			cd.visit(this, null);
+		}
+		return null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// DECLARATIONS
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitClassDecl(ClassDecl cd, Object arg) {
+		mix(cd);
+		mix(cd.name);
+		for (FieldDecl fd: cd.fieldDeclList) {
+			fd.visit(this, null);
+		}
+		for (MethodDecl md: cd.methodDeclList) {
+			md.visit(this, null);
+		}
+		return null;
+	}
+
+	public Object visitFieldDecl(FieldDecl fd, Object arg) {
+		mix(fd);
+		mixModifiers(fd);
+		fd.type.visit(this, null);
+		mix(fd.name);
+		return null;
+	}
+
+	public Object visitMethodDecl(MethodDecl md, Object arg) {
+		mix(md);
+		mixModifiers(md);
+		md.type.visit(this, null);
+		mix(md.name);
+		mix("" + md.parameterDeclList.size());
+		for (ParameterDecl pd: md.parameterDeclList) {
+			pd.visit(this, null);
+		}
+		mix("" + md.statementList.size());
+		for (Statement stmt: md.statementList) {
+			stmt.visit(this, null);
+		}
+		return null;
+	}
+
+	public Object visitParameterDecl(ParameterDecl pd, Object arg) {
+		mix(pd);
+		pd.type.visit(this, null);
+		mix(pd.name);
+		return null;
+	}
+
+	public Object visitVarDecl(VarDecl decl, Object arg) {
+		mix(decl);
+		decl.type.visit(this, null);
+		mix(decl.name);
+		return null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// TYPES
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitBaseType(BaseType type, Object arg) {
+		mix(type);
+		mix(type.typeKind.name());
+		return null;
+	}
+
+	public Object visitClassType(ClassType type, Object arg) {
+		mix(type);
+		type.className.visit(this, null);
+		return null;
+	}
+
+	public Object visitArrayType(ArrayType type, Object arg) {
+		mix(type);
+		type.eltType.visit(this, null);
+		return null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// STATEMENTS
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitBlockStmt(BlockStmt stmt, Object arg) {
+		mix(stmt);
+		mix("" + stmt.sl.size());
+		for (Statement s: stmt.sl) {
+			s.visit(this, null);
+		}
+		return null;
+	}
+
+	public Object visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		mix(stmt);
+		stmt.varDecl.visit(this, null);
+		stmt.initExp.visit(this, null);
+		return null;
+	}
+
+	public Object visitAssignStmt(AssignStmt stmt, Object arg) {
+		mix(stmt);
+		stmt.ref.visit(this, null);
+		stmt.val.visit(this, null);
+		return null;
+	}
+
+	public Object visitIxAssignStmt(IxAssignStmt stmt, Object arg) {
+		mix(stmt);
+		stmt.ref.visit(this, null);
+		stmt.ix.visit(this, null);
+		stmt.exp.visit(this, null);
+		return null;
+	}
+
+	public Object visitCallStmt(CallStmt stmt, Object arg) {
+		mix(stmt);
+		stmt.methodRef.visit(this, null);
+		mix("" + stmt.argList.size());
+		for (Expression e: stmt.argList) {
+			e.visit(this, null);
+		}
+		return null;
+	}
+
+	public Object visitReturnStmt(ReturnStmt stmt, Object arg) {
+		mix(stmt);
+		visitOptional(stmt.returnExpr);
+		return null;
+	}
+
+	public Object visitIfStmt(IfStmt stmt, Object arg) {
+		mix(stmt);
+		stmt.cond.visit(this, null);
+		stmt.thenStmt.visit(this, null);
+		visitOptional(stmt.elseStmt);
+		return null;
+	}
+
+	public Object visitWhileStmt(WhileStmt stmt, Object arg) {
+		mix(stmt);
+		stmt.cond.visit(this, null);
+		stmt.body.visit(this, null);
+		return null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// EXPRESSIONS
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitUnaryExpr(UnaryExpr expr, Object arg) {
+		mix(expr);
+		expr.operator.visit(this, null);
+		expr.expr.visit(this, null);
+		return null;
+	}
+
+	public Object visitBinaryExpr(BinaryExpr expr, Object arg) {
+		mix(expr);
+		expr.operator.visit(this, null);
+		expr.left.visit(this, null);
+		expr.right.visit(this, null);
+		return null;
+	}
+
+	public Object visitRefExpr(RefExpr expr, Object arg) {
+		mix(expr);
+		expr.ref.visit(this, null);
+		return null;
+	}
+
+	public Object visitIxExpr(IxExpr expr, Object arg) {
+		mix(expr);
+		expr.ref.visit(this, null);
+		expr.ixExpr.visit(this, null);
+		return null;
+	}
+
+	public Object visitCallExpr(CallExpr expr, Object arg) {
+		mix(expr);
+		expr.functionRef.visit(this, null);
+		mix("" + expr.argList.size());
+		for (Expression e: expr.argList) {
+			e.visit(this, null);
+		}
+		return null;
+	}
+
+	public Object visitLiteralExpr(LiteralExpr expr, Object arg) {
+		mix(expr);
+		expr.lit.visit(this, null);
+		return null;
+	}
+
+	public Object visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+		mix(expr);
+		expr.classtype.visit(this, null);
+		return null;
+	}
+
+	public Object visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		mix(expr);
+		expr.eltType.visit(this, null);
+		expr.sizeExpr.visit(this, null);
+		return null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// REFERENCES
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitThisRef(ThisRef ref, Object arg) {
+		mix(ref);
+		return null;
+	}
+
+	public Object visitIdRef(IdRef ref, Object arg) {
+		mix(ref);
+		ref.id.visit(this, null);
+		return null;
+	}
+
+	public Object visitQRef(QualRef ref, Object arg) {
+		mix(ref);
+		ref.ref.visit(this, null);
+		ref.id.visit(this, null);
+		return null;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// TERMINALS
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	public Object visitIdentifier(Identifier id, Object arg) {
+		mix(id);
+		mix(id.spelling);
+		names.add(id.spelling);
+		return null;
+	}
+
+	public Object visitOperator(Operator op, Object arg) {
+		mix(op);
+		mix(op.spelling);
+		return null;
+	}
+
+	public Object visitIntLiteral(IntLiteral num, Object arg) {
+		mix(num);
+		mix(num.spelling);
+		return null;
+	}
+
+	public Object visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+		mix(bool);
+		mix(bool.spelling);
+		return null;
+	}
+
+	public Object visitNullLiteral(NullLiteral nul, Object arg) {
+		mix(nul);
+		return null;
+	}
+}
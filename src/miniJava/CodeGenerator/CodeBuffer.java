@@ -0,0 +1,65 @@
+package miniJava.CodeGenerator;
+
+import mJAM.Machine;
+
+/**
+ *  The code of one method, generated apart from the code store, so that
+ *  methods can be generated concurrently.  Addresses in it are relative to
+ *  the start of the method: its jumps are to such addresses, and its calls
+ *  are patched once every method has its place.  place() appends the code
+ *  to the code store, moving its jumps to where it lands.
+ */
+class CodeBuffer {
+
+	// instructions packed as in Machine.code
+	private int[] code = new int[64 * Machine.instrSize];
+	private int count;
+
+	void emit(int op, int n, int r, int d) {
+		code = Machine.emit(code, count, op, n, r, d);
+		count++;
+	}
+
+	int nextInstrAddr() {
+		return count;
+	}
+
+	void patch(int addr, int displacement) {
+		Machine.patch(code, count, addr, displacement);
+	}
+
+	/**
+	 * Append the code to the code store
+	 * @return the address it starts at
+	 */
+	int place() {
+		return place(code, count * Machine.instrSize);
+	}
+
+	/**
+	 * Append the first length words of code, whose addresses are relative to
+	 * its start, to the code store
+	 * @return the address it starts at
+	 */
+	static int place(int[] code, int length) {
+		int start = Machine.nextInstrAddr();
+		for (int i = 0; i < length; i += Machine.instrSize) {
+			int d = code[i + Machine.dField];
+			if (isJump(code, i)) {
+				d += start;
+			}
+			Machine.emit(Machine.intToOp[code[i + Machine.opField]], code[i + Machine.nField], code[i + Machine.rField], d);
+		}
+		return start;
+	}
+
+	/**
+	 * @return true if the instruction at index i of code jumps to an address
+	 *         in the code segment
+	 */
+	static boolean isJump(int[] code, int i) {
+		int op = code[i + Machine.opField];
+		return (op == Machine.Op.JUMP.ordinal() || op == Machine.Op.JUMPIF.ordinal())
+				&& code[i + Machine.rField] == Machine.Reg.CB.ordinal();
+	}
+}
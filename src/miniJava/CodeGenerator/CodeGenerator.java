@@ -1,7 +1,12 @@
 package miniJava.CodeGenerator;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import mJAM.Disassembler;
 import mJAM.Interpreter;
@@ -24,13 +29,51 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	int localOffset;
 	int currentLocalVarCount;
 	ArrayList<MethodPatchInfo> methodsToPatch;
+	CompilationCache cache;
+	ForkJoinPool pool;
+	// where the code of a method generated apart goes, else the code store
+	CodeBuffer buffer;
 	
 	public CodeGenerator(ErrorReporter reporter) {
 		this.reporter = reporter;
 		methodsToPatch = new ArrayList<MethodPatchInfo>(); // patch all after traversal
 	}
 	
+	/**
+	 * Reuse the code cache keeps of unchanged methods, and keep in it the code
+	 * generated for the others
+	 */
+	public void setCache(CompilationCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * Generate the methods concurrently on pool, each into a code buffer of
+	 * its own, and link them in order into the same code as one at a time
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
 	public void beginCodeGen(AST ast, String inputFileName) {
+		generate(ast);
+		
+		String objectCodeFileName = inputFileName.replace(".java", ".mJAM");
+		ObjectFile objF = new ObjectFile(objectCodeFileName);
+		System.out.print("Writing object code file " + objectCodeFileName + " ... ");
+		if (objF.write()) {
+			System.out.println("FAILED!");
+			return;
+		}
+		else
+			System.out.println("SUCCEEDED");	
+		
+	}
+	
+	/**
+	 * Generate the code of ast into the code store, without writing it out
+	 */
+	public void generate(AST ast) {
 		Machine.initCodeGen();
 		// static seg space
 		staticSegTopAddr = Machine.nextInstrAddr();
@@ -43,18 +86,18 @@ public class CodeGenerator implements Visitor<Object, Object> {
 		Machine.emit(Op.CALL,Reg.CB, 0);     // static call main (address to be patched)
 		Machine.emit(Op.HALT,0,0,0);         // end execution
 		
-		ast.visit(this, null);
-		
-		String objectCodeFileName = inputFileName.replace(".java", ".mJAM");
-		ObjectFile objF = new ObjectFile(objectCodeFileName);
-		System.out.print("Writing object code file " + objectCodeFileName + " ... ");
-		if (objF.write()) {
-			System.out.println("FAILED!");
-			return;
+		try {
+			ast.visit(this, null);
+		} catch (CodeGenerationError e) {
+			System.exit(4);
 		}
-		else
-			System.out.println("SUCCEEDED");	
-		
+	}
+	
+	/**
+	 * Raised once an error that ends code generation has been reported
+	 */
+	static class CodeGenerationError extends Error {
+		private static final long serialVersionUID = 1L;
 	}
 	@Override
 	public Object visitPackage(Package prog, Object arg) {
@@ -148,8 +191,12 @@ public class CodeGenerator implements Visitor<Object, Object> {
 		}
 		
 		// regular traversal
-		for (ClassDecl cd: prog.classDeclList) {
-			cd.visit(this, null);
+		if (pool == null) {
+			for (ClassDecl cd: prog.classDeclList) {
+				cd.visit(this, null);
+			}
+		} else {
+			generateMethods(prog);
 		}
 		
 		// patch method addresses
@@ -160,6 +207,122 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	return null;
 	}
 
+	/**
+	 * Generate the methods of prog on pool, each by a generator of its own into
+	 * a buffer whose addresses start at 0, then place the buffers one after
+	 * another, as the methods would have been generated, and add the patches
+	 * of their calls, moved to where they landed, to the others.  The messages
+	 * of each method are reported in method order, up to the first method
+	 * whose generation failed, as they would be one method at a time
+	 */
+	private void generateMethods(Package prog) {
+		List<CodeGenerator> methodGenerators = new ArrayList<CodeGenerator>();
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (ClassDecl cd: prog.classDeclList) {
+			for (final MethodDecl md: cd.methodDeclList) {
+				if (cache != null && cache.reusedCode(md) != null) {
+					methodGenerators.add(null);
+					continue;
+				}
+				final CodeGenerator methodGenerator = new CodeGenerator(ErrorReporter.buffered());
+				methodGenerator.buffer = new CodeBuffer();
+				methodGenerators.add(methodGenerator);
+				tasks.add(new Callable<Boolean>() {
+					public Boolean call() {
+						try {
+							md.visit(methodGenerator, null);
+							return true;
+						} catch (CodeGenerationError e) {
+							return false;
+						}
+					}
+				});
+			}
+		}
+		try {
+			List<Future<Boolean>> results = pool.invokeAll(tasks);
+			int k = 0;
+			for (CodeGenerator methodGenerator: methodGenerators) {
+				if (methodGenerator == null) {
+					continue;
+				}
+				methodGenerator.reporter.reportTo(reporter);
+				if (!results.get(k++).get()) {
+					System.exit(4);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reporter.reportError("*** Code generation interrupted");
+			System.exit(4);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		
+		int k = 0;
+		for (ClassDecl cd: prog.classDeclList) {
+			for (MethodDecl md: cd.methodDeclList) {
+				CodeGenerator methodGenerator = methodGenerators.get(k++);
+				if (methodGenerator == null) {
+					md.red = new RuntimeEntityDescription(Machine.nextInstrAddr());
+					relink(cache.reusedCode(md));
+					continue;
+				}
+				int start = methodGenerator.buffer.place();
+				md.red = new RuntimeEntityDescription(start);
+				int firstCall = methodsToPatch.size();
+				for (MethodPatchInfo call: methodGenerator.methodsToPatch) {
+					methodsToPatch.add(new MethodPatchInfo(call.method, start + call.addr));
+				}
+				if (cache != null) {
+					cache.keep(md, start, methodsToPatch.subList(firstCall, methodsToPatch.size()));
+				}
+			}
+		}
+	}
+	
+	// emit into the buffer, if any, as Machine.emit
+	
+	private void emit(Op op, int d) {
+		emit(op.ordinal(), 0, 0, d);
+	}
+	
+	private void emit(Prim d) {
+		emit(Op.CALL.ordinal(), 0, Reg.PB.ordinal(), d.ordinal());
+	}
+	
+	private void emit(Op op, Reg r, int d) {
+		emit(op.ordinal(), 0, r.ordinal(), d);
+	}
+	
+	private void emit(Op op, int n, Reg r, int d) {
+		emit(op.ordinal(), n, r.ordinal(), d);
+	}
+	
+	private void emit(Op op, int n, int r, int d) {
+		emit(op.ordinal(), n, r, d);
+	}
+	
+	private void emit(int op, int n, int r, int d) {
+		if (buffer == null) {
+			Machine.emit(Machine.intToOp[op], n, r, d);
+		} else {
+			buffer.emit(op, n, r, d);
+		}
+	}
+	
+	private int nextInstrAddr() {
+		return buffer == null ? Machine.nextInstrAddr() : buffer.nextInstrAddr();
+	}
+	
+	private void patch(int addr, int displacement) {
+		if (buffer == null) {
+			Machine.patch(addr, displacement);
+		} else {
+			buffer.patch(addr, displacement);
+		}
+	}
+	
 	@Override
 	public Object visitClassDecl(ClassDecl cd, Object arg) {
 		for (FieldDecl fd: cd.fieldDeclList) {
@@ -189,12 +352,33 @@ public class CodeGenerator implements Visitor<Object, Object> {
 			paraOffsetLB++;
 		}
 		// method location in code segment
-		md.red = new RuntimeEntityDescription(Machine.nextInstrAddr());
+		int start = nextInstrAddr();
+		md.red = new RuntimeEntityDescription(start);
+		CompilationCache.MethodCode reused = cache == null ? null : cache.reusedCode(md);
+		if (reused != null) {
+			relink(reused);
+			return null;
+		}
+		int firstCall = methodsToPatch.size();
 		for (Statement stmt: md.statementList) {
 			stmt.visit(this, null);
 		}
+		if (cache != null) {
+			cache.keep(md, start, methodsToPatch.subList(firstCall, methodsToPatch.size()));
+		}
 		return null;
 	}
+	
+	/**
+	 * Place the code of a method kept from a previous compile at the next
+	 * instruction, patching its calls with the others after traversal
+	 */
+	private void relink(CompilationCache.MethodCode method) {
+		int start = CodeBuffer.place(method.code, method.code.length);
+		for (int i = 0; i < method.calls.length; i++) {
+			methodsToPatch.add(new MethodPatchInfo(cache.method(method.callees[i]), start + method.calls[i]));
+		}
+	}
 
 	@Override
 	public Object visitParameterDecl(ParameterDecl pd, Object arg) {
@@ -235,7 +419,7 @@ public class CodeGenerator implements Visitor<Object, Object> {
 		}
 		if (currentLocalVarCount > 0) {
 			localOffset = localOffset - currentLocalVarCount;
-			Machine.emit(Op.POP, currentLocalVarCount);
+			emit(Op.POP, currentLocalVarCount);
 		}
 		return null;
 	}
@@ -252,21 +436,21 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	public Object visitAssignStmt(AssignStmt stmt, Object arg) {
 		if (stmt.ref.decl instanceof FieldDecl && ((FieldDecl)stmt.ref.decl).isStatic) {
 			stmt.val.visit(this, null);
-			Machine.emit(Op.STORE, Machine.Reg.SB, stmt.ref.decl.red.offsetSize);
+			emit(Op.STORE, Machine.Reg.SB, stmt.ref.decl.red.offsetSize);
 		} else if (stmt.ref instanceof IdRef) {
 			if (((IdRef)stmt.ref).decl instanceof FieldDecl) {
-				Machine.emit(Op.LOADA, Machine.Reg.OB, 0);
-				Machine.emit(Op.LOADL, ((IdRef)stmt.ref).id.decl.red.offsetSize);
+				emit(Op.LOADA, Machine.Reg.OB, 0);
+				emit(Op.LOADL, ((IdRef)stmt.ref).id.decl.red.offsetSize);
 				stmt.val.visit(this, null);
-				Machine.emit(Prim.fieldupd);
+				emit(Prim.fieldupd);
 			} else {
 				stmt.val.visit(this, null);
 				if (stmt.ref.decl instanceof FieldDecl) {
 					if (((FieldDecl)stmt.ref.decl).isStatic) {
-						Machine.emit(Op.STORE, Machine.Reg.SB, ((IdRef)stmt.ref).id.decl.red.offsetSize);
+						emit(Op.STORE, Machine.Reg.SB, ((IdRef)stmt.ref).id.decl.red.offsetSize);
 					}
 				} else {
-					Machine.emit(Op.STORE, Machine.Reg.LB, ((IdRef)stmt.ref).id.decl.red.offsetSize);
+					emit(Op.STORE, Machine.Reg.LB, ((IdRef)stmt.ref).id.decl.red.offsetSize);
 				}
 			}
 		} else if (stmt.ref instanceof QualRef) {
@@ -282,14 +466,14 @@ public class CodeGenerator implements Visitor<Object, Object> {
 				int fieldOffSetsSize = fieldOffSets.size();
 				for (int i = 0; i < fieldOffSetsSize; i++) {
 					int offSet = fieldOffSets.pop();
-					Machine.emit(Op.LOADL, offSet);
+					emit(Op.LOADL, offSet);
 					if (i < fieldOffSetsSize-1) {
-						Machine.emit(Prim.fieldref);
+						emit(Prim.fieldref);
 					}
 				}
 			}
 			stmt.val.visit(this, null);
-			Machine.emit(Prim.fieldupd);
+			emit(Prim.fieldupd);
 		}
 		return null;
 	}
@@ -299,7 +483,7 @@ public class CodeGenerator implements Visitor<Object, Object> {
 		stmt.ref.visit(this, null);
 		stmt.ix.visit(this, null);
 		stmt.exp.visit(this, null);
-		Machine.emit(Prim.arrayupd);
+		emit(Prim.arrayupd);
 		return null;
 	}
 
@@ -309,26 +493,12 @@ public class CodeGenerator implements Visitor<Object, Object> {
 			e.visit(this, null);
 		}
 		if (stmt.methodRef.decl instanceof MethodDecl && ((MethodDecl)stmt.methodRef.decl).name.equals("println")) {
-			Machine.emit(Prim.putintnl);
+			emit(Prim.putintnl);
 		} else {
-			int callAddr = Machine.nextInstrAddr();
-			if (!((MethodDecl)stmt.methodRef.decl).isStatic) {
-				stmt.methodRef.visit(this, null);
-				if (stmt.methodRef instanceof QualRef) {
-					((QualRef)stmt.methodRef).ref.visit(this, null);
-				} else {
-					visitThisRef((ThisRef)stmt.methodRef, null);
-				}
-				callAddr = Machine.nextInstrAddr();
-				Machine.emit(Op.CALLI, Machine.Reg.CB, 0);
-				methodsToPatch.add(new MethodPatchInfo(((MethodDecl)stmt.methodRef.decl), callAddr));
-			} else {
-				Machine.emit(Op.CALL, Machine.Reg.CB, 0);
-				methodsToPatch.add(new MethodPatchInfo(((MethodDecl)stmt.methodRef.decl), callAddr));
-			}
+			emitCall(stmt.methodRef);
 		}
 		if (stmt.methodRef.decl.type.typeKind != TypeKind.VOID) {
-			Machine.emit(Op.POP, 1);
+			emit(Op.POP, 1);
 		}
 		return null;
 	}
@@ -337,9 +507,9 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	public Object visitReturnStmt(ReturnStmt stmt, Object arg) {
 		if (stmt.returnExpr != null) {
 			stmt.returnExpr.visit(this, null);
-			Machine.emit(Op.RETURN, 1, 0, currentParaCount);
+			emit(Op.RETURN, 1, 0, currentParaCount);
 		} else {
-			Machine.emit(Op.RETURN, 0, 0, currentParaCount);
+			emit(Op.RETURN, 0, 0, currentParaCount);
 		}
 		
 		return null;
@@ -348,35 +518,35 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	@Override
 	public Object visitIfStmt(IfStmt stmt, Object arg) {
 		stmt.cond.visit(this, null);
-		int addrJump1 = Machine.nextInstrAddr();
-		Machine.emit(Op.JUMPIF, 0, Machine.Reg.CB, 0);
+		int addrJump1 = nextInstrAddr();
+		emit(Op.JUMPIF, 0, Machine.Reg.CB, 0);
 		stmt.thenStmt.visit(this, null);
-		int addrJump2 = Machine.nextInstrAddr();
-		Machine.emit(Op.JUMP, 0, Machine.Reg.CB, 0);
-		Machine.patch(addrJump1, Machine.nextInstrAddr());
+		int addrJump2 = nextInstrAddr();
+		emit(Op.JUMP, 0, Machine.Reg.CB, 0);
+		patch(addrJump1, nextInstrAddr());
 		if (stmt.elseStmt != null) {
 			stmt.elseStmt.visit(this, null);
 		}
-		Machine.patch(addrJump2, Machine.nextInstrAddr());
+		patch(addrJump2, nextInstrAddr());
 		return null;
 	}
 
 	@Override
 	public Object visitWhileStmt(WhileStmt stmt, Object arg) {
-		int addrJump1 = Machine.nextInstrAddr();
-		Machine.emit(Op.JUMP, 0, Machine.Reg.CB, 0);
+		int addrJump1 = nextInstrAddr();
+		emit(Op.JUMP, 0, Machine.Reg.CB, 0);
 		stmt.body.visit(this, null);
-		int addrJump2 = Machine.nextInstrAddr();
+		int addrJump2 = nextInstrAddr();
 		stmt.cond.visit(this, null);
-		Machine.emit(Op.JUMPIF, 1, Machine.Reg.CB, addrJump1+1);
-		Machine.patch(addrJump1, addrJump2);
+		emit(Op.JUMPIF, 1, Machine.Reg.CB, addrJump1+1);
+		patch(addrJump1, addrJump2);
 		return null;
 	}
 
 	@Override
 	public Object visitUnaryExpr(UnaryExpr expr, Object arg) {
 		if (expr.operator.kind == TokenKind.MINUS) {
-			Machine.emit(Op.LOADL, 0);
+			emit(Op.LOADL, 0);
 		}
 		expr.expr.visit(this, null);
 		expr.operator.visit(this, null);
@@ -389,21 +559,21 @@ public class CodeGenerator implements Visitor<Object, Object> {
 		switch (expr.operator.kind) {
 		case OR:
 			expr.left.visit(this, null);
-			Machine.emit(Op.LOAD, Machine.Reg.ST, -1);
-			skipCondition = Machine.nextInstrAddr();
-			Machine.emit(Op.JUMPIF, 1, Machine.Reg.CB, 0);
+			emit(Op.LOAD, Machine.Reg.ST, -1);
+			skipCondition = nextInstrAddr();
+			emit(Op.JUMPIF, 1, Machine.Reg.CB, 0);
 			expr.right.visit(this, null);
 			expr.operator.visit(this, null);
-			Machine.patch(skipCondition, Machine.nextInstrAddr());
+			patch(skipCondition, nextInstrAddr());
 			break;
 		case AND:
 			expr.left.visit(this, null);
-			Machine.emit(Op.LOAD, Machine.Reg.ST, -1);
-			skipCondition = Machine.nextInstrAddr();
-			Machine.emit(Op.JUMPIF, 0, Machine.Reg.CB, 0);
+			emit(Op.LOAD, Machine.Reg.ST, -1);
+			skipCondition = nextInstrAddr();
+			emit(Op.JUMPIF, 0, Machine.Reg.CB, 0);
 			expr.right.visit(this, null);
 			expr.operator.visit(this, null);
-			Machine.patch(skipCondition, Machine.nextInstrAddr());
+			patch(skipCondition, nextInstrAddr());
 			break;
 		default:
 			expr.left.visit(this, null);
@@ -416,9 +586,9 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	@Override
 	public Object visitRefExpr(RefExpr expr, Object arg) {
 		if (expr.ref.decl instanceof FieldDecl && ((FieldDecl)expr.ref.decl).isStatic) {
-			Machine.emit(Op.LOAD, Machine.Reg.SB, expr.ref.decl.red.offsetSize);
+			emit(Op.LOAD, Machine.Reg.SB, expr.ref.decl.red.offsetSize);
 		} else if (expr.ref instanceof ThisRef) {
-			Machine.emit(Op.LOADA, Machine.Reg.OB, 0);
+			emit(Op.LOADA, Machine.Reg.OB, 0);
 		} else if (expr.ref instanceof IdRef || expr.ref instanceof QualRef) {
 			expr.ref.visit(this, null);
 		}
@@ -429,7 +599,7 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	public Object visitIxExpr(IxExpr expr, Object arg) {
 		expr.ref.visit(this, null);
 		expr.ixExpr.visit(this, null);
-		Machine.emit(Prim.arrayref);
+		emit(Prim.arrayref);
 		return null;
 	}
 
@@ -439,23 +609,27 @@ public class CodeGenerator implements Visitor<Object, Object> {
 			e.visit(this, null);
 		}
 		if (expr.functionRef.decl instanceof MethodDecl && !((MethodDecl)expr.functionRef.decl).name.equals("println")) {
-			expr.functionRef.visit(this, null);
-			int callAddr = Machine.nextInstrAddr();
-			if (!((MethodDecl)expr.functionRef.decl).isStatic) {
-				if (expr.functionRef instanceof QualRef) {
-					((QualRef)expr.functionRef).visit(this, null);
-				} else {
-					Machine.emit(Op.LOADA, Machine.Reg.OB, 0);
-				}
-				callAddr = Machine.nextInstrAddr();
-				Machine.emit(Op.CALLI, Machine.Reg.OB, 0);
-				methodsToPatch.add(new MethodPatchInfo((MethodDecl)expr.functionRef.decl, callAddr));
+			emitCall(expr.functionRef);
+		}
+		return null;
+	}
+	
+	/**
+	 * Call the method of methodRef, whose arguments are on the stack, pushing
+	 * the instance first for an instance method
+	 */
+	private void emitCall(Reference methodRef) {
+		MethodDecl md = (MethodDecl)methodRef.decl;
+		if (!md.isStatic) {
+			if (methodRef instanceof QualRef) {
+				((QualRef)methodRef).ref.visit(this, null);
 			} else {
-				Machine.emit(Op.CALL, Machine.Reg.CB, 0);
-				methodsToPatch.add(new MethodPatchInfo((MethodDecl)expr.functionRef.decl, callAddr));
+				emit(Op.LOADA, Machine.Reg.OB, 0);
 			}
 		}
-		return null;
+		int callAddr = nextInstrAddr();
+		emit(md.isStatic ? Op.CALL : Op.CALLI, Machine.Reg.CB, 0);
+		methodsToPatch.add(new MethodPatchInfo(md, callAddr));
 	}
 
 	@Override
@@ -466,22 +640,22 @@ public class CodeGenerator implements Visitor<Object, Object> {
 
 	@Override
 	public Object visitNewObjectExpr(NewObjectExpr expr, Object arg) {
-		Machine.emit(Op.LOADL, -1);
-		Machine.emit(Op.LOADL, expr.classtype.className.decl.red.offsetSize);
-		Machine.emit(Prim.newobj);
+		emit(Op.LOADL, -1);
+		emit(Op.LOADL, expr.classtype.className.decl.red.offsetSize);
+		emit(Prim.newobj);
 		return null;
 	}
 
 	@Override
 	public Object visitNewArrayExpr(NewArrayExpr expr, Object arg) {
 		expr.sizeExpr.visit(this, null);
-		Machine.emit(Prim.newarr);
+		emit(Prim.newarr);
 		return null;
 	}
 
 	@Override
 	public Object visitThisRef(ThisRef ref, Object arg) {
-		Machine.emit(Op.LOAD, Machine.Reg.OB, 0);
+		emit(Op.LOAD, Machine.Reg.OB, 0);
 		return null;
 	}
 
@@ -489,16 +663,13 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	public Object visitIdRef(IdRef ref, Object arg) {
 		if (ref.decl instanceof FieldDecl) { 
 			if (((FieldDecl)ref.decl).isStatic) {
-				Machine.emit(Op.LOAD, Machine.Reg.SB, ref.id.decl.red.offsetSize);
+				emit(Op.LOAD, Machine.Reg.SB, ref.id.decl.red.offsetSize);
 			} else {
-				Machine.emit(Op.LOAD, Machine.Reg.OB, ref.id.decl.red.offsetSize);
-			}
-		} else if (ref.id.decl.red != null) {
-			if (ref.id.decl instanceof MethodDecl && ((MethodDecl)ref.id.decl).isStatic) {
-				Machine.emit(Op.LOAD, Machine.Reg.SB, ref.id.decl.red.offsetSize);
-			} else if (!(ref.id.decl instanceof MethodDecl)) {
-				Machine.emit(Op.LOAD, Machine.Reg.LB, ref.id.decl.red.offsetSize);
+				emit(Op.LOAD, Machine.Reg.OB, ref.id.decl.red.offsetSize);
 			}
+		} else if (ref.id.decl.red != null && !(ref.id.decl instanceof MethodDecl)) {
+			// a method is called by visitCallExpr, with nothing to load here
+			emit(Op.LOAD, Machine.Reg.LB, ref.id.decl.red.offsetSize);
 		}
 		return null;
 	}
@@ -509,18 +680,18 @@ public class CodeGenerator implements Visitor<Object, Object> {
 			IdRef qPort = ((IdRef)ref.ref);
 			if (qPort.decl instanceof FieldDecl) { 
 				if (((FieldDecl)qPort.decl).isStatic) {
-					Machine.emit(Op.LOAD, Machine.Reg.SB, qPort.id.decl.red.offsetSize);
+					emit(Op.LOAD, Machine.Reg.SB, qPort.id.decl.red.offsetSize);
 				} else {
-					Machine.emit(Op.LOAD, Machine.Reg.OB, qPort.id.decl.red.offsetSize);
+					emit(Op.LOAD, Machine.Reg.OB, qPort.id.decl.red.offsetSize);
 				}
 			} else if (qPort.id.decl.red != null) {
 				if (qPort.id.decl instanceof MethodDecl && ((MethodDecl)qPort.id.decl).isStatic) {
-					Machine.emit(Op.LOAD, Machine.Reg.SB, qPort.id.decl.red.offsetSize);
+					emit(Op.LOAD, Machine.Reg.SB, qPort.id.decl.red.offsetSize);
 				} else if (!(qPort.id.decl instanceof MethodDecl)) {
-					Machine.emit(Op.LOAD, Machine.Reg.LB, qPort.id.decl.red.offsetSize);
+					emit(Op.LOAD, Machine.Reg.LB, qPort.id.decl.red.offsetSize);
 				}
 			}
-			Machine.emit(Prim.arraylen);
+			emit(Prim.arraylen);
 		} else if (ref.id.decl.red != null) {
 			Stack<Integer> fieldOffSets = new Stack<Integer>();
 			if (ref.id.decl.red != null) {
@@ -533,13 +704,13 @@ public class CodeGenerator implements Visitor<Object, Object> {
 				int fieldOffSetsSize = fieldOffSets.size();
 				for (int i = 0; i < fieldOffSetsSize; i++) {
 					int offSet = fieldOffSets.pop();
-					Machine.emit(Op.LOADL, offSet);
+					emit(Op.LOADL, offSet);
 					if (i < fieldOffSetsSize-1) {
-						Machine.emit(Prim.fieldref);
+						emit(Prim.fieldref);
 					}
 				}
 			}
-			Machine.emit(Prim.fieldref);
+			emit(Prim.fieldref);
 		}
 		return null;
 	}
@@ -553,70 +724,70 @@ public class CodeGenerator implements Visitor<Object, Object> {
 	public Object visitOperator(Operator op, Object arg) {
 		switch (op.kind) {
 		case OR:
-			Machine.emit(Prim.or);
+			emit(Prim.or);
 			break;
 		case AND:
-			Machine.emit(Prim.and);
+			emit(Prim.and);
 			break;
 		case EQUAL:
-			Machine.emit(Prim.eq);
+			emit(Prim.eq);
 			break;
 		case NOTEQUAL:
-			Machine.emit(Prim.ne);
+			emit(Prim.ne);
 			break;
 		case LESSEQUAL:
-			Machine.emit(Prim.le);
+			emit(Prim.le);
 			break;
 		case LESS:
-			Machine.emit(Prim.lt);
+			emit(Prim.lt);
 			break;
 		case GREATEREQUAL:
-			Machine.emit(Prim.ge);
+			emit(Prim.ge);
 			break;
 		case GREATER:
-			Machine.emit(Prim.gt);
+			emit(Prim.gt);
 			break;
 		case PLUS:
-			Machine.emit(Prim.add);
+			emit(Prim.add);
 			break;
 		case MINUS:
-			Machine.emit(Prim.sub);
+			emit(Prim.sub);
 			break;
 		case TIMES:
-			Machine.emit(Prim.mult);
+			emit(Prim.mult);
 			break;
 		case DIVIDE:
-			Machine.emit(Prim.div);
+			emit(Prim.div);
 			break;
 		case NOT:
-			Machine.emit(Prim.not);
+			emit(Prim.not);
 			break;
 		default:
 			reporter.reportError("*** Failed to identify an operator in code generation");
-			System.exit(4);
+			throw new CodeGenerationError();
 		}
 		return null;
 	}
 
 	@Override
 	public Object visitIntLiteral(IntLiteral num, Object arg) {
-		Machine.emit(Op.LOADL, Integer.parseInt(num.spelling));
+		emit(Op.LOADL, Integer.parseInt(num.spelling));
 		return null;
 	}
 
 	@Override
 	public Object visitBooleanLiteral(BooleanLiteral bool, Object arg) {
 		if (bool.spelling.equals("false")) {
-			Machine.emit(Op.LOADL, Machine.falseRep);
+			emit(Op.LOADL, Machine.falseRep);
 		} else {
-			Machine.emit(Op.LOADL, Machine.trueRep);
+			emit(Op.LOADL, Machine.trueRep);
 		}
 		return null;
 	}
 
 	@Override
 	public Object visitNullLiteral(NullLiteral nul, Object arg) {
-		Machine.emit(Op.LOADL, Machine.nullRep);
+		emit(Op.LOADL, Machine.nullRep);
 		return null;
 	}
 	
@@ -0,0 +1,290 @@
+package miniJava.CodeGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mJAM.Machine;
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+
+/**
+ *  What an incremental compile keeps of a program for the next compile of
+ *  it: the signature of every member, where every field lies and how large
+ *  every object is, and for every method a fingerprint of its declaration,
+ *  the names it refers to and its code.  The code of a method is kept
+ *  relative to its start, and its calls by the names of their callees, so
+ *  that it can be placed at any address and relinked through MethodPatchInfo.
+ *
+ *  A method is analysed and generated again when its fingerprint changed, or
+ *  when it refers to a name given to a member whose signature or place
+ *  changed, or that was added or removed.  The code of every other method is
+ *  reused as it was.  Adding, removing or reordering classes changes how
+ *  unqualified names may resolve, so then every method is compiled again.
+ */
+public class CompilationCache {
+
+	private final static int version = 1;
+
+	private List<String> classNames = new ArrayList<String>();
+	// signatures of members and layouts of classes, by Class.member and Class
+	private Map<String, String> signatures = new HashMap<String, String>();
+	private Map<String, MethodCode> methods = new HashMap<String, MethodCode>();
+
+	// the methods of the program cached, and their keys
+	private IdentityHashMap<MethodDecl, String> keys = new IdentityHashMap<MethodDecl, String>();
+	private Map<String, MethodDecl> methodDecls = new HashMap<String, MethodDecl>();
+	// methods whose code is reused
+	private Set<MethodDecl> reused = new HashSet<MethodDecl>();
+
+	static class MethodCode {
+		long fingerprint;
+		Set<String> names = new HashSet<String>();
+		// instructions relative to the method start, instrSize words apiece
+		int[] code = new int[0];
+		// instructions calling other methods, and the keys of the callees
+		int[] calls = new int[0];
+		String[] callees = new String[0];
+	}
+
+	private CompilationCache() {
+	}
+
+	/**
+	 * Fingerprint the classes and methods of prog
+	 */
+	public CompilationCache(Package prog) {
+		Fingerprint fingerprint = new Fingerprint();
+		int staticSegOffset = 0;
+		for (ClassDecl cd: prog.classDeclList) {
+			classNames.add(cd.name);
+			// laid out as CodeGenerator.visitPackage does
+			int instanceOffset = 3;
+			for (FieldDecl fd: cd.fieldDeclList) {
+				int offset = fd.isStatic ? staticSegOffset++ : instanceOffset++;
+				signatures.put(cd.name + "." + fd.name, modifiers(fd) + spelling(fd.type) + " @" + offset);
+			}
+			signatures.put(cd.name, "size " + instanceOffset);
+			for (MethodDecl md: cd.methodDeclList) {
+				String key = cd.name + "." + md.name;
+				StringBuilder signature = new StringBuilder(modifiers(md) + spelling(md.type) + "(");
+				for (ParameterDecl pd: md.parameterDeclList) {
+					signature.append(spelling(pd.type)).append(",");
+				}
+				signatures.put(key, signature.append(")").toString());
+				MethodCode method = new MethodCode();
+				method.fingerprint = fingerprint.of(md, method.names);
+				methods.put(key, method);
+				keys.put(md, key);
+				methodDecls.put(key, md);
+			}
+		}
+	}
+
+	private static String modifiers(MemberDecl md) {
+		return (md.isPrivate ? "private " : "") + (md.isStatic ? "static " : "");
+	}
+
+	private static String spelling(TypeDenoter type) {
+		if (type instanceof ClassType) {
+			return ((ClassType) type).className.spelling;
+		} else if (type instanceof ArrayType) {
+			return spelling(((ArrayType) type).eltType) + "[]";
+		}
+		return type.typeKind.name();
+	}
+
+	public int methodCount() {
+		return keys.size();
+	}
+
+	/**
+	 * Compare with the cache of the previous compile, if any, and take from it
+	 * the code of the methods that are unchanged
+	 * @return the methods to analyse and generate again
+	 */
+	public Set<MethodDecl> changedMethods(CompilationCache previous) {
+		Set<MethodDecl> changed = new LinkedHashSet<MethodDecl>();
+		if (previous == null || !previous.classNames.equals(classNames)) {
+			changed.addAll(methodDecls.values());
+			return changed;
+		}
+
+		// the names of members whose signature or layout changed
+		Set<String> changedNames = new HashSet<String>();
+		Set<String> members = new HashSet<String>(signatures.keySet());
+		members.addAll(previous.signatures.keySet());
+		for (String member: members) {
+			String signature = signatures.get(member);
+			if (signature == null || !signature.equals(previous.signatures.get(member))) {
+				changedNames.add(member.substring(member.indexOf('.') + 1));
+			}
+		}
+
+		for (Map.Entry<String, MethodDecl> e: methodDecls.entrySet()) {
+			MethodCode method = methods.get(e.getKey());
+			MethodCode old = previous.methods.get(e.getKey());
+			if (old != null && old.fingerprint == method.fingerprint && !refersTo(method, changedNames)) {
+				method.code = old.code;
+				method.calls = old.calls;
+				method.callees = old.callees;
+				reused.add(e.getValue());
+			} else {
+				changed.add(e.getValue());
+			}
+		}
+		return changed;
+	}
+
+	private static boolean refersTo(MethodCode method, Set<String> names) {
+		for (String name: names) {
+			if (method.names.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the code of md to reuse, or null if md is to be generated
+	 */
+	MethodCode reusedCode(MethodDecl md) {
+		return reused.contains(md) ? methods.get(keys.get(md)) : null;
+	}
+
+	MethodDecl method(String key) {
+		return methodDecls.get(key);
+	}
+
+	/**
+	 * Keep the code generated for md, from start up to the next instruction,
+	 * with calls, the patches of its calls
+	 */
+	void keep(MethodDecl md, int start, List<MethodPatchInfo> calls) {
+		MethodCode method = methods.get(keys.get(md));
+		int end = Machine.nextInstrAddr();
+		method.code = new int[(end - start) * Machine.instrSize];
+		System.arraycopy(Machine.code, start * Machine.instrSize, method.code, 0, method.code.length);
+		for (int i = 0; i < method.code.length; i += Machine.instrSize) {
+			if (CodeBuffer.isJump(method.code, i)) {
+				method.code[i + Machine.dField] -= start;
+			}
+		}
+		method.calls = new int[calls.size()];
+		method.callees = new String[calls.size()];
+		for (int i = 0; i < calls.size(); i++) {
+			method.calls[i] = calls.get(i).addr - start;
+			method.callees[i] = keys.get(calls.get(i).method);
+			method.code[method.calls[i] * Machine.instrSize + Machine.dField] = 0;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////
+	//
+	// FILE
+	//
+	///////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the cache in fileName, or null if there is none that can be read
+	 */
+	public static CompilationCache read(String fileName) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+			try {
+				if (in.readInt() != version) {
+					return null;
+				}
+				CompilationCache cache = new CompilationCache();
+				for (int n = in.readInt(); n > 0; n--) {
+					cache.classNames.add(in.readUTF());
+				}
+				for (int n = in.readInt(); n > 0; n--) {
+					cache.signatures.put(in.readUTF(), in.readUTF());
+				}
+				for (int n = in.readInt(); n > 0; n--) {
+					String key = in.readUTF();
+					MethodCode method = new MethodCode();
+					method.fingerprint = in.readLong();
+					for (int k = in.readInt(); k > 0; k--) {
+						method.names.add(in.readUTF());
+					}
+					method.code = new int[in.readInt()];
+					for (int i = 0; i < method.code.length; i++) {
+						method.code[i] = in.readInt();
+					}
+					method.calls = new int[in.readInt()];
+					method.callees = new String[method.calls.length];
+					for (int i = 0; i < method.calls.length; i++) {
+						method.calls[i] = in.readInt();
+						method.callees[i] = in.readUTF();
+					}
+					cache.methods.put(key, method);
+				}
+				return cache;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write the cache to fileName
+	 * @return true if write fails
+	 */
+	public boolean write(String fileName) {
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+			try {
+				out.writeInt(version);
+				out.writeInt(classNames.size());
+				for (String className: classNames) {
+					out.writeUTF(className);
+				}
+				out.writeInt(signatures.size());
+				for (Map.Entry<String, String> e: signatures.entrySet()) {
+					out.writeUTF(e.getKey());
+					out.writeUTF(e.getValue());
+				}
+				out.writeInt(methods.size());
+				for (Map.Entry<String, MethodCode> e: methods.entrySet()) {
+					MethodCode method = e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(method.fingerprint);
+					out.writeInt(method.names.size());
+					for (String name: method.names) {
+						out.writeUTF(name);
+					}
+					out.writeInt(method.code.length);
+					for (int word: method.code) {
+						out.writeInt(word);
+					}
+					out.writeInt(method.calls.length);
+					for (int i = 0; i < method.calls.length; i++) {
+						out.writeInt(method.calls[i]);
+						out.writeUTF(method.callees[i]);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+}
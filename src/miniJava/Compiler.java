@@ -1,38 +1,76 @@
 package miniJava;
 
-import java.io.FileInputStream; // may want filereader
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
 import miniJava.CodeGenerator.CodeGenerator;
+import miniJava.CodeGenerator.CompilationCache;
 import miniJava.ContextualAnalysis.Identification;
 import miniJava.ContextualAnalysis.TypeChecker;
 import miniJava.SyntacticAnalyzer.Parser;
-import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.SourceBuffer;
+import miniJava.SyntacticAnalyzer.TokenStream;
 
+/**
+ *  Compiler [-incremental] [-parallel] File.java
+ *
+ *  With -incremental, what is learnt of the program is kept in
+ *  File.mJAM.cache, and the next compile analyses and generates only the
+ *  methods changed since, and those that refer to changed members.
+ *  With -parallel, the classes are identified and type checked, and then
+ *  the methods generated, concurrently on the common fork-join pool.
+ */
 public class Compiler {
 
 	public static void main(String[] args) {
-		InputStream inputStream = null;
+		boolean incremental = false;
+		boolean parallel = false;
+		int arg = 0;
+		for (; arg < args.length - 1; arg++) {
+			if (args[arg].equals("-incremental")) {
+				incremental = true;
+			} else if (args[arg].equals("-parallel")) {
+				parallel = true;
+			} else {
+				break;
+			}
+		}
+		String fileName = args[arg];
+		SourceBuffer source = null;
 		try {
-			inputStream = new FileInputStream(args[0]);
-		} catch (FileNotFoundException e) {
-			System.out.println("Input file " + args[0] + " not found");
+			source = SourceBuffer.read(fileName);
+		} catch (IOException e) {
+			System.out.println("Input file " + fileName + " not found");
 			System.exit(3);
 		}
 		
 		ErrorReporter errorReporter = new ErrorReporter();
-		Scanner scanner = new Scanner(inputStream, errorReporter);
-		Parser parser = new Parser(scanner, errorReporter);
+		Parser parser = new Parser(TokenStream.lex(source), errorReporter);
 		Identification identifier = new Identification(errorReporter);
 		TypeChecker typeChecker = new TypeChecker(errorReporter);
 		CodeGenerator codeGenerator = new CodeGenerator(errorReporter);
 		
 		System.out.println("Syntactic analysis ... ");
 		AST ast = parser.parse();
-		identifier.beginIdentification(ast);
-		typeChecker.beginTypeChecking(ast);
+		
+		String cacheFileName = fileName.replace(".java", ".mJAM") + ".cache";
+		CompilationCache cache = null;
+		Set<MethodDecl> methods = null;
+		if (incremental && ast != null) {
+			cache = new CompilationCache((Package) ast);
+			methods = cache.changedMethods(CompilationCache.read(cacheFileName));
+			System.out.println("Compiling " + methods.size() + " of " + cache.methodCount() + " methods");
+		}
+		if (parallel && ast != null) {
+			identifier.beginIdentification(ast, methods, ForkJoinPool.commonPool());
+			typeChecker.beginTypeChecking(ast, methods, ForkJoinPool.commonPool());
+		} else {
+			identifier.beginIdentification(ast, methods);
+			typeChecker.beginTypeChecking(ast, methods);
+		}
 		
 		if (errorReporter.hasErrors()) {
 			//System.out.println("Invalid miniJava program");
@@ -41,7 +79,14 @@ public class Compiler {
 			//System.out.println("Valid miniJava program");
 			//ASTDisplay display = new ASTDisplay();
 			//display.showTree(ast);
-			codeGenerator.beginCodeGen(ast, args[0]);
+			codeGenerator.setCache(cache);
+			if (parallel) {
+				codeGenerator.setPool(ForkJoinPool.commonPool());
+			}
+			codeGenerator.beginCodeGen(ast, fileName);
+			if (cache != null && cache.write(cacheFileName)) {
+				System.out.println("Writing " + cacheFileName + " FAILED!");
+			}
 			System.exit(0);
 		}
 	}
@@ -1,6 +1,13 @@
 package miniJava.ContextualAnalysis;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import miniJava.ErrorReporter;
 import miniJava.AbstractSyntaxTrees.AST;
@@ -47,14 +54,87 @@ public class Identification implements Visitor<Object, Object> {
 	private String currentClassName = null;
 	public MethodDecl currentMethod = null;
 	public String varDeclName = null;
+	// the methods whose bodies are identified, or null for all
+	private Set<MethodDecl> methods = null;
 	
 	public Identification(ErrorReporter reporter) {
 		this.reporter = reporter;
 	}
 	
 	public void beginIdentification(AST ast) {
+		beginIdentification(ast, null);
+	}
+	
+	/**
+	 * Identify ast, but only the bodies of methods, if not null, as the
+	 * others are unchanged since they were last identified
+	 */
+	public void beginIdentification(AST ast, Set<MethodDecl> methods) {
+		this.methods = methods;
 		table = new IdentificationTable(reporter);
-		ast.visit(this, null);
+		try {
+			ast.visit(this, null);
+		} catch (IdentificationError e) {
+			System.exit(4);
+		}
+	}
+	
+	/**
+	 * Identify ast as above, but once its classes and members are entered,
+	 * identify each class on pool, with a scope stack of its own.  The
+	 * messages of each class are reported in class order, up to the first
+	 * class whose identification failed, as they would be one class at a time
+	 */
+	public void beginIdentification(AST ast, Set<MethodDecl> methods, ForkJoinPool pool) {
+		this.methods = methods;
+		table = new IdentificationTable(reporter);
+		Package prog = (Package) ast;
+		try {
+			enterMembers(prog);
+		} catch (IdentificationError e) {
+			System.exit(4);
+		}
+		
+		final List<Identification> classIdentifications = new ArrayList<Identification>();
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (final ClassDecl cd: prog.classDeclList) {
+			final Identification classIdentification = new Identification(ErrorReporter.buffered());
+			classIdentification.methods = methods;
+			classIdentification.table = new IdentificationTable(table, classIdentification.reporter);
+			classIdentifications.add(classIdentification);
+			tasks.add(new Callable<Boolean>() {
+				public Boolean call() {
+					try {
+						classIdentification.currentClassName = cd.name;
+						cd.visit(classIdentification, null);
+						return true;
+					} catch (IdentificationError e) {
+						return false;
+					}
+				}
+			});
+		}
+		try {
+			List<Future<Boolean>> results = pool.invokeAll(tasks);
+			for (int k = 0; k < tasks.size(); k++) {
+				classIdentifications.get(k).reporter.reportTo(reporter);
+				if (!results.get(k).get()) {
+					System.exit(4);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.exit(4);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Raised once an error that ends identification has been reported
+	 */
+	static class IdentificationError extends Error {
+		private static final long serialVersionUID = 1L;
 	}
 	
 	///////////////////////////////////////////////////////////////////////////////
@@ -65,8 +145,16 @@ public class Identification implements Visitor<Object, Object> {
 	
 	@Override
 	public Object visitPackage(Package prog, Object arg) {
-		
-		// initial pass for classes and members
+		enterMembers(prog);
+		for (ClassDecl cd: prog.classDeclList) {
+			currentClassName = cd.name;
+			cd.visit(this, null);
+		}
+		return null;
+	}
+	
+	// initial pass for classes and members
+	private void enterMembers(Package prog) {
 		for (ClassDecl cd: prog.classDeclList) {
 			if (table.retrieveClass(cd.name) == null) { // add fields/methods to table if class not already declared
 				table.classes.put(cd.name, cd);
@@ -74,7 +162,7 @@ public class Identification implements Visitor<Object, Object> {
 				for (FieldDecl fd: cd.fieldDeclList) { 
 					if (table.retrieveClassField(cd.name, fd.name) != null) {
 						reporter.reportError("*** line " + fd.posn.getLine() + ": " + "column " + fd.posn.getCol() + " " + fd.name + " member name previously declared");
-						System.exit(4);
+						throw new IdentificationError();
 					}
 					table.classFields.get(cd.name).put(fd.name, fd);
 				}
@@ -82,22 +170,15 @@ public class Identification implements Visitor<Object, Object> {
 				for (MethodDecl md: cd.methodDeclList) {
 					if (table.retrieveClassMethod(cd.name, md.name) != null) {
 						reporter.reportError("*** line " + md.posn.getLine() + ": " + "column " + md.posn.getCol() + " " + md.name + " member name previously declared");
-						System.exit(4);
+						throw new IdentificationError();
 					}
 					table.classMethods.get(cd.name).put(md.name, md);
 				}
 			} else { // class previously declared
 				reporter.reportError("*** line " + cd.posn.getLine() + ": " + "column " + cd.posn.getCol() + " " + cd.name + " class previously declared");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
-		
-		for (ClassDecl cd: prog.classDeclList) {
-			currentClassName = cd.name;
-			cd.visit(this, null);
-		}
-		
-		return null;
 	}
 
 	///////////////////////////////////////////////////////////////////////////////
@@ -112,14 +193,13 @@ public class Identification implements Visitor<Object, Object> {
 		table.enter(cd.name, cd);
 		table.openScope(); // SCOPE 2
 		for (FieldDecl fd: cd.fieldDeclList) { // look for field/method name collisions (already checked field/field and method/method collisions)
-			for (MethodDecl md: cd.methodDeclList) {
-				if (fd.name.equals(md.name) && fd.posn.getLine() > md.posn.getLine()) {
-					reporter.reportError("*** line " + fd.posn.getLine() + ": " + "column " + fd.posn.getCol() + " " + fd.name + " member name previously declared");
-					System.exit(4);
-				} else if (fd.name.equals(md.name) && fd.posn.getLine() < md.posn.getLine()) {
-					reporter.reportError("*** line " + md.posn.getLine() + ": " + "column " + md.posn.getCol() + " " + md.name + " member name previously declared");
-					System.exit(4);
-				}
+			Declaration md = table.retrieveClassMethod(cd.name, fd.name); // the one method of the name, if any
+			if (md != null && fd.posn.getLine() > md.posn.getLine()) {
+				reporter.reportError("*** line " + fd.posn.getLine() + ": " + "column " + fd.posn.getCol() + " " + fd.name + " member name previously declared");
+				throw new IdentificationError();
+			} else if (md != null && fd.posn.getLine() < md.posn.getLine()) {
+				reporter.reportError("*** line " + md.posn.getLine() + ": " + "column " + md.posn.getCol() + " " + md.name + " member name previously declared");
+				throw new IdentificationError();
 			}
 		}
 		for (FieldDecl fd: cd.fieldDeclList) {
@@ -127,7 +207,14 @@ public class Identification implements Visitor<Object, Object> {
 		}
 		for (MethodDecl md: cd.methodDeclList) {
 			currentMethod = md;
-			md.visit(this, null);
+			if (methods == null || methods.contains(md)) {
+				md.visit(this, null);
+			} else {
+				enterMethod(md);
+				for (ParameterDecl pd: md.parameterDeclList) {
+					pd.type.visit(this, null);
+				}
+			}
 			currentMethod = null;
 		}
 		table.closeScope(); // SCOPE 1
@@ -144,16 +231,7 @@ public class Identification implements Visitor<Object, Object> {
 
 	@Override
 	public Object visitMethodDecl(MethodDecl md, Object arg) {
-		if (md.type instanceof ClassType) { // check if return type class is declared
-			ClassType classReturnType = ((ClassType) md.type);
-			String classReturnTypeName = classReturnType.className.spelling;
-			Declaration classReturnTypeDecl = table.retrieveClass(classReturnTypeName);
-			if (classReturnTypeDecl == null) {	// no such declared class
-				reporter.reportError("*** line " + md.posn.getLine() + ": " + "column " + md.posn.getCol() + " " + md.name + " method return type not declared");
-				System.exit(4);
-			}
-		}
-		table.enter(md.name, md);
+		enterMethod(md);
 		table.openScope(); // SCOPE 3
 		for (ParameterDecl pd: md.parameterDeclList) {
 			pd.visit(this, null);
@@ -166,6 +244,20 @@ public class Identification implements Visitor<Object, Object> {
 		table.closeScope(); // SCOPE 2
 		return null;
 	}
+	
+	// check the return type of md and enter its name
+	private void enterMethod(MethodDecl md) {
+		if (md.type instanceof ClassType) { // check if return type class is declared
+			ClassType classReturnType = ((ClassType) md.type);
+			String classReturnTypeName = classReturnType.className.spelling;
+			Declaration classReturnTypeDecl = table.retrieveClass(classReturnTypeName);
+			if (classReturnTypeDecl == null) {	// no such declared class
+				reporter.reportError("*** line " + md.posn.getLine() + ": " + "column " + md.posn.getCol() + " " + md.name + " method return type not declared");
+				throw new IdentificationError();
+			}
+		}
+		table.enter(md.name, md);
+	}
 
 	@Override
 	public Object visitParameterDecl(ParameterDecl pd, Object arg) {
@@ -177,7 +269,7 @@ public class Identification implements Visitor<Object, Object> {
 			Declaration paraTypeDecl = table.retrieveClass(paraTypeName);
 			if (paraTypeDecl == null) {
 				reporter.reportError("*** line " + pd.posn.getLine() + ": " + "column " + pd.posn.getCol() + " parameter " + pd.name + "'s type has not declared");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		return null;
@@ -249,7 +341,7 @@ public class Identification implements Visitor<Object, Object> {
 				String identifierName = idRef.id.spelling;
 				if (table.getHighestScopeOccurence(identifierName) == 0 || table.getHighestScopeOccurence(identifierName) == 1) {
 					reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " cannot assign to class " + identifierName);
-					System.exit(4);
+					throw new IdentificationError();
 				}
 			}
 		}
@@ -268,7 +360,7 @@ public class Identification implements Visitor<Object, Object> {
 				String identifierName = idRef.id.spelling;
 				if (table.getHighestScopeOccurence(identifierName) == 0 || table.getHighestScopeOccurence(identifierName) == 1) {
 					reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " cannot assign to class " + identifierName);
-					System.exit(4);
+					throw new IdentificationError();
 				}
 			}
 		}
@@ -283,12 +375,12 @@ public class Identification implements Visitor<Object, Object> {
 		}
 		if (!(stmt.methodRef.decl instanceof MethodDecl)) {
 			reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " can only have call statement of method");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		MethodDecl methodCalled = ((MethodDecl) stmt.methodRef.decl);
 		if (currentMethod.isStatic && !methodCalled.isStatic && !(stmt.methodRef instanceof QualRef)) {
 			reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " static access context conflict between methods");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		if (stmt.methodRef instanceof QualRef) {
 			QualRef qualRef = ((QualRef)stmt.methodRef);
@@ -300,22 +392,22 @@ public class Identification implements Visitor<Object, Object> {
 					methodCalled = ((MethodDecl) table.retrieveClassMethod(idDecl.name, methodCalled.name));
 					if (methodCalled.isPrivate) {
 						reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " cannot call private method of " + idDecl.name);
-						System.exit(4);
+						throw new IdentificationError();
 					}
 				} else if (idDecl instanceof ClassDecl) {
 					if (table.retrieveClassMethod(idDecl.name, methodCalled.name) instanceof MethodDecl) {
 						methodCalled = ((MethodDecl)table.retrieveClassMethod(idDecl.name, methodCalled.name));
 						if (!methodCalled.isStatic) {
 							reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " method does not have static access");
-							System.exit(4);
+							throw new IdentificationError();
 						}
 						if (methodCalled.isPrivate) {
 							reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " cannot call private method of " + idDecl.name);
-							System.exit(4);
+							throw new IdentificationError();
 						}
 					} else {
 						reporter.reportError("*** line " + stmt.posn.getLine() + ": " + "column " + stmt.posn.getCol() + " method not found in " + idDecl.name);
-						System.exit(4);
+						throw new IdentificationError();
 					}
 				}
 			}
@@ -338,13 +430,13 @@ public class Identification implements Visitor<Object, Object> {
 		stmt.thenStmt.visit(this, null);
 		if (stmt.thenStmt instanceof VarDeclStmt) {
 			reporter.reportError("*** line " + stmt.thenStmt.posn.getLine() + ": " + "column " + stmt.thenStmt.posn.getCol() + " variable declaration cannot be the solitary statement in a branch of a conditional statement");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		if (stmt.elseStmt != null) {
 			stmt.elseStmt.visit(this, null);
 			if (stmt.elseStmt instanceof VarDeclStmt) {
 				reporter.reportError("*** line " + stmt.elseStmt.posn.getLine() + ": " + "column " + stmt.elseStmt.posn.getCol() + " variable declaration cannot be the solitary statement in a branch of a conditional statement");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		return null;
@@ -356,7 +448,7 @@ public class Identification implements Visitor<Object, Object> {
 		stmt.body.visit(this, null);
 		if (stmt.body instanceof VarDeclStmt) {
 			reporter.reportError("*** line " + stmt.body.posn.getLine() + ": " + "column " + stmt.body.posn.getCol() + " variable declaration cannot be the solitary statement in a branch of a conditional statement");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		return null;
 	}
@@ -434,7 +526,7 @@ public class Identification implements Visitor<Object, Object> {
 		ref.decl = table.retrieveClass(currentClassName);
 		if (currentMethod.isStatic) { // can only reference static members and methods
 			reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " cannot have 'this' reference in static method");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		return null;
 	}
@@ -443,7 +535,7 @@ public class Identification implements Visitor<Object, Object> {
 	public Object visitIdRef(IdRef ref, Object arg) {
 		if (ref.id.spelling.equals(varDeclName)) {
 			reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " cannot use " + ref.id.spelling + " in it's initilizing expression");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		ref.id.visit(this, null);
 		ref.decl = ref.id.decl;
@@ -451,13 +543,13 @@ public class Identification implements Visitor<Object, Object> {
 			FieldDecl fd = ((FieldDecl)ref.decl);
 			if (fd.isStatic != currentMethod.isStatic) {
 				reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " reference made in incorrect static context");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		} else if (ref.decl instanceof MethodDecl) {
 			MethodDecl md = ((MethodDecl)ref.decl);
 			if (md.isStatic != currentMethod.isStatic) {
 				reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " reference made in incorrect static context");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		return null;
@@ -466,24 +558,29 @@ public class Identification implements Visitor<Object, Object> {
 	@Override
 	public Object visitQRef(QualRef ref, Object arg) {
 		ref.ref.visit(this, null);
-		if (ref.ref.decl.type instanceof ClassType) { 
+		String enclosingClassName = currentClassName;
+		if (ref.ref.decl instanceof ClassDecl) {
+			currentClassName = ref.ref.decl.name;
+		} else if (ref.ref.decl.type instanceof ClassType) { 
 			currentClassName = ((ClassType)ref.ref.decl.type).className.spelling;
 		} else if (ref.ref.decl.type instanceof ArrayType && !ref.id.spelling.equals("length")) {
 			reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " tried to reference field of an array");
-			System.exit(4);
+			throw new IdentificationError();
 		} else if (ref.ref.decl.type instanceof BaseType) {
 			if (ref.ref.decl.type.typeKind == TypeKind.INT) {
 				reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " cannot qualify an integer");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		if (!(ref.ref.decl.type instanceof ArrayType && ref.id.spelling.equals("length"))) {
+			table.setCurrentClass(currentClassName); // the member is one of the qualifying class
 			ref.id.visit(this, null);
+			table.resetCurrentClass();
 		} else {
 			ref.id.decl = new FieldDecl(false, false, new BaseType(TypeKind.INT, ref.ref.posn), "length", ref.ref.posn);
 		}
 		ref.decl = ref.id.decl;
-		currentClassName = null; 
+		currentClassName = enclosingClassName;
 		if (ref.ref instanceof IdRef) {
 			IdRef idRef = ((IdRef)ref.ref);
 			String identifierName = idRef.id.spelling;
@@ -492,14 +589,14 @@ public class Identification implements Visitor<Object, Object> {
 					FieldDecl fd = ((FieldDecl)ref.id.decl);
 					if (!fd.isStatic && currentMethod.isStatic) {
 						reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " reference made in incorrect static context");
-						System.exit(4);
+						throw new IdentificationError();
 					}
 				}
 			}	
 		}
 		if (ref.ref.decl instanceof MethodDecl) {
 			reporter.reportError("*** line " + ref.posn.getLine() + ": " + "column " + ref.posn.getCol() + " method call embedded in qualified reference");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		return null;
 	}
@@ -515,12 +612,12 @@ public class Identification implements Visitor<Object, Object> {
 		id.decl = table.retrieve(id.spelling);
 		if (id.decl == null) {
 			reporter.reportError("*** line " + id.posn.getLine() + ": " + "column " + id.posn.getCol() + " " + id.spelling + " identifier has not been declared");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		if (id.decl instanceof FieldDecl && table.retrieveClassField(currentClassName, id.spelling) == null) { // field of another class
 			if (((FieldDecl) id.decl).isPrivate) {
 				reporter.reportError("*** line " + id.posn.getLine() + ": " + "column " + id.posn.getCol() + " " + id.spelling + " cannot access private field in other class");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		return null;
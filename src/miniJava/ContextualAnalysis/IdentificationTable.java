@@ -26,6 +26,11 @@ public class IdentificationTable {
 	public HashMap<String, HashMap<String, Declaration>> classMethods = new HashMap<String, HashMap<String, Declaration>>();
 	public String currentClass = null;
 	
+	// what each name stands for when it is in no scope: of the classes, in
+	// the order of classes.keySet(), the first named so or with a method or
+	// field named so.  Built on the first lookup, once every class is entered
+	private HashMap<String, Declaration> members;
+	
 	
 	public IdentificationTable(ErrorReporter reporter) {
 		this.reporter = reporter;
@@ -70,15 +75,55 @@ public class IdentificationTable {
 		
 	
 		
+	}
+	
+	/**
+	 * A table with a scope stack of its own, starting from the predefined
+	 * names, over the classes and members of global, which it only reads
+	 */
+	public IdentificationTable(IdentificationTable global, ErrorReporter reporter) {
+		this.reporter = reporter;
+		classes = global.classes;
+		classFields = global.classFields;
+		classMethods = global.classMethods;
+		members = global.members();
+		table.push(new HashMap<String, Declaration>(global.table.get(0)));
+	}
+	
+	private HashMap<String, Declaration> members() {
+		if (members == null) {
+			HashMap<String, Declaration> index = new HashMap<String, Declaration>();
+			for (String cn: classes.keySet()) {
+				if (!index.containsKey(cn)) {
+					index.put(cn, classes.get(cn));
+				}
+				if (classMethods.get(cn) != null) {
+					for (Map.Entry<String, Declaration> method: classMethods.get(cn).entrySet()) {
+						if (!index.containsKey(method.getKey())) {
+							index.put(method.getKey(), method.getValue());
+						}
+					}
+				}
+				if (classFields.get(cn) != null) {
+					for (Map.Entry<String, Declaration> field: classFields.get(cn).entrySet()) {
+						if (!index.containsKey(field.getKey())) {
+							index.put(field.getKey(), field.getValue());
+						}
+					}
+				}
+			}
+			members = index;
+		}
+		return members;
 	}
 	
 	public void enter(String s, Declaration d) {
 		if (declaredInCurrentScope(s)) {
 			reporter.reportError("*** line " + d.posn.getLine() + ": " + "column " + d.posn.getCol() + " " + d.name + " name already defined in current scope");
-			System.exit(4);
+			throw new Identification.IdentificationError();
 		} else if (declaredInUnhideableScope(s)) {
 			reporter.reportError("*** line " + d.posn.getLine() + ": " + "column " + d.posn.getCol() + " " + d.name + " name attempts to hide variable in unhideable scope" );
-			System.exit(4);
+			throw new Identification.IdentificationError();
 		} else {
 			table.peek().put(s, d);
 		}
@@ -92,17 +137,8 @@ public class IdentificationTable {
 			} else if (table.get(scopeLevel).containsKey(s)){
 				return table.get(scopeLevel).get(s);
 			} else {
-				for (String cn: classes.keySet()) {
-					if (s.equals(cn)) {
-						return classes.get(cn);
-					} else if (classMethods.get(cn) != null && classMethods.get(cn).containsKey(s)) {
-						return classMethods.get(cn).get(s);
-					} else if (classFields.get(cn) != null && classFields.get(cn).containsKey(s)) {
-						return classFields.get(cn).get(s);
-					}
-				}
+				return members().get(s);
 			}
-			return null;
 		} else { // only look in current class
 			if (classMethods.get(currentClass) != null && classMethods.get(currentClass).containsKey(s)) {
 				return classMethods.get(currentClass).get(s);
@@ -120,13 +156,11 @@ public class IdentificationTable {
 				return i;
 			}
 		}
-		for (String cn: classes.keySet()) {   // hasn't been entered into scoped id table, check class fields/methods
-			if (s.equals(cn)) {
-				return 1;
-			} else if ((classFields.containsKey(cn) && classFields.get(cn).containsKey(s)) 
-					|| ((classMethods.containsKey(cn) && classMethods.get(cn).containsKey(s)))) {
-				return 2;
-			}
+		Declaration member = members().get(s);   // hasn't been entered into scoped id table, check class fields/methods
+		if (member instanceof ClassDecl) {
+			return 1;
+		} else if (member != null) {
+			return 2;
 		}
 		
 		return 0; 
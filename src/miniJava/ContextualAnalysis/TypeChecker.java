@@ -1,6 +1,12 @@
 package miniJava.ContextualAnalysis;
 
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import miniJava.ErrorReporter;
 import miniJava.AbstractSyntaxTrees.AST;
@@ -47,15 +53,57 @@ import miniJava.AbstractSyntaxTrees.*;
 public class TypeChecker implements Visitor<Object, TypeDenoter> {
 
 	public ErrorReporter reporter;
+	// the methods whose bodies are checked, or null for all
+	private Set<MethodDecl> methods = null;
 	
 	public TypeChecker(ErrorReporter reporter) {
 		this.reporter = reporter;
 	}
 	
 	public void beginTypeChecking(AST ast) {
+		beginTypeChecking(ast, null);
+	}
+	
+	/**
+	 * Check ast, but only the methods in methods, if not null
+	 */
+	public void beginTypeChecking(AST ast, Set<MethodDecl> methods) {
+		this.methods = methods;
 		ast.visit(this, null);
 	}
 	
+	/**
+	 * Check ast as above, but each class on pool, reporting the messages of
+	 * each class in class order
+	 */
+	public void beginTypeChecking(AST ast, Set<MethodDecl> methods, ForkJoinPool pool) {
+		final List<TypeChecker> classCheckers = new ArrayList<TypeChecker>();
+		List<Callable<TypeDenoter>> tasks = new ArrayList<Callable<TypeDenoter>>();
+		for (final ClassDecl cd: ((Package) ast).classDeclList) {
+			final TypeChecker classChecker = new TypeChecker(ErrorReporter.buffered());
+			classChecker.methods = methods;
+			classCheckers.add(classChecker);
+			tasks.add(new Callable<TypeDenoter>() {
+				public TypeDenoter call() {
+					return cd.visit(classChecker, null);
+				}
+			});
+		}
+		try {
+			for (Future<TypeDenoter> result: pool.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reporter.reportError("*** Type checking interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		for (TypeChecker classChecker: classCheckers) {
+			classChecker.reporter.reportTo(reporter);
+		}
+	}
+	
 	private boolean checkTypeEquality(TypeDenoter typeOne, TypeDenoter typeTwo) {
 		if (typeOne == null || typeTwo == null) {
 			return false;
@@ -110,7 +158,9 @@ public class TypeChecker implements Visitor<Object, TypeDenoter> {
 			fd.visit(this, null);
 		}
 		for (MethodDecl md: cd.methodDeclList) {
-			md.visit(this, null);
+			if (methods == null || methods.contains(md)) {
+				md.visit(this, null);
+			}
 		}
 		return cd.type;
 	}
@@ -1,5 +1,8 @@
 package miniJava;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * reports errors from different phases of compilation
  * and maintains a count of total errors for use in 
@@ -9,17 +12,41 @@ package miniJava;
 public class ErrorReporter {
 
 		private int numErrors;
+		// messages kept to be reported later, by a buffered reporter
+		private List<String> messages;
 
 		ErrorReporter() {
 			numErrors = 0;
 		}
 
+		/**
+		 * @return a reporter that keeps its messages, for reportTo to pass on
+		 */
+		public static ErrorReporter buffered() {
+			ErrorReporter reporter = new ErrorReporter();
+			reporter.messages = new ArrayList<String>();
+			return reporter;
+		}
+
 		public boolean hasErrors() {
 			return numErrors > 0;
 		}
 
 		public void reportError(String message) {
-			System.out.println(message);
+			if (messages != null) {
+				messages.add(message);
+			} else {
+				System.out.println(message);
+			}
 			numErrors++;
 		}	
+
+		/**
+		 * Report the messages kept by this buffered reporter to reporter
+		 */
+		public void reportTo(ErrorReporter reporter) {
+			for (String message: messages) {
+				reporter.reportError(message);
+			}
+		}
 }
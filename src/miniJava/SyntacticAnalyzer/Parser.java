@@ -13,11 +13,27 @@ public class Parser {
 	private Token token;
 	private boolean trace = true;
 	
+	// the tokens lexed up front, if given, and the index of the current one
+	private TokenStream tokens;
+	private int index = -1;
+	
 	public Parser(Scanner scanner, ErrorReporter reporter) {
 		this.scanner = scanner;
 		this.reporter = reporter;
 	}
 	
+	public Parser(TokenStream tokens, ErrorReporter reporter) {
+		this.tokens = tokens;
+		this.reporter = reporter;
+	}
+	
+	/**
+	 * Turn off or on the parse stack trace shown as each terminal is accepted
+	 */
+	public void setTrace(boolean trace) {
+		this.trace = trace;
+	}
+	
 	/**
 	 * SyntaxError is used to unwind parse stack when parse fails
 	 *
@@ -30,7 +46,7 @@ public class Parser {
 	 *  parse input, catch possible parse error
 	 */
 	public Package parse() {
-		token = scanner.scan();
+		token = scan();
 		try {
 			return parseProgram();
 		}
@@ -40,7 +56,7 @@ public class Parser {
 	// Program ::= (ClassDeclaration)* eot
 	private Package parseProgram() throws SyntaxError {
 		ClassDeclList classList = new ClassDeclList();
-		SourcePosition posn = scanner.getPos();
+		SourcePosition posn = getPos();
 		while (token.kind != TokenKind.EOT) {
 			classList.add(parseClassDeclaration());
 		}
@@ -58,7 +74,7 @@ public class Parser {
 		String className = token.spelling;
 		MethodDeclList methodList = new MethodDeclList();
 		FieldDeclList fieldList = new FieldDeclList();
-		SourcePosition posn = scanner.getPos();
+		SourcePosition posn = getPos();
 		accept(TokenKind.ID);
 		accept(TokenKind.LBRACE);
 		while (token.kind != TokenKind.RBRACE) {
@@ -66,7 +82,7 @@ public class Parser {
 			boolean isStatic = false;
 			StatementList stmtList = new StatementList();
 			ParameterDeclList paraList = new ParameterDeclList();
-			SourcePosition fieldOrMethPosn = scanner.getPos();
+			SourcePosition fieldOrMethPosn = getPos();
 			if (token.kind == TokenKind.PRIVATE) {
 				acceptIt();
 				isPrivate = true;
@@ -110,7 +126,7 @@ public class Parser {
 				break;
 			case VOID: // void method
 				acceptIt();
-				TypeDenoter voidType = new BaseType(TypeKind.VOID, scanner.getPos());
+				TypeDenoter voidType = new BaseType(TypeKind.VOID, getPos());
 				String methName = token.spelling;
 				accept(TokenKind.ID); 
 				accept(TokenKind.LPAREN);
@@ -143,25 +159,25 @@ public class Parser {
 		switch(token.kind) {
 		case INT:  
 			acceptIt();
-			type = new BaseType(TypeKind.INT, scanner.getPos());
+			type = new BaseType(TypeKind.INT, getPos());
 			if (token.kind == TokenKind.LBRACKET) {
 				acceptIt();
 				accept(TokenKind.RBRACKET);
-				type = new ArrayType(type, scanner.getPos());
+				type = new ArrayType(type, getPos());
 			}
 			break;
 		case ID:
-			type = new ClassType(new Identifier(token, scanner.getPos()), scanner.getPos());
+			type = new ClassType(new Identifier(token, getPos()), getPos());
 			acceptIt();
 			if (token.kind == TokenKind.LBRACKET) {
 				acceptIt();
 				accept(TokenKind.RBRACKET);
-				type = new ArrayType(type, scanner.getPos());
+				type = new ArrayType(type, getPos());
 			}
 			break;
 		case BOOLEAN:
 			acceptIt();
-			type = new BaseType(TypeKind.BOOLEAN, scanner.getPos());
+			type = new BaseType(TypeKind.BOOLEAN, getPos());
 			break;
 		default:
 			parseError("Invalid Term - expecting TYPE but found " + token.kind);
@@ -174,13 +190,13 @@ public class Parser {
 		ParameterDeclList paraList = new ParameterDeclList();
 		TypeDenoter type = parseType();
 		String paraName = token.spelling;
-		paraList.add(new ParameterDecl(type, paraName, scanner.getPos()));
+		paraList.add(new ParameterDecl(type, paraName, getPos()));
 		accept(TokenKind.ID);
 		while (token.kind == TokenKind.COMMA) {
 			acceptIt();
 			type = parseType();
 			paraName = token.spelling;
-			paraList.add(new ParameterDecl(type, paraName, scanner.getPos()));
+			paraList.add(new ParameterDecl(type, paraName, getPos()));
 			accept(TokenKind.ID);
 		}
 		return paraList;
@@ -202,22 +218,22 @@ public class Parser {
 		Reference ref = null;
 		switch(token.kind) {
 		case ID: 
-			ref = new IdRef(new Identifier(token, scanner.getPos()), scanner.getPos());
+			ref = new IdRef(new Identifier(token, getPos()), getPos());
 			acceptIt();
 			while (token.kind == TokenKind.DOT) {
 				acceptIt();
-				Identifier id = new Identifier(token, scanner.getPos());
-				ref = new QualRef(ref, id, scanner.getPos());
+				Identifier id = new Identifier(token, getPos());
+				ref = new QualRef(ref, id, getPos());
 				accept(TokenKind.ID);
 			}
 			break;
 		case THIS:
-			ref = new ThisRef(scanner.getPos());
+			ref = new ThisRef(getPos());
 			acceptIt();
 			while (token.kind == TokenKind.DOT) {
 				acceptIt();
-				Identifier id = new Identifier(token, scanner.getPos());
-				ref = new QualRef(ref, id, scanner.getPos());
+				Identifier id = new Identifier(token, getPos());
+				ref = new QualRef(ref, id, getPos());
 				accept(TokenKind.ID);
 			}
 			break;
@@ -252,7 +268,7 @@ public class Parser {
 		Reference ref;
 		Expression idxExpr;
 		ExprList argList;
-		SourcePosition stmtPosn = scanner.getPos();
+		SourcePosition stmtPosn = getPos();
 		switch(token.kind) {
 		case LBRACE:
 			acceptIt();
@@ -264,11 +280,11 @@ public class Parser {
 			return new BlockStmt(stmtList, stmtPosn);
 		case INT:
 			acceptIt();
-			type = new BaseType(TypeKind.INT, scanner.getPos()); // int
+			type = new BaseType(TypeKind.INT, getPos()); // int
 			if (token.kind == TokenKind.LBRACKET) {
 				acceptIt();
 				accept(TokenKind.RBRACKET);
-				type = new ArrayType(type, scanner.getPos()); // int[]
+				type = new ArrayType(type, getPos()); // int[]
 			}
 			varName = token.spelling;
 			accept(TokenKind.ID);
@@ -279,7 +295,7 @@ public class Parser {
 			return new VarDeclStmt(variable, resultExpr, stmtPosn);
 		case BOOLEAN:
 			acceptIt();
-			type = new BaseType(TypeKind.BOOLEAN, scanner.getPos());
+			type = new BaseType(TypeKind.BOOLEAN, getPos());
 			varName = token.spelling;
 			accept(TokenKind.ID);
 			accept(TokenKind.ASSIGN);
@@ -348,8 +364,8 @@ public class Parser {
 				return null;
 			}
 		case ID:
-			typeId = new Identifier(token, scanner.getPos());
-			ref = new IdRef(typeId, scanner.getPos());
+			typeId = new Identifier(token, getPos());
+			ref = new IdRef(typeId, getPos());
 			acceptIt();
 			switch(token.kind) {
 			case ID: // id id = Expression;
@@ -358,7 +374,7 @@ public class Parser {
 				accept(TokenKind.ASSIGN);
 				resultExpr = parseExpression();
 				accept(TokenKind.SEMICOL);
-				variable = new VarDecl(new ClassType(typeId, scanner.getPos()), varName, stmtPosn);
+				variable = new VarDecl(new ClassType(typeId, getPos()), varName, stmtPosn);
 				return new VarDeclStmt(variable, resultExpr, stmtPosn);
 			case ASSIGN: // id = Expression;
 				acceptIt();
@@ -385,8 +401,8 @@ public class Parser {
 					accept(TokenKind.ASSIGN);
 					resultExpr = parseExpression();
 					accept(TokenKind.SEMICOL);
-					type = new ClassType(typeId, scanner.getPos());
-					type = new ArrayType(type, scanner.getPos());                       // had these 4 lines combined, very hard to read -> separate out despite causing more lines
+					type = new ClassType(typeId, getPos());
+					type = new ArrayType(type, getPos());                       // had these 4 lines combined, very hard to read -> separate out despite causing more lines
 					variable = new VarDecl(type, varName, stmtPosn);
 					return new VarDeclStmt(variable, resultExpr, stmtPosn);
 				} else {								// IxAssignStmt   id[expression] = expression
@@ -400,9 +416,9 @@ public class Parser {
 			case DOT:
 				while (token.kind == TokenKind.DOT) {
 					acceptIt();
-					id = new Identifier(token, scanner.getPos());
+					id = new Identifier(token, getPos());
 					accept(TokenKind.ID);
-					ref = new QualRef(ref, id, scanner.getPos());
+					ref = new QualRef(ref, id, getPos());
 				}
 				if (token.kind == TokenKind.ASSIGN) { // id (.id)* = Expression;     AssignStmt
 					acceptIt();
@@ -451,10 +467,10 @@ public class Parser {
 	private Expression parseDisjunction() throws SyntaxError {
 		Expression resultExpr = parseConjunction();
 		while (token.kind == TokenKind.OR) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
 			Expression additionalExpr = parseConjunction();
-			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, scanner.getPos());
+			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, getPos());
 		}
 		return resultExpr;
 	}
@@ -463,10 +479,10 @@ public class Parser {
 	private Expression parseConjunction() throws SyntaxError {
 		Expression resultExpr = parseEquality();
 		while (token.kind == TokenKind.AND) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
 			Expression additionalExpr = parseEquality();
-			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, scanner.getPos());
+			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, getPos());
 		}
 		return resultExpr;
 	}
@@ -475,10 +491,10 @@ public class Parser {
 	private Expression parseEquality() throws SyntaxError {
 		Expression resultExpr = parseRelational();
 		while (token.kind == TokenKind.EQUAL || token.kind == TokenKind.NOTEQUAL) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
 			Expression additionalExpr = parseRelational();
-			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, scanner.getPos());
+			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, getPos());
 		}
 		return resultExpr;
 	}
@@ -488,10 +504,10 @@ public class Parser {
 		Expression resultExpr = parseAdditive();
 		while (token.kind == TokenKind.LESSEQUAL || token.kind == TokenKind.LESS
 			  || token.kind == TokenKind.GREATER || token.kind == TokenKind.GREATEREQUAL) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
 			Expression additionalExpr = parseAdditive();
-			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, scanner.getPos());
+			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, getPos());
 		}
 		return resultExpr;
 	}
@@ -500,10 +516,10 @@ public class Parser {
 	private Expression parseAdditive() throws SyntaxError {
 		Expression resultExpr = parseMultiplicative();
 		while (token.kind == TokenKind.PLUS || token.kind == TokenKind.MINUS) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
 			Expression additionalExpr = parseMultiplicative();
-			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, scanner.getPos());
+			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, getPos());
 		}
 		return resultExpr;
 	}
@@ -512,10 +528,10 @@ public class Parser {
 	private Expression parseMultiplicative() throws SyntaxError {
 		Expression resultExpr = parseUnary();
 		while (token.kind == TokenKind.TIMES || token.kind == TokenKind.DIVIDE) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
 			Expression additionalExpr = parseUnary();
-			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, scanner.getPos());
+			resultExpr = new BinaryExpr(op, resultExpr, additionalExpr, getPos());
 		}
 		return resultExpr;
 	}
@@ -524,9 +540,9 @@ public class Parser {
 	private Expression parseUnary() {
 		Expression resultExpr;
 		if (token.kind == TokenKind.MINUS || token.kind == TokenKind.NOT) {
-			Operator op = new Operator(token, scanner.getPos());
+			Operator op = new Operator(token, getPos());
 			acceptIt();
-			resultExpr = new UnaryExpr(op, parseUnary(), scanner.getPos());
+			resultExpr = new UnaryExpr(op, parseUnary(), getPos());
 			return resultExpr;
 		} else {
 			return parseEndExpression();
@@ -553,7 +569,7 @@ public class Parser {
 				acceptIt();
 				resultExpr = parseExpression();
 				accept(TokenKind.RBRACKET);
-				return new IxExpr(ref, resultExpr, scanner.getPos());
+				return new IxExpr(ref, resultExpr, getPos());
 			} else if (token.kind == TokenKind.LPAREN) { // CallExpr
 				acceptIt(); 
 				ExprList argList = new ExprList();
@@ -563,9 +579,9 @@ public class Parser {
 					argList = parseArgumentList();
 					accept(TokenKind.RPAREN);
 				}
-				return new CallExpr(ref, argList, scanner.getPos());
+				return new CallExpr(ref, argList, getPos());
 			} else {
-				return new RefExpr(ref, scanner.getPos()); // RefExpr
+				return new RefExpr(ref, getPos()); // RefExpr
 			}
 		case LPAREN:
 			acceptIt();
@@ -573,31 +589,31 @@ public class Parser {
 			accept(TokenKind.RPAREN);
 			return resultExpr;
 		case TRUE: case FALSE:
-			terminal = new BooleanLiteral(token, scanner.getPos());
+			terminal = new BooleanLiteral(token, getPos());
 			acceptIt();
-			return new LiteralExpr(terminal, scanner.getPos());
+			return new LiteralExpr(terminal, getPos());
 		case NUM:
-			terminal = new IntLiteral(token, scanner.getPos());
+			terminal = new IntLiteral(token, getPos());
 			acceptIt();
-			return new LiteralExpr(terminal, scanner.getPos());
+			return new LiteralExpr(terminal, getPos());
 		case NULL:
-			terminal = new NullLiteral(token, scanner.getPos());
+			terminal = new NullLiteral(token, getPos());
 			acceptIt();
-			return new LiteralExpr(terminal, scanner.getPos());
+			return new LiteralExpr(terminal, getPos());
 		case NEW:
 			acceptIt();
 			if (token.kind == TokenKind.ID) {
-				id = new Identifier(token, scanner.getPos());
+				id = new Identifier(token, getPos());
 				acceptIt();
 				if (token.kind == TokenKind.LPAREN) { // NewObjectExpr
 					acceptIt();
 					accept(TokenKind.RPAREN);
-					return new NewObjectExpr(new ClassType(id, scanner.getPos()), scanner.getPos());
+					return new NewObjectExpr(new ClassType(id, getPos()), getPos());
 				} else if (token.kind == TokenKind.LBRACKET) { // NewArrayExpr
 					acceptIt();
 					resultExpr = parseExpression();
 					accept(TokenKind.RBRACKET);
-					return new NewArrayExpr(new ClassType(id, scanner.getPos()), resultExpr, scanner.getPos());
+					return new NewArrayExpr(new ClassType(id, getPos()), resultExpr, getPos());
 				} else {
 					parseError("Invalid Term - expecting LPAREN or LBRACKET but found " + token.kind);
 					return null;
@@ -607,7 +623,7 @@ public class Parser {
 				accept(TokenKind.LBRACKET);
 				resultExpr = parseExpression();
 				accept(TokenKind.RBRACKET);
-				return new NewArrayExpr(new BaseType(TypeKind.INT, scanner.getPos()), resultExpr, scanner.getPos());
+				return new NewArrayExpr(new BaseType(TypeKind.INT, getPos()), resultExpr, getPos());
 			} else {
 				parseError("Invalid Term - expecting ID or INT but found " + token.kind);
 				return null;
@@ -620,6 +636,25 @@ public class Parser {
 	}
 	
 	
+	/**
+	 * the next token, from the token stream if there is one, where the last
+	 * token repeats as it does from the scanner
+	 */
+	private Token scan() {
+		if (tokens == null)
+			return scanner.scan();
+		if (index < tokens.count - 1)
+			index++;
+		tokens.reportErrors(index, reporter);
+		return tokens.token(index);
+	}
+	
+	private SourcePosition getPos() {
+		if (tokens == null)
+			return scanner.getPos();
+		return new SourcePosition(tokens.source, tokens.end(index));
+	}
+	
 	/**
 	 * accept current token and advance to next token
 	 */
@@ -636,7 +671,7 @@ public class Parser {
 		if (token.kind == expectedTokenKind) {
 			if (trace)
 				pTrace();
-			token = scanner.scan();
+			token = scan();
 		}
 		else
 			parseError("expecting '" + expectedTokenKind +
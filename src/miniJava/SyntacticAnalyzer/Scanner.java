@@ -1,290 +1,347 @@
 package miniJava.SyntacticAnalyzer;
 
 import java.io.*;
+import java.util.List;
 
 import miniJava.SyntacticAnalyzer.Token;
 import miniJava.SyntacticAnalyzer.TokenKind;
 import miniJava.ErrorReporter;
 
+/**
+ *  Scans the tokens of a source buffer.  Characters are classified by table,
+ *  keywords are found by a perfect hash of their first two chars and length,
+ *  and the spellings of identifiers and numbers are interned in a symbol
+ *  table, so that next() scans a token without allocating.  scan() wraps the
+ *  token next() found in a Token.
+ */
 public class Scanner {
 
-	private InputStream inputStream;
+	private SourceBuffer source;
 	private ErrorReporter reporter;
+	private SymbolTable symbols;
 
-	private char currentChar;
-	private StringBuilder currentSpelling;
-	
-	
-	private int lineNum = 1;
-	private int colNum = 1;
-	
-	// true when end of line is found
-	private boolean eot = false; 
+	// the text, and the offset of the current char in it
+	private byte[] text;
+	private int length;
+	private int offset;
 
-	public Scanner(InputStream inputStream, ErrorReporter reporter) {
-		this.inputStream = inputStream;
+	// the token last scanned by next()
+	private TokenKind kind;
+	private String spelling;
+	private int symbol;
+	private int tokenStart;
+	private int tokenLength;
+
+	// when set, scan errors are kept here instead of being reported
+	List<String> deferredErrors;
+
+	public Scanner(SourceBuffer source, ErrorReporter reporter, SymbolTable symbols) {
+		this.source = source;
 		this.reporter = reporter;
-		// initialize scanner state
-		readChar();
+		this.symbols = symbols;
+		text = source.text;
+		length = source.length;
+	}
+
+	public Scanner(SourceBuffer source, ErrorReporter reporter) {
+		this(source, reporter, new SymbolTable());
+	}
+
+	public Scanner(InputStream inputStream, ErrorReporter reporter) {
+		this(readAll(inputStream, reporter), reporter);
+	}
+
+	private static SourceBuffer readAll(InputStream inputStream, ErrorReporter reporter) {
+		try {
+			return SourceBuffer.read(inputStream);
+		} catch (IOException e) {
+			reporter.reportError("Scan Error:  I/O Exception!");
+			return new SourceBuffer(new byte[0]);
+		}
 	}
-	
-	 
+
 	/**
 	 * skip whitespace and scan next token
 	 */
 	public Token scan() {
-		
-		
-		// skip whitespace
-		while (!eot && isWhiteSpace(currentChar)) {
-			skipIt();
-		}
-		
-		// start of a token: collect spelling and identify token kind
-		currentSpelling = new StringBuilder();
-		TokenKind kind = scanToken();
-		String spelling = currentSpelling.toString();
-		
-		while (kind == TokenKind.DIVIDE && currentChar == '*' || currentChar == '/') {  // found a comment, can find multiple in a row
-			if (currentChar == '*') {  // multi-line comment
-				skipIt();
-				while (!eot) { // source file continues
-					if (currentChar == '*') {  // found potential end
-						skipIt();
-						if (currentChar == '/') {  // found end
-							skipIt();
-							break;
-						}
-					} else { // skip comment content
-						skipIt();
+		next();
+		return new Token(kind, spelling, tokenStart, tokenLength);
+	}
+
+	/**
+	 * skip whitespace and comments and scan next token, whose spelling, symbol
+	 * and span are then given by the accessors below
+	 */
+	public TokenKind next() {
+		skipWhiteSpace();
+
+		// start of a token: mark its span and identify token kind
+		tokenStart = offset;
+		kind = scanToken();
+
+		while (kind == TokenKind.DIVIDE && current() == '*' || current() == '/') {  // found a comment, can find multiple in a row
+			if (current() == '*') {  // multi-line comment
+				offset++;
+				while (offset < length) { // source file continues
+					if (text[offset++] == '*' && current() == '/') {  // found end
+						offset++;
+						break;
 					}
 				}
-				if (eot) {
+				if (offset >= length) {
 					scanError("Comment ran off source file");
-					return new Token(TokenKind.ERROR, "Comment ran off source file");
+					kind = TokenKind.ERROR;
+					spelling = "Comment ran off source file";
+					tokenStart = length;
+					tokenLength = 0;
+					return kind;
 				}
 			} else { // single line comment
-				skipIt();
-				while (!eot && currentChar != eolUnix && currentChar != eolWindows) {
-					skipIt();
+				offset++;
+				while (offset < length && text[offset] != eolUnix && text[offset] != eolWindows) {
+					offset++;
 				}
 			}
-			while (!eot && isWhiteSpace(currentChar)) { // skip whitespace 
-				skipIt();
-			}
-			currentSpelling = new StringBuilder();  // original token scanned was a comment, scan next token and check for comment again
-			kind = scanToken();                     // loop continues until valid token found
-			spelling = currentSpelling.toString();
+			skipWhiteSpace();
+			tokenStart = offset;  // original token scanned was a comment, scan next token and check for comment again
+			kind = scanToken();   // loop continues until valid token found
 		}
-		
-		// return new token
-		return new Token(kind, spelling);
+
+		tokenLength = offset - tokenStart;
+		return kind;
+	}
+
+	public String spelling() {
+		return spelling;
 	}
-	
-	public TokenKind scanToken() {
-		if (eot) {
-			return(TokenKind.EOT);
-		} else if (isAlpha(currentChar)) { // keyword or ID
-			takeIt();
-			while(isAlpha(currentChar) || currentChar == '_' || isDigit(currentChar)) {
-				takeIt();
+
+	/**
+	 * @return the symbol table id of the spelling of an identifier or
+	 *         number, or -1 for other tokens
+	 */
+	public int symbol() {
+		return symbol;
+	}
+
+	public int tokenOffset() {
+		return tokenStart;
+	}
+
+	public int tokenLength() {
+		return tokenLength;
+	}
+
+	public SymbolTable symbols() {
+		return symbols;
+	}
+
+	private TokenKind scanToken() {
+		symbol = -1;
+		if (offset >= length) {
+			spelling = "";
+			return TokenKind.EOT;
+		}
+		int c = text[offset] & 0xff;
+		int cls = charClass[c];
+		if ((cls & identStart) != 0) { // keyword or ID
+			offset++;
+			while (offset < length && (charClass[text[offset] & 0xff] & identPart) != 0) {
+				offset++;
 			}
-			switch(currentSpelling.toString()) {
-			case "class":
-				return TokenKind.CLASS;
-			case "void":
-				return TokenKind.VOID;
-			case "public":
-				return TokenKind.PUBLIC;
-			case "private":
-				return TokenKind.PRIVATE;
-			case "static":
-				return TokenKind.STATIC;
-			case "int":
-				return TokenKind.INT;
-			case "boolean":
-				return TokenKind.BOOLEAN;
-			case "this":
-				return TokenKind.THIS;
-			case "return":
-				return TokenKind.RETURN;
-			case "if":
-				return TokenKind.IF;
-			case "else":
-				return TokenKind.ELSE;
-			case "while":
-				return TokenKind.WHILE;
-			case "true":
-				return TokenKind.TRUE;
-			case "false":
-				return TokenKind.FALSE;
-			case "new":
-				return TokenKind.NEW;
-			case "null":
-				return TokenKind.NULL;
-			default:
-				return TokenKind.ID;
+			TokenKind keyword = keyword(tokenStart, offset - tokenStart);
+			if (keyword != null) {
+				spelling = keywordSpellings[keyword.ordinal()];
+				return keyword;
 			}
-		} else if (isDigit(currentChar)) { // num
-			takeIt();
-			while(isDigit(currentChar)) {
-				takeIt();
+			return symbol(TokenKind.ID);
+		} else if ((cls & digit) != 0) { // num
+			offset++;
+			while (offset < length && (charClass[text[offset] & 0xff] & digit) != 0) {
+				offset++;
 			}
-			return TokenKind.NUM;
-		} else {                         // rest of tokens
-			switch(currentChar) {
-			case '>':
-				takeIt();
-				if (currentChar == '=') {
-					takeIt();
-					return TokenKind.GREATEREQUAL;
-				} 
-				return TokenKind.GREATER;
-			case '<':
-				takeIt();
-				if (currentChar == '=') {
-					takeIt();
-					return TokenKind.LESSEQUAL;
-				}
-				return TokenKind.LESS;
-			case '=':
-				takeIt();
-				if (currentChar == '=') {
-					takeIt();
-					return TokenKind.EQUAL;
-				}
-				return TokenKind.ASSIGN;
-			case '!':
-				takeIt();
-				if (currentChar == '=') {
-					takeIt();
-					return TokenKind.NOTEQUAL;
-				}
-				return TokenKind.NOT;
-			case '&':
-				takeIt();
-				if (currentChar == '&') {
-					takeIt();
-					return TokenKind.AND;
-				}
-				scanError("Scanned '" + currentChar + "' in input when looking for second '&'");
-				return TokenKind.ERROR;
-			case '|':
-				takeIt();
-				if (currentChar == '|') {
-					takeIt();
-					return TokenKind.OR;
-				}
-				scanError("Scanned '" + currentChar + "' in input when looking for second '|'");
-				return TokenKind.ERROR;
-			case '+':
-				takeIt();
-				return TokenKind.PLUS;
-			case '-': 
-				takeIt();
-				return TokenKind.MINUS;
-			case '*':
-				takeIt();
-				return TokenKind.TIMES;
-			case '/':
-				takeIt();
-				return TokenKind.DIVIDE;
-			case '(':
-				takeIt();
-				return TokenKind.LPAREN;
-			case ')':
-				takeIt();
-				return TokenKind.RPAREN;
-			case '{':
-				takeIt();
-				return TokenKind.LBRACE;
-			case '}':
-				takeIt();
-				return TokenKind.RBRACE;
-			case ',':
-				takeIt();
-				return TokenKind.COMMA;
-			case ';':
-				takeIt();
-				return TokenKind.SEMICOL;
-			case '.':
-				takeIt();
-				return TokenKind.DOT;
-			case '[':
-				takeIt();
-				return TokenKind.LBRACKET;
-			case ']':
-				takeIt();
-				return TokenKind.RBRACKET;
-			default:
-				scanError("Unrecognized character '" + currentChar + "' in input");
-				return(TokenKind.ERROR);
+			return symbol(TokenKind.NUM);
+		}
+		TokenKind single = singleKinds[c];
+		if (single != null) { // one char, unless followed by '='
+			offset++;
+			if (current() == '=' && equalKinds[c] != null) {
+				offset++;
+				single = equalKinds[c];
 			}
+			spelling = keywordSpellings[single.ordinal()];
+			return single;
+		}
+		switch (c) {
+		case '&':
+		case '|':
+			offset++;
+			if (current() == c) {
+				offset++;
+				TokenKind kind = c == '&' ? TokenKind.AND : TokenKind.OR;
+				spelling = keywordSpellings[kind.ordinal()];
+				return kind;
+			}
+			scanError("Scanned '" + (char) current() + "' in input when looking for second '" + (char) c + "'");
+			spelling = source.spelling(tokenStart, 1);
+			return TokenKind.ERROR;
+		default:
+			scanError("Unrecognized character '" + (char) c + "' in input");
+			spelling = "";
+			return(TokenKind.ERROR);
 		}
-		
-	}
-	
-	private void takeIt() {
-		currentSpelling.append(currentChar);
-		nextChar();
 	}
 
-	private void skipIt() {
-		nextChar();
+	// an identifier or number, spelt by its symbol
+	private TokenKind symbol(TokenKind kind) {
+		symbol = symbols.id(text, tokenStart, offset - tokenStart);
+		spelling = symbols.symbol(symbol);
+		return kind;
 	}
 
-	private boolean isDigit(char c) {
-		return (c >= '0') && (c <= '9');
+	/**
+	 * @return the keyword kind of the span, or null for an identifier
+	 */
+	private TokenKind keyword(int start, int length) {
+		if (length < 2)
+			return null;
+		TokenKind keyword = keywords[(text[start] * 3 + text[start + 1] * 30 + length) & 31];
+		if (keyword == null)
+			return null;
+		byte[] spelt = keywordBytes[keyword.ordinal()];
+		if (spelt.length != length)
+			return null;
+		for (int i = 2; i < length; i++)
+			if (spelt[i] != text[start + i])
+				return null;
+		return spelt[0] == text[start] && spelt[1] == text[start + 1] ? keyword : null;
 	}
-	
-	private boolean isAlpha(char c) {
-		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+
+	// the current char, or -1 at the end of the text
+	private int current() {
+		return offset < length ? text[offset] & 0xff : -1;
 	}
-	
-	private boolean isWhiteSpace(char c) {
-		return c == eolUnix || c == eolWindows || c == tab || c == space;
+
+	private void skipWhiteSpace() {
+		while (offset < length && (charClass[text[offset] & 0xff] & space) != 0) {
+			offset++;
+		}
 	}
 
 	private void scanError(String m) {
-		reporter.reportError("Scan Error:  " + m);
+		if (deferredErrors != null) {
+			deferredErrors.add("Scan Error:  " + m);
+		} else {
+			reporter.reportError("Scan Error:  " + m);
+		}
+	}
+
+	/**
+	 * continue scanning at offset
+	 */
+	void seek(int offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * @return the spelling of tokens of kind, if they all have the same one
+	 */
+	static String fixedSpelling(TokenKind kind) {
+		return keywordSpellings[kind.ordinal()];
 	}
-	
+
 	private final static char eolUnix = '\n';
 	private final static char eolWindows = '\r';
 	private final static char tab = '\t';
-	private final static char space = ' ';
+	private final static char blank = ' ';
 
-	/**
-	 * advance to next char in inputstream
-	 * detect end of file or end of line as end of input
-	 */
-	private void nextChar() {
-		if (!eot)
-			readChar();
+	// char classes
+	private final static byte identStart = 1, identPart = 2, digit = 4, space = 8;
+	private final static byte[] charClass = new byte[256];
+
+	// kinds of the tokens of one char, and of that char followed by '='
+	private final static TokenKind[] singleKinds = new TokenKind[256];
+	private final static TokenKind[] equalKinds = new TokenKind[256];
+
+	// keyword kinds by perfect hash, and the spellings of fixed tokens
+	private final static TokenKind[] keywords = new TokenKind[32];
+	private final static String[] keywordSpellings = new String[TokenKind.values().length];
+	private final static byte[][] keywordBytes = new byte[TokenKind.values().length][];
+
+	private static void fixed(TokenKind kind, String spelling) {
+		keywordSpellings[kind.ordinal()] = spelling;
+		if (spelling.length() == 1) {
+			singleKinds[spelling.charAt(0)] = kind;
+		} else if (spelling.length() == 2 && spelling.charAt(1) == '=') {
+			equalKinds[spelling.charAt(0)] = kind;
+		}
 	}
 
-	private void readChar() {
-		try {
-			int c = inputStream.read();
-			currentChar = (char) c;
-			if (c == '\n') {
-				lineNum++;
-				colNum = 1;
-			} else if (c == '\t') {
-				colNum+=4;
-			} else {
-				colNum++;
-			}
-			if (c == -1) {
-				eot = true;
-			}
-		} catch (IOException e) {
-			scanError("I/O Exception!");
-			eot = true;
+	private static void keyword(TokenKind kind, String spelling) {
+		keywordSpellings[kind.ordinal()] = spelling;
+		keywordBytes[kind.ordinal()] = spelling.getBytes();
+		int hash = (spelling.charAt(0) * 3 + spelling.charAt(1) * 30 + spelling.length()) & 31;
+		if (keywords[hash] != null)
+			throw new IllegalStateException("keyword hash collision");
+		keywords[hash] = kind;
+	}
+
+	static {
+		for (int c = 'a'; c <= 'z'; c++) {
+			charClass[c] = identStart | identPart;
+			charClass[c - 'a' + 'A'] = identStart | identPart;
 		}
+		for (int c = '0'; c <= '9'; c++) {
+			charClass[c] = identPart | digit;
+		}
+		charClass['_'] = identPart;
+		charClass[eolUnix] = space;
+		charClass[eolWindows] = space;
+		charClass[tab] = space;
+		charClass[blank] = space;
+
+		fixed(TokenKind.GREATER, ">");
+		fixed(TokenKind.LESS, "<");
+		fixed(TokenKind.ASSIGN, "=");
+		fixed(TokenKind.NOT, "!");
+		fixed(TokenKind.GREATEREQUAL, ">=");
+		fixed(TokenKind.LESSEQUAL, "<=");
+		fixed(TokenKind.EQUAL, "==");
+		fixed(TokenKind.NOTEQUAL, "!=");
+		fixed(TokenKind.AND, "&&");
+		fixed(TokenKind.OR, "||");
+		fixed(TokenKind.PLUS, "+");
+		fixed(TokenKind.MINUS, "-");
+		fixed(TokenKind.TIMES, "*");
+		fixed(TokenKind.DIVIDE, "/");
+		fixed(TokenKind.LPAREN, "(");
+		fixed(TokenKind.RPAREN, ")");
+		fixed(TokenKind.LBRACE, "{");
+		fixed(TokenKind.RBRACE, "}");
+		fixed(TokenKind.COMMA, ",");
+		fixed(TokenKind.SEMICOL, ";");
+		fixed(TokenKind.DOT, ".");
+		fixed(TokenKind.LBRACKET, "[");
+		fixed(TokenKind.RBRACKET, "]");
+
+		keyword(TokenKind.CLASS, "class");
+		keyword(TokenKind.VOID, "void");
+		keyword(TokenKind.PUBLIC, "public");
+		keyword(TokenKind.PRIVATE, "private");
+		keyword(TokenKind.STATIC, "static");
+		keyword(TokenKind.INT, "int");
+		keyword(TokenKind.BOOLEAN, "boolean");
+		keyword(TokenKind.THIS, "this");
+		keyword(TokenKind.RETURN, "return");
+		keyword(TokenKind.IF, "if");
+		keyword(TokenKind.ELSE, "else");
+		keyword(TokenKind.WHILE, "while");
+		keyword(TokenKind.TRUE, "true");
+		keyword(TokenKind.FALSE, "false");
+		keyword(TokenKind.NEW, "new");
+		keyword(TokenKind.NULL, "null");
 	}
-	
+
 	public SourcePosition getPos() {
-		return new SourcePosition(lineNum, colNum);
+		return new SourcePosition(source, offset);
 	}
 }
@@ -0,0 +1,101 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ *  The whole text of a source file, one char per byte, for the scanner.
+ *  Lines and columns are not tracked while scanning: a position is an
+ *  offset into the text, and its line and column are found from an index of
+ *  line starts, built the first time a position is asked for them.
+ */
+public class SourceBuffer {
+
+	public final byte[] text;
+	public final int length;
+
+	// offsets at which lines begin, built on demand
+	private int[] lineStarts;
+	private int lines;
+
+	public SourceBuffer(byte[] text, int length) {
+		this.text = text;
+		this.length = length;
+	}
+
+	public SourceBuffer(byte[] text) {
+		this(text, text.length);
+	}
+
+	public static SourceBuffer read(String fileName) throws IOException {
+		return new SourceBuffer(Files.readAllBytes(Paths.get(fileName)));
+	}
+
+	public static SourceBuffer read(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[1 << 16];
+		for (int n = inputStream.read(chunk); n != -1; n = inputStream.read(chunk))
+			bytes.write(chunk, 0, n);
+		return new SourceBuffer(bytes.toByteArray());
+	}
+
+	/**
+	 * @return the text of length chars at offset
+	 */
+	public String spelling(int offset, int length) {
+		return new String(text, offset, length, StandardCharsets.ISO_8859_1);
+	}
+
+	private synchronized void indexLines() {
+		if (lineStarts != null)
+			return;
+		int[] starts = new int[1024];
+		int n = 1;
+		for (int i = 0; i < length; i++) {
+			if (text[i] == '\n') {
+				if (n == starts.length)
+					starts = Arrays.copyOf(starts, n * 2);
+				starts[n++] = i + 1;
+			}
+		}
+		lines = n;
+		lineStarts = starts;
+	}
+
+	/**
+	 * @return the line of the scanner once it has read the char at offset
+	 *         (or the end of the text, at offset length)
+	 */
+	public int line(int offset) {
+		indexLines();
+		// lines starting at or before offset + 1: a newline at offset
+		// begins a new line
+		int lo = 0, hi = lines;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (lineStarts[mid] <= offset + 1)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the column of the scanner once it has read the char at offset,
+	 *         counting a tab as four columns
+	 */
+	public int column(int offset) {
+		int line = line(offset);
+		int start = lineStarts[line - 1];
+		int col = 1;
+		for (int i = start; i <= offset; i++)
+			col += i < length && text[i] == '\t' ? 4 : 1;
+		return col;
+	}
+}
@@ -5,6 +5,10 @@ public class SourcePosition {
 	private int lineNum;
 	private int colNum;
 	
+	// an offset into source, whose line and column are found when needed
+	private SourceBuffer source;
+	private int offset;
+	
 	public SourcePosition() {
 		this.lineNum = 1;
 		this.colNum = 1;
@@ -13,16 +17,32 @@ public class SourcePosition {
 		this.lineNum = lineNum;
 		this.colNum = colNum;
 	}
+	public SourcePosition(SourceBuffer source, int offset) {
+		this.source = source;
+		this.offset = offset;
+	}
 
 	public String toString() {
-		return " | L" + lineNum;
+		return " | L" + getLine();
 	}
 	
 	public int getLine() {
+		if (source != null) {
+			resolve();
+		}
 		return lineNum;
 	}
 	
 	public int getCol() {
+		if (source != null) {
+			resolve();
+		}
 		return colNum;
 	}
+	
+	private void resolve() {
+		lineNum = source.line(offset);
+		colNum = source.column(offset);
+		source = null;
+	}
 }
@@ -0,0 +1,110 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *  Interns the spellings of identifiers and numbers, so that a spelling
+ *  scanned many times is one String, made the first time.  Each spelling
+ *  also gets an id, numbering the symbols in the order they were first seen.
+ */
+public class SymbolTable {
+
+	// open addressing: ids + 1 of the symbols, by hash, 0 when free
+	private int[] slots = new int[1024];
+	private String[] symbols = new String[256];
+	private int[] hashes = new int[256];
+	private int count;
+
+	/**
+	 * @return the id of the spelling of length chars at offset in text,
+	 *         entered if new
+	 */
+	public int id(byte[] text, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+			hash = 31 * hash + (text[i] & 0xff);
+		int mask = slots.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0)
+				return enter(text, offset, length, hash, slot);
+			if (hashes[id] == hash && matches(symbols[id], text, offset, length))
+				return id;
+		}
+	}
+
+	/**
+	 * @return the id of spelling, entered as it is if new
+	 */
+	public int id(String spelling) {
+		int hash = 0;
+		for (int i = 0; i < spelling.length(); i++)
+			hash = 31 * hash + spelling.charAt(i);
+		int mask = slots.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0)
+				return enter(spelling, hash, slot);
+			if (hashes[id] == hash && symbols[id].equals(spelling))
+				return id;
+		}
+	}
+
+	/**
+	 * @return the interned spelling of length chars at offset in text
+	 */
+	public String intern(byte[] text, int offset, int length) {
+		return symbols[id(text, offset, length)];
+	}
+
+	/**
+	 * @return the spelling of symbol id
+	 */
+	public String symbol(int id) {
+		return symbols[id];
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private static boolean matches(String symbol, byte[] text, int offset, int length) {
+		if (symbol.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (symbol.charAt(i) != (text[offset + i] & 0xff))
+				return false;
+		return true;
+	}
+
+	private int enter(byte[] text, int offset, int length, int hash, int slot) {
+		return enter(new String(text, offset, length, StandardCharsets.ISO_8859_1), hash, slot);
+	}
+
+	private int enter(String spelling, int hash, int slot) {
+		if (count == symbols.length) {
+			symbols = Arrays.copyOf(symbols, count * 2);
+			hashes = Arrays.copyOf(hashes, count * 2);
+		}
+		int id = count++;
+		symbols[id] = spelling;
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+		if (count * 2 > slots.length)
+			rehash();
+		return id;
+	}
+
+	// double the slots, keeping them at most half full
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 0; id < count; id++) {
+			int slot = hashes[id] & mask;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = id + 1;
+		}
+	}
+}
@@ -3,17 +3,26 @@ package miniJava.SyntacticAnalyzer;
 import miniJava.SyntacticAnalyzer.TokenKind;
 
 /**
- *  A token has a kind and a spelling
- *  TODO: add source position
+ *  A token has a kind and a spelling, and the span of the source it was
+ *  scanned from
  */
 public class Token {
 	public TokenKind kind;
 	public String spelling;
 	public SourcePosition posn;
+	public int offset;
+	public int length;
 
 	public Token(TokenKind kind, String spelling) {
 		this.kind = kind;
 		this.spelling = spelling;
 	}
+
+	public Token(TokenKind kind, String spelling, int offset, int length) {
+		this.kind = kind;
+		this.spelling = spelling;
+		this.offset = offset;
+		this.length = length;
+	}
 	
 }
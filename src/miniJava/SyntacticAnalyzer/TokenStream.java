@@ -0,0 +1,295 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import miniJava.ErrorReporter;
+
+/**
+ *  All the tokens of a source, lexed up front, as parallel arrays of kind
+ *  (ordinal), start offset, length and symbol id, ending with EOT.
+ *
+ *  A large source is cut into chunks at line starts and the chunks are
+ *  lexed on a fork-join pool.  A cut may fall inside a comment, so the
+ *  tokens of a chunk are only trusted from the first point where a scan of
+ *  the chunk before it reaches an offset at which the chunk began scanning a
+ *  token, since from the same offset the scanner finds the same tokens.  The
+ *  chunks are joined in order at such points, and wherever none is found the
+ *  source is scanned again sequentially, so the stream is always the one
+ *  the scanner gives.  Scan errors are kept with the token whose scan raised
+ *  them, to be reported when the parser reaches it.
+ */
+public class TokenStream {
+
+	public final SourceBuffer source;
+	public final SymbolTable symbols;
+
+	public int[] kinds;
+	public int[] starts;
+	public int[] lengths;
+	public int[] symbolIds;
+	public int count;
+
+	// spellings of ERROR tokens, and scan errors, by token
+	private Map<Integer, String> errorSpellings = new HashMap<Integer, String>();
+	private Map<Integer, List<String>> errors = new HashMap<Integer, List<String>>();
+
+	// by default, sources shorter than this are lexed in one piece
+	public final static int defaultChunkSize = 1 << 20;
+
+	private final static TokenKind[] tokenKinds = TokenKind.values();
+
+	// room for the tokens of chars of source, at a guess
+	private TokenStream(SourceBuffer source, SymbolTable symbols, int chars) {
+		this.source = source;
+		this.symbols = symbols;
+		int capacity = Math.max(chars / 4, 16);
+		kinds = new int[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		symbolIds = new int[capacity];
+	}
+
+	/**
+	 * Lex source, in parallel on the common fork-join pool if it is large
+	 */
+	public static TokenStream lex(SourceBuffer source) {
+		return lex(source, defaultChunkSize, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Lex source in chunks of about chunkSize bytes, in parallel on pool
+	 */
+	public static TokenStream lex(SourceBuffer source, int chunkSize, ForkJoinPool pool) {
+		int chunks = (int) Math.min(source.length / chunkSize, 4L * pool.getParallelism());
+		if (chunks < 2)
+			return lexChunk(source, new SymbolTable(), 0, source.length);
+
+		// cut at the line starts following equal divisions
+		final int[] cuts = new int[chunks + 1];
+		for (int k = 1; k < chunks; k++) {
+			int cut = Math.max((int) ((long) source.length * k / chunks), cuts[k - 1]);
+			while (cut < source.length && source.text[cut - 1] != '\n')
+				cut++;
+			cuts[k] = cut;
+		}
+		cuts[chunks] = source.length;
+
+		List<Callable<TokenStream>> tasks = new ArrayList<Callable<TokenStream>>();
+		for (int k = 0; k < chunks; k++) {
+			final SourceBuffer chunkSource = source;
+			final int k0 = k;
+			tasks.add(new Callable<TokenStream>() {
+				public TokenStream call() {
+					return lexChunk(chunkSource, new SymbolTable(), cuts[k0], cuts[k0 + 1]);
+				}
+			});
+		}
+		TokenStream[] lexed = new TokenStream[chunks];
+		try {
+			List<Future<TokenStream>> results = pool.invokeAll(tasks);
+			for (int k = 0; k < chunks; k++)
+				lexed[k] = results.get(k).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return lexChunk(source, new SymbolTable(), 0, source.length);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return join(source, cuts, lexed);
+	}
+
+	/**
+	 * @return the tokens scanned from start until the scan reaches end, or
+	 *         EOT.  The last token may run past end
+	 */
+	private static TokenStream lexChunk(SourceBuffer source, SymbolTable symbols, int start, int end) {
+		TokenStream stream = new TokenStream(source, symbols, end - start);
+		Scanner scanner = new Scanner(source, null, symbols);
+		scanner.seek(start);
+		scanner.deferredErrors = new ArrayList<String>();
+		int offset = start;
+		while (offset < end || end == source.length) {
+			stream.scanOne(scanner);
+			if (stream.finished())
+				break;
+			offset = stream.end(stream.count - 1);
+		}
+		return stream;
+	}
+
+	/**
+	 * @return true if the last token is EOT, or an unrecognized character,
+	 *         which the scanner does not pass, so that it is scanned again and
+	 *         again
+	 */
+	public boolean finished() {
+		if (count == 0)
+			return false;
+		int last = count - 1;
+		return kinds[last] == TokenKind.EOT.ordinal()
+				|| kinds[last] == TokenKind.ERROR.ordinal() && lengths[last] == 0 && starts[last] < source.length;
+	}
+
+	// scan the next token into the stream
+	private TokenKind scanOne(Scanner scanner) {
+		TokenKind kind = scanner.next();
+		add(kind.ordinal(), scanner.tokenOffset(), scanner.tokenLength(), scanner.symbol());
+		if (kind == TokenKind.ERROR)
+			errorSpellings.put(count - 1, scanner.spelling());
+		if (!scanner.deferredErrors.isEmpty()) {
+			errors.put(count - 1, scanner.deferredErrors);
+			scanner.deferredErrors = new ArrayList<String>();
+		}
+		return kind;
+	}
+
+	private void add(int kind, int start, int length, int symbol) {
+		if (count == kinds.length) {
+			kinds = Arrays.copyOf(kinds, count * 2);
+			starts = Arrays.copyOf(starts, count * 2);
+			lengths = Arrays.copyOf(lengths, count * 2);
+			symbolIds = Arrays.copyOf(symbolIds, count * 2);
+		}
+		kinds[count] = kind;
+		starts[count] = start;
+		lengths[count] = length;
+		symbolIds[count] = symbol;
+		count++;
+	}
+
+	// join the chunks lexed from cuts, scanning again where they disagree
+	private static TokenStream join(SourceBuffer source, int[] cuts, TokenStream[] lexed) {
+		TokenStream stream = new TokenStream(source, new SymbolTable(), source.length);
+		Scanner scanner = new Scanner(source, null, stream.symbols);
+		scanner.deferredErrors = new ArrayList<String>();
+		int offset = 0;
+		for (int k = 0; k < lexed.length; k++) {
+			TokenStream chunk = lexed[k];
+			// the offsets at which the chunk began scanning its tokens
+			// are cuts[k] and the ends of its tokens, in order
+			while (true) {
+				int from = offset == cuts[k] ? 0 : chunk.tokenEndingAt(offset);
+				if (from >= 0) {
+					stream.append(chunk, from);
+					if (chunk.count > 0)
+						offset = chunk.end(chunk.count - 1);
+					break;
+				}
+				if (chunk.count == 0 || offset > chunk.end(chunk.count - 1))
+					break;
+				scanner.seek(offset);
+				stream.scanOne(scanner);
+				if (stream.finished())
+					return stream;
+				offset = stream.end(stream.count - 1);
+			}
+			if (stream.finished())
+				return stream;
+		}
+		scanner.seek(offset);
+		do {
+			stream.scanOne(scanner);
+		} while (!stream.finished());
+		return stream;
+	}
+
+	/**
+	 * @return the index after the token ending at offset, or -1 if none
+	 */
+	private int tokenEndingAt(int offset) {
+		int lo = 0, hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int end = end(mid);
+			if (end < offset)
+				lo = mid + 1;
+			else if (end > offset)
+				hi = mid - 1;
+			else {
+				// the tokens after an empty token share its end: the first
+				// one ending at offset is the one the scan from offset follows
+				while (mid > 0 && end(mid - 1) == offset)
+					mid--;
+				return mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	// append the tokens of chunk from index from, with the symbols of this
+	private void append(TokenStream chunk, int from) {
+		int n = chunk.count - from;
+		if (count + n > kinds.length) {
+			int capacity = Math.max(count + n, count * 2);
+			kinds = Arrays.copyOf(kinds, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			symbolIds = Arrays.copyOf(symbolIds, capacity);
+		}
+		System.arraycopy(chunk.kinds, from, kinds, count, n);
+		System.arraycopy(chunk.starts, from, starts, count, n);
+		System.arraycopy(chunk.lengths, from, lengths, count, n);
+		int[] symbolMap = new int[chunk.symbols.size()];
+		Arrays.fill(symbolMap, -1);
+		for (int i = 0; i < n; i++) {
+			int symbol = chunk.symbolIds[from + i];
+			if (symbol >= 0) {
+				if (symbolMap[symbol] < 0)
+					symbolMap[symbol] = symbols.id(chunk.symbols.symbol(symbol));
+				symbol = symbolMap[symbol];
+			}
+			symbolIds[count + i] = symbol;
+		}
+		for (Map.Entry<Integer, String> e : chunk.errorSpellings.entrySet())
+			if (e.getKey() >= from)
+				errorSpellings.put(count + e.getKey() - from, e.getValue());
+		for (Map.Entry<Integer, List<String>> e : chunk.errors.entrySet())
+			if (e.getKey() >= from)
+				errors.put(count + e.getKey() - from, e.getValue());
+		count += n;
+	}
+
+	public TokenKind kind(int i) {
+		return tokenKinds[kinds[i]];
+	}
+
+	public String spelling(int i) {
+		TokenKind kind = kind(i);
+		if (symbolIds[i] >= 0)
+			return symbols.symbol(symbolIds[i]);
+		if (kind == TokenKind.ERROR)
+			return errorSpellings.get(i);
+		if (kind == TokenKind.EOT)
+			return "";
+		return Scanner.fixedSpelling(kind);
+	}
+
+	/**
+	 * @return the offset at which the scanner stands after token i
+	 */
+	public int end(int i) {
+		return starts[i] + lengths[i];
+	}
+
+	public Token token(int i) {
+		return new Token(kind(i), spelling(i), starts[i], lengths[i]);
+	}
+
+	/**
+	 * Report the scan errors raised while scanning token i
+	 */
+	public void reportErrors(int i, ErrorReporter reporter) {
+		List<String> messages = errors.get(i);
+		if (messages != null)
+			for (String message : messages)
+				reporter.reportError(message);
+	}
+}
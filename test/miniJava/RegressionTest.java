@@ -0,0 +1,115 @@
+/**
+ * Regression tests of the compiler and the mJAM interpreter
+ */
+package miniJava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import mJAM.MachineInstance;
+import mJAM.ObjectFile;
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.CodeGenerator.CodeGenerator;
+import miniJava.ContextualAnalysis.Identification;
+import miniJava.ContextualAnalysis.TypeChecker;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+
+/**
+ * Compiles every name.java of a directory, test/programs by default, runs it
+ * on the interpreter with empty input, and compares what it writes, followed
+ * by a line "status name" giving the name of its final status, with
+ * name.out.  A program passes if it compiles and this matches name.out
+ * exactly, so a program that prints what is expected and then fails does
+ * not pass.
+ */
+public final class RegressionTest {
+
+	private RegressionTest() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		File directory = new File(args.length > 0 ? args[0] : "test/programs");
+		String[] names = directory.list();
+		if (names == null) {
+			System.out.println("No test directory " + directory);
+			System.exit(2);
+		}
+		Arrays.sort(names);
+		int run = 0, failed = 0;
+		for (String name : names) {
+			if (!name.endsWith(".java"))
+				continue;
+			String base = name.substring(0, name.length() - ".java".length());
+			String failure = check(directory, base);
+			run++;
+			if (failure != null)
+				failed++;
+			System.out.println((failure == null ? "PASS " : "FAIL ") + base
+					+ (failure == null ? "" : ": " + failure));
+		}
+		System.out.println((run - failed) + " of " + run + " passed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * @return why the program base of directory failed, or null if it passed
+	 */
+	private static String check(File directory, String base) throws IOException {
+		File source = new File(directory, base + ".java");
+		File expected = new File(directory, base + ".out");
+		int[] code = compile(source);
+		if (code == null)
+			return "does not compile";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream print = new PrintStream(out);
+		int status = new MachineInstance(code, new ByteArrayInputStream(new byte[0]), print).run();
+		print.print("status " + MachineInstance.statusName(status) + "\n");
+		print.flush();
+		if (!expected.exists())
+			return "no " + expected.getName() + ":\n" + out;
+		if (!Arrays.equals(out.toByteArray(), Files.readAllBytes(expected.toPath())))
+			return "output differs:\n" + out;
+		return null;
+	}
+
+	/**
+	 * Compile source as the compiler driver does, into a scratch object file
+	 * and without the messages of the compiler
+	 * @return the code store, or null if source is not a valid program
+	 */
+	private static int[] compile(File source) throws IOException {
+		File directory = Files.createTempDirectory("miniJava").toFile();
+		File copy = new File(directory, source.getName());
+		File objectFile = new File(directory, source.getName().replace(".java", ".mJAM"));
+		PrintStream out = System.out;
+		try {
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {
+				}
+			}));
+			ErrorReporter errorReporter = new ErrorReporter();
+			Parser parser = new Parser(new Scanner(new FileInputStream(source), errorReporter), errorReporter);
+			AST ast = parser.parse();
+			if (ast != null) {
+				new Identification(errorReporter).beginIdentification(ast);
+				new TypeChecker(errorReporter).beginTypeChecking(ast);
+			}
+			if (ast == null || errorReporter.hasErrors())
+				return null;
+			new CodeGenerator(errorReporter).beginCodeGen(ast, copy.getPath());
+			return new ObjectFile(objectFile.getPath()).readCode();
+		} finally {
+			System.setOut(out);
+			objectFile.delete();
+			directory.delete();
+		}
+	}
+}
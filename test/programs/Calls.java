@@ -0,0 +1,41 @@
+class Calls {
+    public static void main(String[] args) {
+        Counter c = new Counter();
+        c.n = 1;
+        c.add(2);
+        int x = c.get();
+        System.out.println(x);
+        System.out.println(c.twiceGet() + 1);
+        System.out.println(Helper.twice(21));
+        Helper.show(7);
+        int y = Helper.twice(c.get()) + Helper.twice(1);
+        System.out.println(y);
+    }
+}
+
+class Counter {
+    int n;
+
+    public void add(int k) {
+        n = n + k;
+    }
+
+    public int get() {
+        return n;
+    }
+
+    public int twiceGet() {
+        add(0);
+        return get() + get();
+    }
+}
+
+class Helper {
+    public static int twice(int k) {
+        return k + k;
+    }
+
+    public static void show(int k) {
+        System.out.println(k);
+    }
+}
@@ -0,0 +1,8 @@
+class OutputBeforeFailure {
+    public static void main(String[] args) {
+        int[] a = new int[3];
+        System.out.println(1);
+        System.out.println(2);
+        System.out.println(a[5]);
+    }
+}
@@ -0,0 +1,50 @@
+class QualifiedMembers {
+    public static void main(String[] args) {
+        Link a = new Link();
+        Link b = new Link();
+        a.v = 1;
+        b.v = 2;
+        a.link = b;
+        b.link = a;
+        Holder h = new Holder();
+        h.v = 5;
+        h.link = a;
+        System.out.println(h.link.v);
+        System.out.println(h.sum());
+        System.out.println(h.link.size());
+        System.out.println(Table.count);
+        Table.count = 4;
+        System.out.println(Table.grow());
+    }
+}
+
+class Link {
+    int v;
+    Link link;
+
+    public int size() {
+        return 2;
+    }
+}
+
+class Holder {
+    Link link;
+    int v;
+
+    public int sum() {
+        return v + link.v + link.link.v + link.size() + size();
+    }
+
+    public int size() {
+        return 30;
+    }
+}
+
+class Table {
+    static int count;
+
+    public static int grow() {
+        count = count + 1;
+        return count;
+    }
+}
@@ -0,0 +1,19 @@
+class RecursiveStatic {
+    public static int fact(int n) {
+        if (n < 2)
+            return 1;
+        return n * fact(n - 1);
+    }
+
+    public static void main(String[] args) {
+        System.out.println(fact(5));
+        int x = sum(4);
+        System.out.println(x);
+    }
+
+    public static int sum(int n) {
+        if (n == 0)
+            return 0;
+        return n + sum(n - 1);
+    }
+}